@@ -14,7 +14,10 @@ import java.awt.Image;
 import java.awt.Insets;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.swing.Box;
@@ -43,6 +46,23 @@ public abstract class AbstractFormPanel extends JPanel {
     private static final int OFFSET = 1;
     private static final int VERTICAL_MARGIN = 1;
 
+    /** Code of the detail image */
+    public static final String DETAIL_IMAGE_CODE = "adastra-images/question-tiny.png";
+
+    /** Code of the error validation image */
+    public static final String ERROR_IMAGE_CODE = "adastra-images/validation-error.png";
+
+    /** Code of the information validation image */
+    public static final String INFORMATION_IMAGE_CODE =
+        "adastra-images/validation-information.png";
+
+    /** Code of the warning validation image */
+    public static final String WARNING_IMAGE_CODE = "adastra-images/validation-warning.png";
+
+    /** Codes of every image used by the form panel, which are worth preloading */
+    public static final List<String> IMAGE_CODES = Collections.unmodifiableList(Arrays.asList(
+                DETAIL_IMAGE_CODE, ERROR_IMAGE_CODE, INFORMATION_IMAGE_CODE, WARNING_IMAGE_CODE));
+
     private static final String DETAIL_COMPONENT_NAME = "detailComponent";
     private static final String EDITOR_COMPONENT_NAME = "editorComponent";
     private static final String FILL_NAME = "fill";
@@ -154,13 +174,13 @@ public abstract class AbstractFormPanel extends JPanel {
         switch (severity) {
 
         case ERROR:
-            return imageSource.getImage("adastra-images/validation-error.png");
+            return imageSource.getImage(ERROR_IMAGE_CODE);
 
         case INFORMATION:
-            return imageSource.getImage("adastra-images/validation-information.png");
+            return imageSource.getImage(INFORMATION_IMAGE_CODE);
 
         case WARNING:
-            return imageSource.getImage("adastra-images/validation-warning.png");
+            return imageSource.getImage(WARNING_IMAGE_CODE);
 
         default:
             throw new IllegalArgumentException("invalid severity: " + severity);
@@ -472,7 +492,7 @@ public abstract class AbstractFormPanel extends JPanel {
         if (StringUtils.isNotBlank(detailsText)) {
 
             JLabel detailsComponent = new JLabel(new ImageIcon(
-                        imageSource.getImage("adastra-images/question-tiny.png")));
+                        imageSource.getImage(DETAIL_IMAGE_CODE)));
 
             detailsComponent.setToolTipText(detailsText);
 
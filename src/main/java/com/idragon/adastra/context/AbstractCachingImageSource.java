@@ -0,0 +1,237 @@
+package com.idragon.adastra.context;
+
+import com.idragon.adastra.lang.LatencyHistogram;
+
+import java.awt.Dimension;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Abstract resource based image source with cache, which keeps the statistics of the cache. The
+ * counters are split between default size (index {@code 0}) and resized (index {@code 1}) lookups.
+ * Loads and resizes are timed by this class, subclasses record the outcome of each lookup. The
+ * recording methods don't allocate, so they are cheap enough for the hit path.
+ *
+ * <p>The statistics are available through {@link #getStatistics}, and through JMX by registering
+ * the image source as an {@link ImageCacheMXBean}.</p>
+ *
+ * @author  iDragon
+ */
+public abstract class AbstractCachingImageSource extends ResourceImageSource
+    implements CachingImageSource, ImageCacheMXBean {
+
+    /** Hit counts of non-null images */
+    private final AtomicLongArray hitCounts = new AtomicLongArray(2);
+
+    /** Hit counts of cached missing images */
+    private final AtomicLongArray missingHitCounts = new AtomicLongArray(2);
+
+    /** Miss counts */
+    private final AtomicLongArray missCounts = new AtomicLongArray(2);
+
+    /** Eviction counts */
+    private final AtomicLongArray evictionCounts = new AtomicLongArray(2);
+
+    /** Load failure counts */
+    private final AtomicLongArray loadFailureCounts = new AtomicLongArray(2);
+
+    /** Latency of loads, including resizes */
+    private final LatencyHistogram loadLatency = new LatencyHistogram();
+
+    /** Latency of resizes */
+    private final LatencyHistogram scaleLatency = new LatencyHistogram();
+
+    /**
+     * Abstract resource based image source with cache.
+     */
+    protected AbstractCachingImageSource() {
+    }
+
+    /**
+     * @return  the counter index of a lookup.
+     */
+    private static int indexOf(boolean resized) {
+        return resized ? 1 : 0;
+    }
+
+    /**
+     * @param   resized  {@code true} for the counter of resized lookups.
+     *
+     * @return  the eviction count.
+     */
+    long getEvictionCount(boolean resized) {
+        return evictionCounts.get(indexOf(resized));
+    }
+
+    @Override public long getEvictionCount() {
+        return evictionCounts.get(0) + evictionCounts.get(1);
+    }
+
+    /**
+     * @param   resized  {@code true} for the counter of resized lookups.
+     *
+     * @return  the hit count of non-null images.
+     */
+    long getHitCount(boolean resized) {
+        return hitCounts.get(indexOf(resized));
+    }
+
+    /**
+     * Resolves the image code and resizes the image, if needed. The load is timed, and failures
+     * are counted.
+     *
+     * @param   imageCode  Image code to resolve.
+     * @param   dimension  The required image dimensions, or {@code null}, if the default image size
+     *                     is appropiate.
+     *
+     * @return  the resolved image or {@code null}, if the image doesn't exist.
+     */
+    @Override protected Image getImageInternal(String imageCode, Dimension dimension) {
+
+        long start = System.nanoTime();
+        boolean loaded = false;
+
+        try {
+
+            Image image = super.getImageInternal(imageCode, dimension);
+            loaded = true;
+
+            return image;
+
+        } finally {
+
+            loadLatency.record(System.nanoTime() - start);
+
+            if (!loaded) {
+                loadFailureCounts.incrementAndGet(indexOf(dimension != null));
+            }
+        }
+    }
+
+    /**
+     * @param   resized  {@code true} for the counter of resized lookups.
+     *
+     * @return  the load failure count.
+     */
+    long getLoadFailureCount(boolean resized) {
+        return loadFailureCounts.get(indexOf(resized));
+    }
+
+    /**
+     * @return  the latency histogram of loads, including resizes.
+     */
+    LatencyHistogram getLoadLatency() {
+        return loadLatency;
+    }
+
+    /**
+     * @param   resized  {@code true} for the counter of resized lookups.
+     *
+     * @return  the miss count.
+     */
+    long getMissCount(boolean resized) {
+        return missCounts.get(indexOf(resized));
+    }
+
+    /**
+     * @param   resized  {@code true} for the counter of resized lookups.
+     *
+     * @return  the hit count of cached missing images.
+     */
+    long getMissingHitCount(boolean resized) {
+        return missingHitCounts.get(indexOf(resized));
+    }
+
+    /**
+     * @return  the latency histogram of resizes.
+     */
+    LatencyHistogram getScaleLatency() {
+        return scaleLatency;
+    }
+
+    @Override public ImageCacheStatistics getStatistics() {
+
+        int size = size();
+        long weight = getWeight();
+
+        return new ImageCacheStatistics(this, size, weight);
+    }
+
+    /**
+     * @return  {@code true}, if the cache can be used by concurrent threads, including removals.
+     *          The default implementation returns {@code false}.
+     */
+    public boolean isThreadSafe() {
+        return false;
+    }
+
+    /**
+     * Records an eviction.
+     *
+     * @param  resized  {@code true}, if a resized image was evicted.
+     */
+    protected void recordEviction(boolean resized) {
+        evictionCounts.incrementAndGet(indexOf(resized));
+    }
+
+    /**
+     * Records a lookup served from the cache.
+     *
+     * @param  resized  {@code true}, if a resized image was looked up.
+     * @param  image    The cached image, or {@code null}, if the image is cached as missing.
+     */
+    protected void recordHit(boolean resized, Image image) {
+
+        if (image == null) {
+            missingHitCounts.incrementAndGet(indexOf(resized));
+        } else {
+            hitCounts.incrementAndGet(indexOf(resized));
+        }
+    }
+
+    /**
+     * Records a lookup, which wasn't served from the cache.
+     *
+     * @param  resized  {@code true}, if a resized image was looked up.
+     */
+    protected void recordMiss(boolean resized) {
+        missCounts.incrementAndGet(indexOf(resized));
+    }
+
+    @Override public void resetStatistics() {
+
+        for (int i = 0; i < 2; i++) {
+
+            hitCounts.set(i, 0L);
+            missingHitCounts.set(i, 0L);
+            missCounts.set(i, 0L);
+            evictionCounts.set(i, 0L);
+            loadFailureCounts.set(i, 0L);
+        }
+
+        loadLatency.reset();
+        scaleLatency.reset();
+    }
+
+    /**
+     * Resizes an image with the image scaler. The resize is timed.
+     *
+     * @param   image      The image to resize.
+     * @param   dimension  The required image dimensions.
+     *
+     * @return  the resized image, which is converted to the screen compatible pixel format.
+     */
+    @Override protected Image resize(BufferedImage image, Dimension dimension) {
+
+        long start = System.nanoTime();
+
+        try {
+            return super.resize(image, dimension);
+        } finally {
+            scaleLatency.record(System.nanoTime() - start);
+        }
+    }
+}
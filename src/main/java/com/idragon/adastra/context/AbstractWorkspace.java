@@ -5,6 +5,15 @@ import org.springframework.util.Assert;
 import java.io.File;
 import java.io.IOException;
 
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.concurrent.ThreadLocalRandom;
+
 
 /**
  * Abstract workspace. This class includes some common workspace logic.
@@ -22,12 +31,63 @@ public abstract class AbstractWorkspace implements Workspace {
     /** Initialized? */
     private boolean initialized = false;
 
+    /** Committer of the staged writes */
+    private GroupCommitter groupCommitter = new GroupCommitter();
+
+    /** Committer of the staged writes of this workspace, which delegates to {@link #commit} */
+    private final StagedWrite.Committer committer = new StagedWrite.Committer() {
+
+            @Override public void commit(StagedWrite write) throws IOException {
+                AbstractWorkspace.this.commit(write);
+            }
+        };
+
     /**
      * Abstract workspace. This class includes some common workspace logic.
      */
     public AbstractWorkspace() {
     }
 
+    /**
+     * Checks, if the workspace is initialized and the path is within the workspace.
+     *
+     * @param   path  The path to check.
+     *
+     * @return  the absolute, normalized form of the path.
+     *
+     * @throws  IllegalArgumentException  if the workspace is not initialized, or the path is
+     *                                    outside the workspace.
+     */
+    protected Path checkPath(Path path) {
+
+        Assert.isTrue(initialized, "workspace is not initialized");
+        Assert.notNull(path, "path is null");
+
+        Path result = path.toAbsolutePath().normalize();
+        Assert.isTrue(result.startsWith(root.toPath().toAbsolutePath().normalize()),
+            "path is outside the workspace: " + path);
+
+        return result;
+    }
+
+    /**
+     * Publishes a staged write with the group committer.
+     *
+     * @param   write  The staged write to commit.
+     *
+     * @throws  IOException  if the file can't be published.
+     */
+    protected void commit(StagedWrite write) throws IOException {
+        groupCommitter.commit(write);
+    }
+
+    /**
+     * Release the resources of the workspace.
+     */
+    public void destroy() {
+        groupCommitter.destroy();
+    }
+
     @Override public File getDirectory(String... pathSequence) throws IOException {
         Assert.isTrue(initialized, "workspace is not initialized");
 
@@ -51,6 +111,17 @@ public abstract class AbstractWorkspace implements Workspace {
      */
     protected abstract File getDirectoryInternal(String[] pathSequence) throws IOException;
 
+    /**
+     * @return  the committer of the staged writes.
+     */
+    public GroupCommitter getGroupCommitter() {
+        return groupCommitter;
+    }
+
+    @Override public Path getPath(String... pathSequence) throws IOException {
+        return getDirectory(pathSequence).toPath();
+    }
+
     /**
      * @return  the workspace root directory. After successful initialization of the workspace, this
      *          method surely returns an existing directory.
@@ -80,6 +151,30 @@ public abstract class AbstractWorkspace implements Workspace {
         initialized = true;
     }
 
+    @Override public MappedByteBuffer map(Path file, FileChannel.MapMode mode) throws IOException {
+
+        Assert.notNull(mode, "mode is null");
+
+        try (FileChannel channel = openChannel(file, toOpenOptions(mode))) {
+            return channel.map(mode, 0L, channel.size());
+        }
+    }
+
+    @Override public MappedByteBuffer map(Path file, FileChannel.MapMode mode, long size)
+        throws IOException {
+
+        Assert.notNull(mode, "mode is null");
+        Assert.isTrue(0L <= size, "invalid size: " + size);
+
+        try (FileChannel channel = openChannel(file, toOpenOptions(mode))) {
+            return channel.map(mode, 0L, size);
+        }
+    }
+
+    @Override public FileChannel openChannel(Path file, OpenOption... options) throws IOException {
+        return FileChannel.open(checkPath(file), options);
+    }
+
     /**
      * @param  allowRootCreation  whether to allow root creation. Root creation is allowed ({@code
      *                            true}) by default.
@@ -88,6 +183,15 @@ public abstract class AbstractWorkspace implements Workspace {
         this.allowRootCreation = allowRootCreation;
     }
 
+    /**
+     * @param  groupCommitter  the committer of the staged writes to set.
+     */
+    public void setGroupCommitter(GroupCommitter groupCommitter) {
+        Assert.notNull(groupCommitter, "group committer is null");
+
+        this.groupCommitter = groupCommitter;
+    }
+
     /**
      * @param  root  the root directory to set.
      */
@@ -95,6 +199,67 @@ public abstract class AbstractWorkspace implements Workspace {
         this.root = root;
     }
 
+    @Override public StagedWrite stage(Path file) throws IOException {
+
+        Path target = checkPath(file);
+        Path directory = target.getParent();
+        String prefix = "." + target.getFileName() + ".";
+
+        while (true) {
+
+            // The staging file is hidden, and it's in the same directory, so the rename is atomic
+            Path stagingFile = directory.resolve(prefix +
+                    Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".staged");
+
+            try {
+                return new StagedWrite(committer, target, stagingFile,
+                        openChannel(stagingFile, StandardOpenOption.CREATE_NEW,
+                            StandardOpenOption.WRITE));
+            } catch (FileAlreadyExistsException e) {
+                // Another name is tried
+            }
+        }
+    }
+
+    /**
+     * @return  the options to open a file with for a mapping mode.
+     */
+    private OpenOption[] toOpenOptions(FileChannel.MapMode mode) {
+
+        if (mode == FileChannel.MapMode.READ_WRITE) {
+            return new OpenOption[] {
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+                };
+        }
+
+        return new OpenOption[] { StandardOpenOption.READ };
+    }
+
+    @Override public long transfer(Path source, Path target) throws IOException {
+
+        try (FileChannel in = openChannel(source);
+                FileChannel out = openChannel(target, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            long size = in.size();
+            long position = 0L;
+
+            // The transfer may copy less than requested, and nothing, if the source was truncated
+            while (position < size) {
+
+                long count = in.transferTo(position, size - position, out);
+
+                if (count <= 0L) {
+                    break;
+                }
+
+                position += count;
+            }
+
+            return position;
+        }
+    }
+
     /**
      * @param   parent        Parent file or directory.
      * @param   pathSequence  Path sequence.
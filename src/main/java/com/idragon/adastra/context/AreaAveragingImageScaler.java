@@ -0,0 +1,356 @@
+package com.idragon.adastra.context;
+
+import com.idragon.adastra.lang.ConcurrencyUtils;
+
+import org.springframework.util.Assert;
+
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Image scaler, which averages the source pixels covered by each target pixel, like the {@code
+ * Image.SCALE_AREA_AVERAGING} filter does. The separable filter works on premultiplied pixels in
+ * two passes. Large images are resampled in parallel, split into bands of rows on a fork-join
+ * pool.
+ *
+ * @author  iDragon
+ */
+public class AreaAveragingImageScaler implements ImageScaler {
+
+    /** Default count of source pixels, from where images are resampled in parallel */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 256 * 256;
+
+    /** Minimal count of rows resampled by a single task */
+    private static final int MIN_BAND_HEIGHT = 16;
+
+    /** Fork-join pool, or {@code null} to use the shared pool */
+    private ForkJoinPool pool;
+
+    /** Count of source pixels, from where images are resampled in parallel */
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    /**
+     * Area averaging image scaler.
+     */
+    public AreaAveragingImageScaler() {
+    }
+
+    /**
+     * @return  the count of source pixels, from where images are resampled in parallel.
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * @return  the fork-join pool, or {@code null}, if the shared pool is used.
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    @Override public BufferedImage scale(BufferedImage image, int width, int height) {
+
+        Assert.notNull(image, "image is null");
+        Assert.isTrue((0 < width) && (0 < height),
+            "invalid dimension: width=" + width + ", height=" + height);
+
+        int sourceWidth = image.getWidth();
+        int sourceHeight = image.getHeight();
+
+        int[] source = image.getRGB(0, 0, sourceWidth, sourceHeight, null, 0, sourceWidth);
+        float[] intermediate = new float[sourceHeight * width * 4];
+        int[] target = new int[width * height];
+
+        Kernel horizontalKernel = new Kernel(sourceWidth, width);
+        Kernel verticalKernel = new Kernel(sourceHeight, height);
+
+        Band horizontalPass = new HorizontalPass(source, sourceWidth, intermediate, width,
+                horizontalKernel, 0, sourceHeight);
+        Band verticalPass = new VerticalPass(intermediate, target, width, verticalKernel, 0,
+                height);
+
+        if (parallelThreshold <= ((long) sourceWidth * sourceHeight)) {
+
+            ForkJoinPool executor = (pool == null) ? ConcurrencyUtils.getSharedPool() : pool;
+
+            executor.invoke(horizontalPass);
+            executor.invoke(verticalPass);
+
+        } else {
+
+            horizontalPass.compute();
+            verticalPass.compute();
+        }
+
+        BufferedImage result = new BufferedImage(width, height,
+                (image.getTransparency() == Transparency.OPAQUE) ? BufferedImage.TYPE_INT_RGB
+                                                                 : BufferedImage.TYPE_INT_ARGB);
+
+        result.setRGB(0, 0, width, height, target, 0, width);
+
+        return result;
+    }
+
+    /**
+     * @param  parallelThreshold  the count of source pixels, from where images are resampled in
+     *                            parallel to set.
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        Assert.isTrue(0 <= parallelThreshold, "invalid threshold: " + parallelThreshold);
+
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * @param  pool  the fork-join pool to set, or {@code null} to use the shared pool.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Resampling task of a band of rows, which splits itself until the band is small enough.
+     */
+    private abstract static class Band extends RecursiveAction {
+
+        // Serial number
+        private static final long serialVersionUID = 8519706364424961127L;
+
+        protected final int from;
+        protected final int to;
+
+        /**
+         * Resampling task of a band of rows.
+         *
+         * @param  from  First row, inclusive.
+         * @param  to    Last row, exclusive.
+         */
+        public Band(int from, int to) {
+
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override protected void compute() {
+
+            if ((to - from) <= (MIN_BAND_HEIGHT * 2)) {
+                resample();
+            } else {
+
+                int middle = (from + to) >>> 1;
+                invokeAll(split(from, middle), split(middle, to));
+            }
+        }
+
+        /**
+         * Resample the rows of the band.
+         */
+        protected abstract void resample();
+
+        /**
+         * @return  a task of a part of this band.
+         */
+        protected abstract Band split(int from, int to);
+    }
+
+    /**
+     * Horizontal pass, which resamples the source rows into premultiplied intermediate rows.
+     */
+    private static final class HorizontalPass extends Band {
+
+        // Serial number
+        private static final long serialVersionUID = -2417011470227569431L;
+
+        private final int[] source;
+        private final int sourceWidth;
+        private final float[] intermediate;
+        private final int width;
+        private final Kernel kernel;
+
+        /**
+         * Horizontal pass.
+         */
+        public HorizontalPass(int[] source, int sourceWidth, float[] intermediate, int width,
+            Kernel kernel, int from, int to) {
+
+            super(from, to);
+
+            this.source = source;
+            this.sourceWidth = sourceWidth;
+            this.intermediate = intermediate;
+            this.width = width;
+            this.kernel = kernel;
+        }
+
+        @Override protected void resample() {
+
+            for (int y = from; y < to; y++) {
+
+                int sourceOffset = y * sourceWidth;
+                int targetOffset = y * width * 4;
+
+                for (int x = 0; x < width; x++) {
+
+                    float a = 0f;
+                    float r = 0f;
+                    float g = 0f;
+                    float b = 0f;
+
+                    int first = kernel.first[x];
+
+                    for (int i = kernel.offsets[x]; i < kernel.offsets[x + 1]; i++) {
+
+                        int pixel = source[sourceOffset + first + (i - kernel.offsets[x])];
+                        float weight = kernel.weights[i];
+                        float alpha = (pixel >>> 24) * weight;
+
+                        a += alpha;
+                        r += ((pixel >> 16) & 0xff) * alpha;
+                        g += ((pixel >> 8) & 0xff) * alpha;
+                        b += (pixel & 0xff) * alpha;
+                    }
+
+                    int offset = targetOffset + (x * 4);
+
+                    intermediate[offset] = a;
+                    intermediate[offset + 1] = r;
+                    intermediate[offset + 2] = g;
+                    intermediate[offset + 3] = b;
+                }
+            }
+        }
+
+        @Override protected Band split(int from, int to) {
+            return new HorizontalPass(source, sourceWidth, intermediate, width, kernel, from, to);
+        }
+    }
+
+    /**
+     * Resampling kernel of a single axis. Each target pixel covers a consecutive range of source
+     * pixels, which are weighted by their covered area.
+     */
+    private static final class Kernel {
+
+        /** First covered source pixel of each target pixel */
+        private final int[] first;
+
+        /** Offset of the weights of each target pixel, plus the total count of weights */
+        private final int[] offsets;
+
+        /** Normalized weights of the covered source pixels */
+        private final float[] weights;
+
+        /**
+         * Resampling kernel of a single axis.
+         *
+         * @param  sourceSize  Source size.
+         * @param  targetSize  Target size.
+         */
+        public Kernel(int sourceSize, int targetSize) {
+
+            double scale = (double) sourceSize / targetSize;
+
+            first = new int[targetSize];
+            offsets = new int[targetSize + 1];
+
+            for (int t = 0; t < targetSize; t++) {
+
+                first[t] = (int) Math.floor(t * scale);
+
+                int last = Math.min(sourceSize, (int) Math.ceil((t + 1) * scale));
+                offsets[t + 1] = offsets[t] + Math.max(1, last - first[t]);
+            }
+
+            weights = new float[offsets[targetSize]];
+
+            for (int t = 0; t < targetSize; t++) {
+
+                double start = t * scale;
+                double end = (t + 1) * scale;
+
+                for (int i = offsets[t]; i < offsets[t + 1]; i++) {
+
+                    int s = first[t] + (i - offsets[t]);
+                    weights[i] = (float) ((Math.min(end, s + 1) - Math.max(start, s)) / scale);
+                }
+            }
+        }
+    }
+
+    /**
+     * Vertical pass, which resamples the intermediate rows into the target pixels.
+     */
+    private static final class VerticalPass extends Band {
+
+        // Serial number
+        private static final long serialVersionUID = 2829357040915463370L;
+
+        private final float[] intermediate;
+        private final int[] target;
+        private final int width;
+        private final Kernel kernel;
+
+        /**
+         * Vertical pass.
+         */
+        public VerticalPass(float[] intermediate, int[] target, int width, Kernel kernel,
+            int from, int to) {
+
+            super(from, to);
+
+            this.intermediate = intermediate;
+            this.target = target;
+            this.width = width;
+            this.kernel = kernel;
+        }
+
+        @Override protected void resample() {
+
+            int rowLength = width * 4;
+
+            for (int y = from; y < to; y++) {
+
+                int first = kernel.first[y];
+
+                for (int x = 0; x < width; x++) {
+
+                    float a = 0f;
+                    float r = 0f;
+                    float g = 0f;
+                    float b = 0f;
+
+                    for (int i = kernel.offsets[y]; i < kernel.offsets[y + 1]; i++) {
+
+                        int offset = ((first + (i - kernel.offsets[y])) * rowLength) + (x * 4);
+                        float weight = kernel.weights[i];
+
+                        a += intermediate[offset] * weight;
+                        r += intermediate[offset + 1] * weight;
+                        g += intermediate[offset + 2] * weight;
+                        b += intermediate[offset + 3] * weight;
+                    }
+
+                    target[(y * width) + x] = (a <= 0f)
+                        ? 0 : ((clamp(a) << 24) | (clamp(r / a) << 16) | (clamp(g / a) << 8) |
+                            clamp(b / a));
+                }
+            }
+        }
+
+        @Override protected Band split(int from, int to) {
+            return new VerticalPass(intermediate, target, width, kernel, from, to);
+        }
+
+        /**
+         * @return  the channel value rounded and clamped to the {@code 0..255} range.
+         */
+        private static int clamp(float value) {
+            return Math.max(0, Math.min(255, Math.round(value)));
+        }
+    }
+}
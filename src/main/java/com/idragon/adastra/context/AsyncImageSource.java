@@ -0,0 +1,50 @@
+package com.idragon.adastra.context;
+
+import java.awt.Dimension;
+import java.awt.Image;
+
+import java.util.Collection;
+import java.util.concurrent.Future;
+
+
+/**
+ * Image source, which can load images asynchronously, so callers like the Swing event dispatch
+ * thread don't have to wait for locating and decoding image resources.
+ *
+ * @author  iDragon
+ */
+public interface AsyncImageSource extends ImageSource {
+
+    /**
+     * Request an image asynchronously.
+     *
+     * @param   imageCode  Image code.
+     * @param   dimension  Dimension, or {@code null} to use the image's default size.
+     *
+     * @return  the future image, which is {@code null}, if the image doesn't exist.
+     */
+    Future<Image> getImageAsync(String imageCode, Dimension dimension);
+
+    /**
+     * Request an image asynchronously, and notify a callback on completion. The callback is called
+     * by the loading thread, Swing clients should pass the result to the event dispatch thread.
+     *
+     * @param   imageCode  Image code.
+     * @param   dimension  Dimension, or {@code null} to use the image's default size.
+     * @param   callback   Callback to notify, may be {@code null}.
+     *
+     * @return  the future image, which is {@code null}, if the image doesn't exist.
+     */
+    Future<Image> getImageAsync(String imageCode, Dimension dimension, ImageCallback callback);
+
+    /**
+     * Load images in the background to warm up the cache of the image source.
+     *
+     * @param   imageCodes  Image codes to load.
+     * @param   dimensions  Dimensions to load each image with. The default size is loaded, if no
+     *                      dimensions are given.
+     *
+     * @return  the future, which completes when every image is loaded.
+     */
+    Future<?> preload(Collection<String> imageCodes, Dimension... dimensions);
+}
@@ -0,0 +1,706 @@
+package com.idragon.adastra.context;
+
+import com.idragon.adastra.lang.LatencyHistogram;
+
+import org.apache.commons.io.FileUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Asynchronous companion of a workspace, which reads, writes, copies and deletes workspace files
+ * without blocking the calling thread, like the event dispatch thread. Reads and writes use
+ * asynchronous file channels, copies and deletes block an executor thread. Every operation is
+ * started on the executor, so opening files doesn't block the caller either.
+ *
+ * <p>The count of concurrent operations is bounded. Operations above the bound are queued, instead
+ * of blocking the caller, and they're started, when running operations complete. The latency of
+ * each operation is recorded from its submission until its completion, per operation type.</p>
+ *
+ * <p>Files written by this class are not accounted by quota workspaces, until their next
+ * rescan.</p>
+ *
+ * @author  hp
+ */
+public class AsyncWorkspace {
+
+    /** Default maximal count of concurrent operations */
+    public static final int DEFAULT_MAX_CONCURRENT_OPERATIONS = 16;
+
+    // SLF4J log
+    private final Logger log = LoggerFactory.getLogger(AsyncWorkspace.class);
+
+    /** Operations waiting for a permit */
+    private final Queue<Operation<?>> pendingOperations =
+        new ConcurrentLinkedQueue<Operation<?>>();
+
+    /** Latency of reads */
+    private final LatencyHistogram readLatency = new LatencyHistogram();
+
+    /** Latency of writes */
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+
+    /** Latency of copies */
+    private final LatencyHistogram copyLatency = new LatencyHistogram();
+
+    /** Latency of deletes */
+    private final LatencyHistogram deleteLatency = new LatencyHistogram();
+
+    /** The workspace of the files */
+    private Workspace workspace;
+
+    /** Maximal count of concurrent operations */
+    private int maxConcurrentOperations = DEFAULT_MAX_CONCURRENT_OPERATIONS;
+
+    /** Executor of the operations, or {@code null} to create one on initialization */
+    private ExecutorService executor;
+
+    /** Permits of the concurrent operations, or {@code null}, if not initialized */
+    private Semaphore permits;
+
+    /** The executor created on initialization, or {@code null}, if an executor is set */
+    private ExecutorService ownExecutor;
+
+    /** Absolute normalized root of the workspace, or {@code null}, if not initialized */
+    private Path root;
+
+    /**
+     * Asynchronous companion of a workspace.
+     */
+    public AsyncWorkspace() {
+    }
+
+    /**
+     * Checks, if the asynchronous workspace is initialized.
+     *
+     * @throws  IllegalArgumentException  if it's not initialized.
+     */
+    private void checkInitialized() {
+        Assert.isTrue(permits != null, "async workspace is not initialized");
+    }
+
+    /**
+     * Checks, if a path is within the workspace.
+     *
+     * @return  the absolute normalized path.
+     *
+     * @throws  IllegalArgumentException  if the path is outside the workspace.
+     */
+    private Path checkPath(Path path) {
+
+        Assert.notNull(path, "path is null");
+
+        Path result = path.toAbsolutePath().normalize();
+        Assert.isTrue(result.startsWith(root), "path is outside the workspace: " + path);
+
+        return result;
+    }
+
+    /**
+     * Closes a channel, logging the failure.
+     */
+    private void close(AsynchronousFileChannel channel) {
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Channel can't be closed", e);
+        }
+    }
+
+    /**
+     * Copies a workspace file to another.
+     *
+     * @param   source  The workspace file to copy.
+     * @param   target  The workspace file to copy to, which is created or truncated.
+     *
+     * @return  the future of the count of bytes copied.
+     *
+     * @see     com.idragon.adastra.context.Workspace#transfer
+     */
+    public Future<Long> copy(final Path source, final Path target) {
+
+        checkInitialized();
+        checkPath(source);
+        checkPath(target);
+
+        return submit(new Operation<Long>(copyLatency) {
+
+                    @Override protected void execute() {
+
+                        try {
+                            complete(workspace.transfer(source, target));
+                        } catch (IOException | RuntimeException e) {
+                            fail(e);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Deletes a workspace file or directory tree.
+     *
+     * @param   file  The workspace file or directory to delete.
+     *
+     * @return  the future of {@code true}, if the file existed.
+     */
+    public Future<Boolean> delete(Path file) {
+
+        checkInitialized();
+
+        final Path path = checkPath(file);
+
+        return submit(new Operation<Boolean>(deleteLatency) {
+
+                    @Override protected void execute() {
+
+                        try {
+
+                            if (Files.isDirectory(path)) {
+
+                                FileUtils.deleteDirectory(path.toFile());
+                                complete(true);
+
+                            } else {
+                                complete(Files.deleteIfExists(path));
+                            }
+
+                        } catch (IOException | RuntimeException e) {
+                            fail(e);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Shuts down the executor, if it was created on initialization. Queued operations are
+     * cancelled, running operations complete.
+     */
+    public void destroy() {
+
+        permits = null;
+
+        for (Operation<?> operation; (operation = pendingOperations.poll()) != null;) {
+            operation.cancel(false);
+        }
+
+        if (ownExecutor != null) {
+
+            ownExecutor.shutdown();
+            ownExecutor = null;
+            executor = null;
+        }
+    }
+
+    /**
+     * Starts the queued operations, while permits are available.
+     */
+    private void drain() {
+
+        Semaphore currentPermits = permits;
+
+        while ((currentPermits != null) && !pendingOperations.isEmpty() &&
+                currentPermits.tryAcquire()) {
+
+            Operation<?> operation = pendingOperations.poll();
+
+            if (operation == null) {
+                currentPermits.release();
+            } else {
+
+                try {
+                    executor.execute(operation);
+                } catch (RejectedExecutionException e) {
+                    operation.fail(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return  the latency histogram of copies.
+     */
+    public LatencyHistogram getCopyLatency() {
+        return copyLatency;
+    }
+
+    /**
+     * @return  the latency histogram of deletes.
+     */
+    public LatencyHistogram getDeleteLatency() {
+        return deleteLatency;
+    }
+
+    /**
+     * @return  the executor of the operations.
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return  the count of running operations.
+     */
+    public int getInFlightCount() {
+
+        Semaphore currentPermits = permits;
+
+        return (currentPermits == null)
+            ? 0 : (maxConcurrentOperations - currentPermits.availablePermits());
+    }
+
+    /**
+     * @return  the maximal count of concurrent operations.
+     */
+    public int getMaxConcurrentOperations() {
+        return maxConcurrentOperations;
+    }
+
+    /**
+     * @return  the count of operations waiting for a permit.
+     */
+    public int getPendingCount() {
+        return pendingOperations.size();
+    }
+
+    /**
+     * @return  the latency histogram of reads.
+     */
+    public LatencyHistogram getReadLatency() {
+        return readLatency;
+    }
+
+    /**
+     * @return  the workspace of the files.
+     */
+    public Workspace getWorkspace() {
+        return workspace;
+    }
+
+    /**
+     * @return  the latency histogram of writes.
+     */
+    public LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    /**
+     * Initialize the asynchronous workspace after performing dependency injection.
+     *
+     * @throws  IOException               if the root of the workspace can't be resolved.
+     * @throws  IllegalArgumentException  if it's already initialized, or no workspace is set.
+     */
+    public void init() throws IOException {
+
+        Assert.isTrue(permits == null, "async workspace already initialized");
+        Assert.notNull(workspace, "workspace is null");
+
+        root = workspace.getPath().toAbsolutePath().normalize();
+
+        if (executor == null) {
+
+            ownExecutor = Executors.newFixedThreadPool(maxConcurrentOperations,
+                    new DaemonThreadFactory());
+            executor = ownExecutor;
+        }
+
+        permits = new Semaphore(maxConcurrentOperations);
+    }
+
+    /**
+     * Reads a whole workspace file.
+     *
+     * @param   file  The workspace file to read.
+     *
+     * @return  the future of the content.
+     */
+    public Future<byte[]> read(Path file) {
+
+        checkInitialized();
+
+        final Path path = checkPath(file);
+
+        return submit(new Operation<byte[]>(readLatency) {
+
+                    @Override protected void execute() {
+                        startRead(path, this);
+                    }
+                });
+    }
+
+    /**
+     * @param  executor  the executor of the operations to set, or {@code null} to create a pool of
+     *                   daemon threads on initialization, which is shut down on destruction.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param  maxConcurrentOperations  the maximal count of concurrent operations to set. The
+     *                                  default is {@code 16}.
+     */
+    public void setMaxConcurrentOperations(int maxConcurrentOperations) {
+        Assert.isTrue(0 < maxConcurrentOperations,
+            "invalid operation count: " + maxConcurrentOperations);
+
+        this.maxConcurrentOperations = maxConcurrentOperations;
+    }
+
+    /**
+     * @param  workspace  the workspace of the files to set.
+     */
+    public void setWorkspace(Workspace workspace) {
+        this.workspace = workspace;
+    }
+
+    /**
+     * Starts reading a file into a buffer of its size.
+     */
+    private void startRead(Path path, final Operation<byte[]> operation) {
+
+        try {
+
+            final AsynchronousFileChannel channel = AsynchronousFileChannel.open(path,
+                    toOptions(StandardOpenOption.READ), executor);
+            long size = channel.size();
+
+            if (Integer.MAX_VALUE < size) {
+
+                close(channel);
+                operation.fail(new IOException("file is too large: " + path));
+
+                return;
+            }
+
+            final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+
+            channel.read(buffer, 0L, null, new CompletionHandler<Integer, Void>() {
+
+                    @Override public void completed(Integer count, Void attachment) {
+
+                        if ((count != -1) && buffer.hasRemaining()) {
+
+                            try {
+                                channel.read(buffer, buffer.position(), null, this);
+                            } catch (RuntimeException e) {
+                                failed(e, attachment);
+                            }
+
+                            return;
+                        }
+
+                        close(channel);
+
+                        // The file may have been truncated meanwhile
+                        operation.complete(buffer.hasRemaining()
+                                ? Arrays.copyOf(buffer.array(), buffer.position())
+                                : buffer.array());
+                    }
+
+                    @Override public void failed(Throwable e, Void attachment) {
+
+                        close(channel);
+                        operation.fail(e);
+                    }
+                });
+
+        } catch (IOException | RuntimeException e) {
+            operation.fail(e);
+        }
+    }
+
+    /**
+     * Starts writing a buffer into a file.
+     */
+    private void startWrite(Path path, final ByteBuffer buffer, final Operation<Long> operation) {
+
+        try {
+
+            final AsynchronousFileChannel channel = AsynchronousFileChannel.open(path,
+                    toOptions(StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE), executor);
+
+            channel.write(buffer, 0L, null, new CompletionHandler<Integer, Void>() {
+
+                    @Override public void completed(Integer count, Void attachment) {
+
+                        if (buffer.hasRemaining()) {
+
+                            try {
+                                channel.write(buffer, buffer.position(), null, this);
+                            } catch (RuntimeException e) {
+                                failed(e, attachment);
+                            }
+
+                            return;
+                        }
+
+                        close(channel);
+                        operation.complete((long) buffer.position());
+                    }
+
+                    @Override public void failed(Throwable e, Void attachment) {
+
+                        close(channel);
+                        operation.fail(e);
+                    }
+                });
+
+        } catch (IOException | RuntimeException e) {
+            operation.fail(e);
+        }
+    }
+
+    /**
+     * Starts an operation on the executor, if a permit is available, otherwise queues it.
+     *
+     * @return  the operation.
+     */
+    private <V> Future<V> submit(Operation<V> operation) {
+
+        pendingOperations.add(operation);
+        drain();
+
+        return operation;
+    }
+
+    /**
+     * @return  the set of open options.
+     */
+    private Set<OpenOption> toOptions(OpenOption... options) {
+        return new HashSet<OpenOption>(Arrays.asList(options));
+    }
+
+    /**
+     * Writes a workspace file. The file is created or truncated.
+     *
+     * @param   file     The workspace file to write.
+     * @param   content  The content to write, which must not be changed, until the write
+     *                   completes.
+     *
+     * @return  the future of the count of bytes written.
+     */
+    public Future<Long> write(Path file, byte[] content) {
+
+        checkInitialized();
+        Assert.notNull(content, "content is null");
+
+        final Path path = checkPath(file);
+        final ByteBuffer buffer = ByteBuffer.wrap(content);
+
+        return submit(new Operation<Long>(writeLatency) {
+
+                    @Override protected void execute() {
+                        startWrite(path, buffer, this);
+                    }
+                });
+    }
+
+    /**
+     * Thread factory of daemon workspace I/O threads.
+     */
+    private static final class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override public Thread newThread(Runnable runnable) {
+
+            Thread thread = new Thread(runnable,
+                    "workspace-io-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+
+    /**
+     * Operation, which is its own future. It releases its permit, and records its latency on
+     * completion. Only operations, which are not started yet, can be cancelled.
+     */
+    private abstract class Operation<V> implements Future<V>, Runnable {
+
+        private final LatencyHistogram latency;
+        private final long start = System.nanoTime();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private volatile V value;
+        private volatile Throwable failure;
+        private volatile boolean cancelled;
+
+        /**
+         * Operation, which is its own future.
+         *
+         * @param  latency  The latency histogram of the operation type.
+         */
+        public Operation(LatencyHistogram latency) {
+            this.latency = latency;
+        }
+
+        /**
+         * Cancels the operation, if it's not started yet, so it never touches the files. Started
+         * operations are not cancelled.
+         */
+        @Override public boolean cancel(boolean mayInterruptIfRunning) {
+
+            if (!started.compareAndSet(false, true)) {
+                return false;
+            }
+
+            pendingOperations.remove(this);
+            completed.set(true);
+            cancelled = true;
+            done.countDown();
+
+            return true;
+        }
+
+        /**
+         * Completes the future with a value.
+         */
+        void complete(V result) {
+
+            boolean completing = completed.compareAndSet(false, true);
+
+            if (completing) {
+                value = result;
+            }
+
+            finish(completing);
+        }
+
+        /**
+         * Performs the operation, which must complete or fail the future eventually.
+         */
+        protected abstract void execute();
+
+        /**
+         * Completes the future with a failure.
+         */
+        void fail(Throwable e) {
+
+            boolean completing = completed.compareAndSet(false, true);
+
+            if (completing) {
+                failure = e;
+            }
+
+            finish(completing);
+        }
+
+        /**
+         * Records the latency, starts the next queued operation with the permit, and releases the
+         * waiting threads, unless the future is cancelled.
+         */
+        private void finish(boolean completing) {
+
+            // The latency and the permit are released first, so they're visible to the waiters
+            latency.record(System.nanoTime() - start);
+            release();
+
+            if (completing) {
+                done.countDown();
+            }
+        }
+
+        @Override public V get() throws InterruptedException, ExecutionException {
+
+            done.await();
+
+            return getValue();
+        }
+
+        @Override public V get(long timeout, TimeUnit unit) throws InterruptedException,
+            ExecutionException, TimeoutException {
+
+            if (!done.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+
+            return getValue();
+        }
+
+        /**
+         * @return  the value of the completed future.
+         */
+        private V getValue() throws ExecutionException {
+
+            if (cancelled) {
+                throw new CancellationException();
+            }
+
+            if (failure != null) {
+                throw new ExecutionException(failure);
+            }
+
+            return value;
+        }
+
+        @Override public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override public boolean isDone() {
+            return done.getCount() == 0L;
+        }
+
+        /**
+         * Releases the permit of the operation, and starts the next queued operation.
+         */
+        private void release() {
+
+            Semaphore currentPermits = permits;
+
+            if (currentPermits != null) {
+
+                currentPermits.release();
+                drain();
+            }
+        }
+
+        /**
+         * Performs the operation, unless it was cancelled after it was taken from the queue.
+         */
+        @Override public void run() {
+
+            if (started.compareAndSet(false, true)) {
+                execute();
+            } else {
+                release();
+            }
+        }
+    }
+}
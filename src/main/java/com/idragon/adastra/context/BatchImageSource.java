@@ -0,0 +1,26 @@
+package com.idragon.adastra.context;
+
+import java.awt.Image;
+
+import java.util.Collection;
+import java.util.Map;
+
+
+/**
+ * Image source interface, which serves batches of image requests at once.
+ *
+ * @author  iDragon
+ */
+public interface BatchImageSource extends ImageSource {
+
+    /**
+     * Get a batch of images. Duplicate requests are served once. A failing request doesn't fail
+     * the batch: its failure is logged, and the other images are still served.
+     *
+     * @param   requests  Image requests.
+     *
+     * @return  the map of the images by request in the order of the requests. Missing images and
+     *          failed requests are mapped to {@code null}.
+     */
+    Map<ImageRequest, Image> getImages(Collection<ImageRequest> requests);
+}
@@ -0,0 +1,80 @@
+package com.idragon.adastra.context;
+
+import org.springframework.util.Assert;
+
+import java.io.Serializable;
+
+
+/**
+ * Immutable handle of a blob in a blob store. The handle is identified by the hash of the content,
+ * so it stays valid, wherever the content is stored, and it can be persisted by its identifier.
+ *
+ * @author  hp
+ * @see     com.idragon.adastra.context.BlobStore
+ */
+public final class BlobHandle implements Serializable {
+
+    // Serial number
+    private static final long serialVersionUID = -6093474155288470951L;
+
+    /** Hex hash of the content */
+    private final String id;
+
+    /** Content size in bytes */
+    private final long size;
+
+    /**
+     * Handle of a blob in a blob store.
+     *
+     * @param  id    Hex hash of the content.
+     * @param  size  Content size in bytes.
+     */
+    BlobHandle(String id, long size) {
+
+        Assert.hasText(id, "invalid id: " + id);
+
+        this.id = id;
+        this.size = size;
+    }
+
+    /**
+     * This method is considering the identifier only.
+     */
+    @Override public boolean equals(Object object) {
+
+        if (this == object) {
+            return true;
+        }
+
+        if (!(object instanceof BlobHandle)) {
+            return false;
+        }
+
+        return id.equals(((BlobHandle) object).id);
+    }
+
+    /**
+     * @return  the hex hash of the content.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return  the content size in bytes.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * This method is considering the identifier only.
+     */
+    @Override public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override public String toString() {
+        return id + " (" + size + " bytes)";
+    }
+}
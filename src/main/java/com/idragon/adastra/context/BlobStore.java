@@ -0,0 +1,652 @@
+package com.idragon.adastra.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Content addressable blob store on top of a workspace. Blobs are stored under the hex hash of
+ * their content, fanned out into two levels of hash-prefix directories, like {@code
+ * blobs/3f/a2/3fa2...}. The identifiers are uniform hashes already, so the fan-out is taken from
+ * the identifier itself, and the layout doesn't depend on the type or the configuration of the
+ * workspace. Writing content, which is stored already, only references the existing blob, so a
+ * duplicate write of a byte array costs only the hash.
+ *
+ * <p>Blobs are reference counted: every write and {@link #retain} adds a reference, and {@link
+ * #release} removes one. Unreferenced blobs are deleted by {@link #gc}, without blocking the
+ * other operations; only writes of the same content wait for the deletion. The reference counts
+ * are kept in memory, and persisted into an index file on {@link #flush} and destruction. Blobs,
+ * which are missing from the index after a crash, are never collected, and they are adopted, when
+ * the same content is written again.</p>
+ *
+ * @author  hp
+ * @see     com.idragon.adastra.context.BlobHandle
+ */
+public class BlobStore {
+
+    /** Default directory name of the store */
+    public static final String DEFAULT_DIRECTORY_NAME = "blobs";
+
+    /** Default hash algorithm */
+    public static final String DEFAULT_ALGORITHM = "SHA-256";
+
+    /** Name of the index file */
+    private static final String INDEX_FILE_NAME = "index.properties";
+
+    /** Hex digits */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // SLF4J log
+    private final Logger log = LoggerFactory.getLogger(BlobStore.class);
+
+    /** Reference counts by blob identifier, guarded by itself */
+    private final Map<String, Integer> referenceCounts = new HashMap<String, Integer>();
+
+    /** Identifiers of the blobs being deleted, guarded by the reference counts */
+    private final Set<String> collectedIds = new HashSet<String>();
+
+    /** Counts of the writes in flight by blob identifier, guarded by the reference counts */
+    private final Map<String, Integer> pendingCounts = new HashMap<String, Integer>();
+
+    /** Count of writes, which found their content stored already */
+    private final AtomicLong deduplicationCount = new AtomicLong();
+
+    /** Workspace of the store */
+    private Workspace workspace;
+
+    /** Directory name of the store within the workspace */
+    private String directoryName = DEFAULT_DIRECTORY_NAME;
+
+    /** Hash algorithm */
+    private String algorithm = DEFAULT_ALGORITHM;
+
+    /** Directory of the store, or {@code null}, if the store is not initialized */
+    private Path directory;
+
+    /**
+     * Content addressable blob store on top of a workspace.
+     */
+    public BlobStore() {
+    }
+
+    /**
+     * @return  the hex form of a hash.
+     */
+    private static String toHex(byte[] hash) {
+
+        char[] result = new char[hash.length * 2];
+
+        for (int i = 0; i < hash.length; i++) {
+
+            result[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0x0f];
+            result[(i * 2) + 1] = HEX_DIGITS[hash[i] & 0x0f];
+        }
+
+        return new String(result);
+    }
+
+    /**
+     * Adds a reference to a blob, which is stored already. If the blob is being deleted, the
+     * deletion is waited for. If the blob is not stored, a pending reference is added, so the
+     * blob is not collected, until the write is finished by {@link #putReference}.
+     *
+     * @return  {@code true}, if the blob is stored already, so the reference is added,
+     *          {@code false}, if the pending reference is added.
+     *
+     * @throws  InterruptedIOException  if the thread is interrupted while waiting.
+     */
+    private boolean addReference(String id, Path path) throws InterruptedIOException {
+
+        synchronized (referenceCounts) {
+
+            while (collectedIds.contains(id)) {
+
+                try {
+                    referenceCounts.wait();
+                } catch (InterruptedException e) {
+
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while collecting blob: " + id);
+                }
+            }
+
+            Integer count = referenceCounts.get(id);
+
+            // Blobs missing from the index are adopted
+            if ((count == null) && !Files.exists(path)) {
+
+                Integer pendingCount = pendingCounts.get(id);
+                pendingCounts.put(id, (pendingCount == null) ? 1 : (pendingCount + 1));
+
+                return false;
+            }
+
+            referenceCounts.put(id, (count == null) ? 1 : (count + 1));
+        }
+
+        deduplicationCount.incrementAndGet();
+
+        return true;
+    }
+
+    /**
+     * Checks, if the store is initialized.
+     *
+     * @throws  IllegalArgumentException  if the store is not initialized.
+     */
+    private void checkInitialized() {
+        Assert.isTrue(directory != null, "store is not initialized");
+    }
+
+    /**
+     * Persists the index, and releases the resources of the store.
+     */
+    public void destroy() {
+
+        if (directory != null) {
+
+            try {
+                flush();
+            } catch (IOException e) {
+                log.warn("Blob index can't be persisted: " + directory, e);
+            }
+
+            directory = null;
+        }
+    }
+
+    /**
+     * Persists the reference counts into the index file atomically.
+     *
+     * @throws  IOException  if the index can't be written.
+     */
+    public void flush() throws IOException {
+
+        checkInitialized();
+
+        Properties index = new Properties();
+
+        synchronized (referenceCounts) {
+
+            for (Map.Entry<String, Integer> entry : referenceCounts.entrySet()) {
+                index.setProperty(entry.getKey(), entry.getValue().toString());
+            }
+        }
+
+        try (StagedWrite write = workspace.stage(directory.resolve(INDEX_FILE_NAME))) {
+
+            index.store(Channels.newOutputStream(write.getChannel()), null);
+            write.commit();
+        }
+    }
+
+    /**
+     * Deletes the unreferenced blobs. The files are deleted outside the lock of the reference
+     * counts, so only writes of the same content wait for the deletion.
+     *
+     * @return  the count of the deleted blobs.
+     *
+     * @throws  IOException  if a blob can't be deleted.
+     */
+    public int gc() throws IOException {
+
+        checkInitialized();
+
+        List<String> candidates = new ArrayList<String>();
+
+        synchronized (referenceCounts) {
+
+            for (Map.Entry<String, Integer> entry : referenceCounts.entrySet()) {
+
+                if ((entry.getValue() == 0) && !pendingCounts.containsKey(entry.getKey())) {
+                    candidates.add(entry.getKey());
+                }
+            }
+        }
+
+        int result = 0;
+
+        for (String id : candidates) {
+
+            synchronized (referenceCounts) {
+
+                // The blob may have been referenced again since the candidates were collected
+                Integer count = referenceCounts.get(id);
+
+                if ((count == null) || (count != 0) || pendingCounts.containsKey(id)) {
+                    continue;
+                }
+
+                referenceCounts.remove(id);
+                collectedIds.add(id);
+            }
+
+            boolean deleted = false;
+
+            try {
+
+                Files.deleteIfExists(getPath(id));
+                deleted = true;
+                result++;
+
+            } finally {
+
+                synchronized (referenceCounts) {
+
+                    if (!deleted) {
+                        referenceCounts.put(id, 0);
+                    }
+
+                    collectedIds.remove(id);
+                    referenceCounts.notifyAll();
+                }
+            }
+        }
+
+        log.debug("Unreferenced blobs deleted: count={}", result);
+
+        return result;
+    }
+
+    /**
+     * @return  the hash algorithm.
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return  the count of the blobs in the index.
+     */
+    public int getBlobCount() {
+
+        synchronized (referenceCounts) {
+            return referenceCounts.size();
+        }
+    }
+
+    /**
+     * @return  the count of writes, which found their content stored already.
+     */
+    public long getDeduplicationCount() {
+        return deduplicationCount.get();
+    }
+
+    /**
+     * @return  the directory name of the store within the workspace.
+     */
+    public String getDirectoryName() {
+        return directoryName;
+    }
+
+    /**
+     * @param   id  The identifier of a blob.
+     *
+     * @return  the handle of the blob, or {@code null}, if the blob doesn't exist.
+     *
+     * @throws  IOException  if the blob can't be accessed.
+     */
+    public BlobHandle getHandle(String id) throws IOException {
+
+        checkInitialized();
+
+        try {
+            return new BlobHandle(id, Files.size(getPath(id)));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return  the path of a blob.
+     */
+    private Path getPath(String id) {
+
+        Assert.hasText(id, "invalid id: " + id);
+        Assert.isTrue((4 < id.length()) && (Character.digit(id.charAt(0), 16) != -1) &&
+            (id.indexOf('/') == -1) && (id.indexOf('\\') == -1), "invalid id: " + id);
+
+        return directory.resolve(id.substring(0, 2)).resolve(id.substring(2, 4)).resolve(id);
+    }
+
+    /**
+     * @param   handle  The handle of a blob.
+     *
+     * @return  the reference count of the blob.
+     */
+    public int getReferenceCount(BlobHandle handle) {
+
+        Assert.notNull(handle, "handle is null");
+
+        synchronized (referenceCounts) {
+
+            Integer count = referenceCounts.get(handle.getId());
+
+            return (count == null) ? 0 : count;
+        }
+    }
+
+    /**
+     * @return  the workspace of the store.
+     */
+    public Workspace getWorkspace() {
+        return workspace;
+    }
+
+    /**
+     * Initialize store after performing dependency injection, and load the index.
+     *
+     * @throws  IOException               if the directory of the store can't be created, or the
+     *                                    index can't be read.
+     * @throws  IllegalArgumentException  if the store is already initialized, no workspace is
+     *                                    set, or the algorithm is not supported.
+     */
+    public void init() throws IOException {
+
+        Assert.isTrue(directory == null, "store already initialized");
+        Assert.notNull(workspace, "workspace is null");
+        newDigest();
+
+        directory = workspace.getPath(directoryName);
+
+        Path indexFile = directory.resolve(INDEX_FILE_NAME);
+
+        if (Files.exists(indexFile)) {
+
+            Properties index = new Properties();
+
+            try (InputStream in = Files.newInputStream(indexFile)) {
+                index.load(in);
+            }
+
+            synchronized (referenceCounts) {
+
+                for (String id : index.stringPropertyNames()) {
+                    referenceCounts.put(id, Integer.valueOf(index.getProperty(id)));
+                }
+            }
+        }
+
+        log.debug("Blob store initialized: directory={}, blobs={}", directory,
+            referenceCounts.size());
+    }
+
+    /**
+     * @return  the new message digest of the hash algorithm.
+     *
+     * @throws  IllegalArgumentException  if the algorithm is not supported.
+     */
+    private MessageDigest newDigest() {
+
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("unsupported algorithm: " + algorithm, e);
+        }
+    }
+
+    /**
+     * Opens a blob for reading.
+     *
+     * @param   handle  The handle of the blob.
+     *
+     * @return  the input stream of the content, which must be closed by the caller.
+     *
+     * @throws  IOException  if the blob can't be opened.
+     */
+    public InputStream open(BlobHandle handle) throws IOException {
+
+        checkInitialized();
+        Assert.notNull(handle, "handle is null");
+
+        return Channels.newInputStream(workspace.openChannel(getPath(handle.getId())));
+    }
+
+    /**
+     * Stores a content, unless it's stored already, and adds a reference to it.
+     *
+     * @param   content  The content to store.
+     *
+     * @return  the handle of the blob.
+     *
+     * @throws  IOException  if the content can't be stored.
+     */
+    public BlobHandle put(byte[] content) throws IOException {
+
+        checkInitialized();
+        Assert.notNull(content, "content is null");
+
+        String id = toHex(newDigest().digest(content));
+        Path path = getPath(id);
+
+        if (!addReference(id, path)) {
+
+            boolean written = false;
+
+            try {
+
+                // Concurrent writes of the same content publish the same file
+                Files.createDirectories(path.getParent());
+
+                try (StagedWrite write = workspace.stage(path)) {
+
+                    write.getChannel().write(ByteBuffer.wrap(content));
+                    write.commit();
+                }
+
+                written = true;
+
+            } finally {
+                putReference(id, written);
+            }
+        }
+
+        return new BlobHandle(id, content.length);
+    }
+
+    /**
+     * Stores a content, unless it's stored already, and adds a reference to it. Since the hash is
+     * known only at the end of the stream, the content is always written to a temporary file.
+     *
+     * @param   in  The input stream of the content to store, which is not closed.
+     *
+     * @return  the handle of the blob.
+     *
+     * @throws  IOException  if the content can't be stored.
+     */
+    public BlobHandle put(InputStream in) throws IOException {
+
+        checkInitialized();
+        Assert.notNull(in, "input stream is null");
+
+        MessageDigest digest = newDigest();
+        Path temporaryFile = directory.resolve("." +
+                Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".incoming");
+        long size = 0L;
+
+        try {
+
+            try (FileChannel channel = workspace.openChannel(temporaryFile,
+                            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+
+                OutputStream out = Channels.newOutputStream(channel);
+                DigestInputStream digestIn = new DigestInputStream(in, digest);
+                byte[] buffer = new byte[8192];
+                int count;
+
+                while ((count = digestIn.read(buffer)) != -1) {
+
+                    out.write(buffer, 0, count);
+                    size += count;
+                }
+
+                channel.force(true);
+            }
+
+            String id = toHex(digest.digest());
+            Path path = getPath(id);
+
+            if (!addReference(id, path)) {
+
+                boolean written = false;
+
+                try {
+
+                    Files.createDirectories(path.getParent());
+                    Files.move(temporaryFile, path, StandardCopyOption.ATOMIC_MOVE);
+                    written = true;
+
+                } finally {
+                    putReference(id, written);
+                }
+            }
+
+            return new BlobHandle(id, size);
+
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Finishes a write by replacing its pending reference with a reference, if the blob is
+     * written.
+     *
+     * @param  id       The identifier of the blob.
+     * @param  written  {@code true}, if the blob is written, {@code false}, if the write failed.
+     */
+    private void putReference(String id, boolean written) {
+
+        synchronized (referenceCounts) {
+
+            int pendingCount = pendingCounts.get(id);
+
+            if (pendingCount == 1) {
+                pendingCounts.remove(id);
+            } else {
+                pendingCounts.put(id, pendingCount - 1);
+            }
+
+            if (written) {
+
+                Integer count = referenceCounts.get(id);
+                referenceCounts.put(id, (count == null) ? 1 : (count + 1));
+            }
+        }
+    }
+
+    /**
+     * Reads the whole content of a blob.
+     *
+     * @param   handle  The handle of the blob.
+     *
+     * @return  the content.
+     *
+     * @throws  IOException  if the blob can't be read.
+     */
+    public byte[] read(BlobHandle handle) throws IOException {
+
+        checkInitialized();
+        Assert.notNull(handle, "handle is null");
+
+        return Files.readAllBytes(getPath(handle.getId()));
+    }
+
+    /**
+     * Removes a reference from a blob. The unreferenced blob is deleted by the next {@link #gc}.
+     *
+     * @param  handle  The handle of the blob.
+     *
+     * @throws  IllegalStateException  if the blob is not referenced.
+     */
+    public void release(BlobHandle handle) {
+
+        Assert.notNull(handle, "handle is null");
+
+        synchronized (referenceCounts) {
+
+            Integer count = referenceCounts.get(handle.getId());
+
+            if ((count == null) || (count == 0)) {
+                throw new IllegalStateException("blob is not referenced: " + handle.getId());
+            }
+
+            referenceCounts.put(handle.getId(), count - 1);
+        }
+    }
+
+    /**
+     * Adds a reference to a blob.
+     *
+     * @param  handle  The handle of the blob.
+     *
+     * @throws  IllegalStateException  if the blob is not in the index.
+     */
+    public void retain(BlobHandle handle) {
+
+        Assert.notNull(handle, "handle is null");
+
+        synchronized (referenceCounts) {
+
+            Integer count = referenceCounts.get(handle.getId());
+
+            if (count == null) {
+                throw new IllegalStateException("blob is not indexed: " + handle.getId());
+            }
+
+            referenceCounts.put(handle.getId(), count + 1);
+        }
+    }
+
+    /**
+     * @param  algorithm  the hash algorithm to set. The default is {@code SHA-256}.
+     */
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * @param  directoryName  the directory name of the store within the workspace to set. The
+     *                        default is {@code blobs}.
+     */
+    public void setDirectoryName(String directoryName) {
+        this.directoryName = directoryName;
+    }
+
+    /**
+     * @param  workspace  the workspace of the store to set.
+     */
+    public void setWorkspace(Workspace workspace) {
+        this.workspace = workspace;
+    }
+}
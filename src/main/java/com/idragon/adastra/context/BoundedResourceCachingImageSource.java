@@ -0,0 +1,280 @@
+package com.idragon.adastra.context;
+
+import com.idragon.adastra.lang.CompositeValue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.Assert;
+
+import java.awt.Dimension;
+import java.awt.Image;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Resource based image source with a memory bounded cache. The cache is weighted by pixel bytes
+ * (width &times; height &times; bytes per pixel) and evicts the least recently used images first,
+ * when its capacity is exceeded. Default size and resized images have separate capacities.
+ *
+ * <p>Missing images are cached with a nominal weight of one byte, so they are evicted eventually
+ * too. Images heavier than the whole capacity are returned, but not cached.</p>
+ *
+ * <p>The cache is thread-safe, but concurrent requests of the same uncached image may load it more
+ * than once.</p>
+ *
+ * @author  iDragon
+ */
+public class BoundedResourceCachingImageSource extends AbstractCachingImageSource {
+
+    /** Default capacity of the caches in pixel bytes */
+    public static final long DEFAULT_CAPACITY = 16L * 1024L * 1024L;
+
+    /** Weight of a cached missing image */
+    private static final long MISSING_WEIGHT = 1L;
+
+    // SLF4J log
+    private final Logger log = LoggerFactory.getLogger(BoundedResourceCachingImageSource.class);
+
+    /** Cache of default size images in access order */
+    private final LinkedHashMap<String, Entry> defaultCache =
+        new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /** Cache of resized images in access order */
+    private final LinkedHashMap<CompositeValue, Entry> resizedCache =
+        new LinkedHashMap<CompositeValue, Entry>(16, 0.75f, true);
+
+    /** Capacity of the default size image cache */
+    private long defaultCapacity = DEFAULT_CAPACITY;
+
+    /** Capacity of the resized image cache */
+    private long resizedCapacity = DEFAULT_CAPACITY;
+
+    /** Weight of the default size image cache */
+    private long defaultWeight;
+
+    /** Weight of the resized image cache */
+    private long resizedWeight;
+
+    /**
+     * Resource based image source with a memory bounded cache.
+     */
+    public BoundedResourceCachingImageSource() {
+    }
+
+    @Override public synchronized void clear() {
+
+        log.debug("Clearing image source cache");
+
+        defaultCache.clear();
+        resizedCache.clear();
+
+        defaultWeight = 0L;
+        resizedWeight = 0L;
+    }
+
+    /**
+     * Evicts the least recently used entries of a cache.
+     *
+     * @param   cache    The cache to evict entries from.
+     * @param   excess   The weight to evict at least.
+     * @param   resized  {@code true}, if the cache holds resized images.
+     *
+     * @return  the evicted weight.
+     */
+    private long evict(Map<?, Entry> cache, long excess, boolean resized) {
+
+        long evicted = 0L;
+
+        for (Iterator<Entry> i = cache.values().iterator(); (evicted < excess) && i.hasNext();) {
+
+            Entry entry = i.next();
+
+            log.debug("Evicting image: code={}, weight={}", entry.imageCode, entry.weight);
+
+            i.remove();
+            evicted += entry.weight;
+            recordEviction(resized);
+        }
+
+        return evicted;
+    }
+
+    /**
+     * @return  the capacity of the default size image cache in pixel bytes.
+     */
+    public long getDefaultCapacity() {
+        return defaultCapacity;
+    }
+
+    /**
+     * @return  the weight of the default size image cache in pixel bytes.
+     */
+    public synchronized long getDefaultWeight() {
+        return defaultWeight;
+    }
+
+    @Override public Image getImage(String imageCode, Dimension dimension) {
+        Assert.hasText(imageCode, "invalid image code: " + imageCode);
+
+        if (dimension == null) {
+
+            synchronized (this) {
+
+                Entry entry = defaultCache.get(imageCode);
+
+                if (entry != null) {
+                    log.debug("Returning cached image: code={}", imageCode);
+                    recordHit(false, entry.image);
+
+                    return entry.image;
+                }
+            }
+
+            recordMiss(false);
+
+            Entry entry = new Entry(imageCode, getImageInternal(imageCode, null));
+
+            synchronized (this) {
+
+                if (entry.weight <= defaultCapacity) {
+
+                    log.debug("Caching image: code={}", imageCode);
+
+                    Entry oldEntry = defaultCache.put(imageCode, entry);
+                    defaultWeight += entry.weight - ((oldEntry == null) ? 0L : oldEntry.weight);
+                    defaultWeight -= evict(defaultCache, defaultWeight - defaultCapacity, false);
+                }
+            }
+
+            return entry.image;
+
+        } else {
+
+            CompositeValue key = new CompositeValue(imageCode, dimension.width, dimension.height);
+
+            synchronized (this) {
+
+                Entry entry = resizedCache.get(key);
+
+                if (entry != null) {
+                    log.debug("Returning cached image: code={}, dimension={}", imageCode,
+                        dimension);
+                    recordHit(true, entry.image);
+
+                    return entry.image;
+                }
+            }
+
+            recordMiss(true);
+
+            Entry entry = new Entry(imageCode, getImageInternal(imageCode, dimension));
+
+            synchronized (this) {
+
+                if (entry.weight <= resizedCapacity) {
+
+                    log.debug("Caching image: code={}, dimension={}", imageCode, dimension);
+
+                    Entry oldEntry = resizedCache.put(key, entry);
+                    resizedWeight += entry.weight - ((oldEntry == null) ? 0L : oldEntry.weight);
+                    resizedWeight -= evict(resizedCache, resizedWeight - resizedCapacity, true);
+                }
+            }
+
+            return entry.image;
+        }
+    }
+
+    /**
+     * @return  the capacity of the resized image cache in pixel bytes.
+     */
+    public long getResizedCapacity() {
+        return resizedCapacity;
+    }
+
+    /**
+     * @return  the weight of the resized image cache in pixel bytes.
+     */
+    public synchronized long getResizedWeight() {
+        return resizedWeight;
+    }
+
+    @Override public synchronized long getWeight() {
+        return defaultWeight + resizedWeight;
+    }
+
+    @Override public boolean isThreadSafe() {
+        return true;
+    }
+
+    @Override public synchronized void remove(String imageCode) {
+
+        Entry entry = defaultCache.remove(imageCode);
+
+        if (entry != null) {
+            defaultWeight -= entry.weight;
+        }
+
+        for (Iterator<Entry> i = resizedCache.values().iterator(); i.hasNext();) {
+
+            entry = i.next();
+
+            if (entry.imageCode.equals(imageCode)) {
+
+                i.remove();
+                resizedWeight -= entry.weight;
+            }
+        }
+    }
+
+    /**
+     * @param  defaultCapacity  the capacity of the default size image cache in pixel bytes to set.
+     */
+    public synchronized void setDefaultCapacity(long defaultCapacity) {
+        Assert.isTrue(0L <= defaultCapacity, "invalid capacity: " + defaultCapacity);
+
+        this.defaultCapacity = defaultCapacity;
+        defaultWeight -= evict(defaultCache, defaultWeight - defaultCapacity, false);
+    }
+
+    /**
+     * @param  resizedCapacity  the capacity of the resized image cache in pixel bytes to set.
+     */
+    public synchronized void setResizedCapacity(long resizedCapacity) {
+        Assert.isTrue(0L <= resizedCapacity, "invalid capacity: " + resizedCapacity);
+
+        this.resizedCapacity = resizedCapacity;
+        resizedWeight -= evict(resizedCache, resizedWeight - resizedCapacity, true);
+    }
+
+    @Override public synchronized int size() {
+        return defaultCache.size() + resizedCache.size();
+    }
+
+    /**
+     * Cache entry.
+     */
+    private static final class Entry {
+
+        private final String imageCode;
+        private final Image image;
+        private final long weight;
+
+        /**
+         * Cache entry.
+         *
+         * @param  imageCode  Image code.
+         * @param  image      Image, or {@code null}, if the image doesn't exist.
+         */
+        public Entry(String imageCode, Image image) {
+
+            this.imageCode = imageCode;
+            this.image = image;
+            this.weight = (image == null) ? MISSING_WEIGHT : ImageUtils.getWeight(image);
+        }
+    }
+}
@@ -12,6 +12,25 @@ public interface CachingImageSource extends ImageSource {
      */
     void clear();
 
+    /**
+     * @return  the count of images evicted from the cache to keep it within its bounds. Unbounded
+     *          caches return {@code 0}.
+     */
+    long getEvictionCount();
+
+    /**
+     * @return  the snapshot of the cache statistics.
+     */
+    ImageCacheStatistics getStatistics();
+
+    /**
+     * @return  the current cache weight in pixel bytes (width &times; height &times; bytes per
+     *          pixel of the cached images).
+     *
+     * @see     com.idragon.adastra.context.ImageUtils#getWeight
+     */
+    long getWeight();
+
     /**
      * Removes an image from the cache.
      *
@@ -19,6 +38,11 @@ public interface CachingImageSource extends ImageSource {
      */
     void remove(String imageCode);
 
+    /**
+     * Resets the counters and the latency histograms of the cache.
+     */
+    void resetStatistics();
+
     /**
      * @return  the cache size.
      */
@@ -0,0 +1,95 @@
+package com.idragon.adastra.context;
+
+import com.idragon.adastra.lang.CompositeValue;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Workspace, which remembers the directories it has resolved. Each directory is created once with
+ * {@code Files.createDirectories}, which is safe against concurrent creation, and is returned from
+ * a concurrent map afterwards without touching the file system.
+ *
+ * <p>Since resolved directories are not validated again, a directory deleted from outside is
+ * returned as is. Callers should {@link #invalidate} the directory, when an input/output operation
+ * fails in it, so that it's created again on the next request.</p>
+ *
+ * @author  hp
+ */
+public class CachingWorkspace extends AbstractWorkspace {
+
+    /** Resolved directories by path sequence */
+    private final ConcurrentMap<CompositeValue, File> directories =
+        new ConcurrentHashMap<CompositeValue, File>();
+
+    /**
+     * Workspace, which remembers the directories it has resolved.
+     */
+    public CachingWorkspace() {
+    }
+
+    @Override protected File getDirectoryInternal(String[] pathSequence) throws IOException {
+
+        // The composite value copies the sequence, so callers may reuse their arrays
+        CompositeValue key = new CompositeValue((Object[]) pathSequence);
+        File directory = directories.get(key);
+
+        if (directory == null) {
+
+            directory = joinPathSequence(getRoot(), pathSequence);
+
+            try {
+                Files.createDirectories(directory.toPath());
+            } catch (FileAlreadyExistsException e) {
+
+                // Symbolic links to directories are accepted too
+                if (!directory.isDirectory()) {
+                    throw e;
+                }
+            }
+
+            File existingDirectory = directories.putIfAbsent(key, directory);
+
+            if (existingDirectory != null) {
+                directory = existingDirectory;
+            }
+        }
+
+        return directory;
+    }
+
+    /**
+     * Forgets a resolved directory and every resolved directory within it, so that they are
+     * validated, and created if needed, on the next request.
+     *
+     * @param  pathSequence  Path sequence of the directory. The whole workspace is invalidated, if
+     *                       the path sequence is {@code null} or empty.
+     */
+    public void invalidate(String... pathSequence) {
+
+        Path prefix = joinPathSequence(getRoot(), pathSequence).toPath();
+
+        for (Iterator<File> i = directories.values().iterator(); i.hasNext();) {
+
+            if (i.next().toPath().startsWith(prefix)) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * @return  the count of resolved directories.
+     */
+    public int size() {
+        return directories.size();
+    }
+}
@@ -0,0 +1,492 @@
+package com.idragon.adastra.context;
+
+import com.idragon.adastra.lang.ConcurrencyUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.Assert;
+
+import java.awt.Dimension;
+import java.awt.Image;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+
+
+/**
+ * Resource based image source with a thread-safe cache. Cache hits are served without locking, and
+ * an image is loaded only once per image code and dimension: concurrent callers requesting the same
+ * image wait for the running load and receive the same result.
+ *
+ * <p>Batches of image requests are loaded in parallel on a fork-join pool. The distinct originals
+ * are decoded first, then the resized images are scaled from them, unless a disk image cache or
+ * variant lookup is configured: those resolve each resized image on their own.</p>
+ *
+ * @author  iDragon
+ */
+public class ConcurrentResourceCachingImageSource extends AbstractCachingImageSource
+    implements BatchImageSource {
+
+    // SLF4J log
+    private final Logger log = LoggerFactory.getLogger(ConcurrentResourceCachingImageSource.class);
+
+    /** Cache of default size images */
+    private final ConcurrentMap<String, FutureTask<Image>> defaultCache =
+        new ConcurrentHashMap<String, FutureTask<Image>>();
+
+    /** Cache of resized images */
+    private final ConcurrentMap<String, ConcurrentMap<Dimension, FutureTask<Image>>> resizedCache =
+        new ConcurrentHashMap<String, ConcurrentMap<Dimension, FutureTask<Image>>>();
+
+    /** Fork-join pool of batch loads, or {@code null} to use the shared pool */
+    private ForkJoinPool pool;
+
+    /**
+     * Resource based image source with a thread-safe cache.
+     */
+    public ConcurrentResourceCachingImageSource() {
+    }
+
+    /**
+     * Waits for a load to complete. Failed loads are removed from the cache, so that a later call
+     * may retry them.
+     *
+     * @param   cache      The cache containing the load.
+     * @param   key        The cache key of the load.
+     * @param   task       The load to wait for.
+     * @param   imageCode  Image code, which is being loaded.
+     *
+     * @return  the loaded image, or {@code null}, if the image doesn't exist.
+     */
+    private Image await(ConcurrentMap<?, FutureTask<Image>> cache, Object key,
+        FutureTask<Image> task, String imageCode) {
+
+        // A load queued on the pool, but not started yet, is run by the waiting thread, so waiting
+        // for loads can't starve the pool
+        task.run();
+
+        boolean interrupted = false;
+
+        try {
+
+            while (true) {
+
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+
+                    cache.remove(key, task);
+
+                    Throwable cause = e.getCause();
+
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+
+                    throw new IllegalStateException("image loading failed: " + imageCode, cause);
+                }
+            }
+
+        } finally {
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Claims a load in a cache, unless the cache holds a load of the key already.
+     *
+     * @param   cache    The cache to use.
+     * @param   key      The cache key.
+     * @param   newTask  The new load.
+     * @param   loads    The list of claimed loads to add the new load to.
+     *
+     * @return  the new load, if it was claimed, or the load found in the cache.
+     */
+    private <K> FutureTask<Image> claim(ConcurrentMap<K, FutureTask<Image>> cache, K key,
+        FutureTask<Image> newTask, List<FutureTask<Image>> loads) {
+
+        FutureTask<Image> task = cache.get(key);
+
+        if (task == null) {
+
+            task = cache.putIfAbsent(key, newTask);
+
+            if (task == null) {
+
+                task = newTask;
+                loads.add(task);
+            }
+        }
+
+        return task;
+    }
+
+    @Override public void clear() {
+
+        log.debug("Clearing image source cache");
+
+        defaultCache.clear();
+        resizedCache.clear();
+    }
+
+    /**
+     * @return  the count of completed loads in a cache.
+     */
+    private int countDone(ConcurrentMap<?, FutureTask<Image>> cache) {
+
+        int count = 0;
+
+        for (FutureTask<Image> task : cache.values()) {
+
+            if (task.isDone()) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Creates the load of an image.
+     *
+     * @param   imageCode  Image code.
+     * @param   dimension  Dimension, or {@code null} to use the image's default size.
+     * @param   original   The load of the original image to scale, or {@code null} to resolve the
+     *                     image code.
+     *
+     * @return  the new load.
+     */
+    private FutureTask<Image> createLoad(final String imageCode, final Dimension dimension,
+        final FutureTask<Image> original) {
+
+        return new FutureTask<Image>(new Callable<Image>() {
+
+                    @Override public Image call() {
+
+                        if (original == null) {
+                            return getImageInternal(imageCode, dimension);
+                        }
+
+                        Image image = await(defaultCache, imageCode, original, imageCode);
+
+                        if ((image == null) ||
+                                ((image.getWidth(null) == dimension.width) &&
+                                    (image.getHeight(null) == dimension.height))) {
+                            return image;
+                        }
+
+                        return resize(ImageUtils.toCompatibleImage(image), dimension);
+                    }
+                });
+    }
+
+    @Override public Image getImage(String imageCode, Dimension dimension) {
+        Assert.hasText(imageCode, "invalid image code: " + imageCode);
+
+        if (dimension == null) {
+
+            FutureTask<Image> task = defaultCache.get(imageCode);
+
+            if (task == null) {
+                return load(defaultCache, imageCode, imageCode, null);
+            }
+
+            log.debug("Returning cached image: code={}", imageCode);
+
+            Image image = await(defaultCache, imageCode, task, imageCode);
+            recordHit(false, image);
+
+            return image;
+        }
+
+        ConcurrentMap<Dimension, FutureTask<Image>> cache = getResizedCache(imageCode);
+        FutureTask<Image> task = cache.get(dimension);
+
+        if (task == null) {
+
+            // Dimension instances are mutable, so the cache keeps its own copy
+            Dimension size = new Dimension(dimension);
+
+            return load(cache, size, imageCode, size);
+        }
+
+        log.debug("Returning cached image: code={}, dimension={}", imageCode, dimension);
+
+        Image image = await(cache, dimension, task, imageCode);
+        recordHit(true, image);
+
+        return image;
+    }
+
+    @Override public Map<ImageRequest, Image> getImages(Collection<ImageRequest> requests) {
+        Assert.notNull(requests, "requests is null");
+
+        // Resized images are scaled from the shared originals, unless they're resolved on their own
+        boolean shared = (getDiskImageCache() == null) && !isVariantLookup();
+
+        LinkedHashMap<ImageRequest, FutureTask<Image>> tasks =
+            new LinkedHashMap<ImageRequest, FutureTask<Image>>();
+        List<FutureTask<Image>> defaultLoads = new ArrayList<FutureTask<Image>>();
+        List<FutureTask<Image>> resizedLoads = new ArrayList<FutureTask<Image>>();
+        HashSet<ImageRequest> missedRequests = new HashSet<ImageRequest>();
+
+        for (ImageRequest request : requests) {
+
+            if (tasks.containsKey(request)) {
+                continue;
+            }
+
+            String imageCode = request.getImageCode();
+            FutureTask<Image> task;
+
+            if (request.isResized()) {
+
+                Dimension dimension = request.getDimension();
+                FutureTask<Image> original = null;
+
+                if (shared) {
+                    original = claim(defaultCache, imageCode, createLoad(imageCode, null, null),
+                            defaultLoads);
+                }
+
+                FutureTask<Image> newTask = createLoad(imageCode, dimension, original);
+                task = claim(getResizedCache(imageCode), dimension, newTask, resizedLoads);
+
+                if (task == newTask) {
+
+                    recordMiss(true);
+                    missedRequests.add(request);
+                }
+
+            } else {
+
+                FutureTask<Image> newTask = createLoad(imageCode, null, null);
+                task = claim(defaultCache, imageCode, newTask, defaultLoads);
+
+                if (task == newTask) {
+
+                    recordMiss(false);
+                    missedRequests.add(request);
+                }
+            }
+
+            tasks.put(request, task);
+        }
+
+        log.debug("Loading images: requests={}, loads={}", tasks.size(),
+            defaultLoads.size() + resizedLoads.size());
+
+        // Originals first, then the resized images
+        runAll(defaultLoads);
+        runAll(resizedLoads);
+
+        LinkedHashMap<ImageRequest, Image> result = new LinkedHashMap<ImageRequest, Image>();
+
+        for (Map.Entry<ImageRequest, FutureTask<Image>> entry : tasks.entrySet()) {
+
+            ImageRequest request = entry.getKey();
+            FutureTask<Image> task = entry.getValue();
+            String imageCode = request.getImageCode();
+
+            try {
+
+                Image image = request.isResized()
+                    ? await(getResizedCache(imageCode), request.getDimension(), task, imageCode)
+                    : await(defaultCache, imageCode, task, imageCode);
+
+                if (!missedRequests.contains(request)) {
+                    recordHit(request.isResized(), image);
+                }
+
+                result.put(request, image);
+
+            } catch (RuntimeException e) {
+
+                // The failed load is not cached, so a later request retries it
+                log.warn("Image can't be loaded: " + request, e);
+                result.put(request, null);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return  the fork-join pool of batch loads, or {@code null}, if the shared pool is used.
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @return  the cache of the resized images of an image code, which is created on demand.
+     */
+    private ConcurrentMap<Dimension, FutureTask<Image>> getResizedCache(String imageCode) {
+
+        ConcurrentMap<Dimension, FutureTask<Image>> cache = resizedCache.get(imageCode);
+
+        if (cache == null) {
+
+            ConcurrentMap<Dimension, FutureTask<Image>> newCache =
+                new ConcurrentHashMap<Dimension, FutureTask<Image>>();
+
+            cache = resizedCache.putIfAbsent(imageCode, newCache);
+
+            if (cache == null) {
+                cache = newCache;
+            }
+        }
+
+        return cache;
+    }
+
+    /**
+     * @return  the current cache weight in pixel bytes. Images, which are still being loaded, are
+     *          not counted.
+     */
+    @Override public long getWeight() {
+
+        long weight = weighDone(defaultCache);
+
+        for (ConcurrentMap<Dimension, FutureTask<Image>> subCache : resizedCache.values()) {
+            weight += weighDone(subCache);
+        }
+
+        return weight;
+    }
+
+    /**
+     * Loads an image in the calling thread, unless another thread is loading it already.
+     *
+     * @param   cache      The cache to use.
+     * @param   key        The cache key.
+     * @param   imageCode  Image code.
+     * @param   dimension  Dimension, or {@code null} to use the image's default size.
+     *
+     * @return  the image, or {@code null}, if the image doesn't exist.
+     */
+    private <K> Image load(ConcurrentMap<K, FutureTask<Image>> cache, K key, String imageCode,
+        Dimension dimension) {
+
+        FutureTask<Image> newTask = createLoad(imageCode, dimension, null);
+        FutureTask<Image> task = cache.putIfAbsent(key, newTask);
+
+        if (task == null) {
+
+            // Null values are cached too
+            log.debug("Caching image: code={}, dimension={}", imageCode, dimension);
+
+            recordMiss(dimension != null);
+
+            task = newTask;
+            task.run();
+
+            return await(cache, key, task, imageCode);
+        }
+
+        // Waiting for the load of another thread counts as a hit
+        log.debug("Waiting for image: code={}, dimension={}", imageCode, dimension);
+
+        Image image = await(cache, key, task, imageCode);
+        recordHit(dimension != null, image);
+
+        return image;
+    }
+
+    @Override public boolean isThreadSafe() {
+        return true;
+    }
+
+    @Override public void remove(String imageCode) {
+
+        // Loads in flight are not interrupted, their results are simply not cached
+        defaultCache.remove(imageCode);
+        resizedCache.remove(imageCode);
+    }
+
+    /**
+     * Runs loads in parallel, and waits for them to complete.
+     */
+    private void runAll(List<FutureTask<Image>> loads) {
+
+        if (loads.size() == 1) {
+            loads.get(0).run();
+        } else if (1 < loads.size()) {
+
+            List<Callable<Object>> callables = new ArrayList<Callable<Object>>(loads.size());
+
+            for (FutureTask<Image> load : loads) {
+                callables.add(Executors.callable(load));
+            }
+
+            ((pool == null) ? ConcurrencyUtils.getSharedPool() : pool).invokeAll(callables);
+        }
+    }
+
+    /**
+     * @param  pool  the fork-join pool of batch loads to set, or {@code null} to use the shared
+     *               pool.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return  the cache size. Images, which are still being loaded, are not counted.
+     */
+    @Override public int size() {
+
+        int size = countDone(defaultCache);
+
+        for (ConcurrentMap<Dimension, FutureTask<Image>> subCache : resizedCache.values()) {
+            size += countDone(subCache);
+        }
+
+        return size;
+    }
+
+    /**
+     * @return  the weight of completed loads in a cache.
+     */
+    private long weighDone(ConcurrentMap<?, FutureTask<Image>> cache) {
+
+        long weight = 0L;
+
+        for (FutureTask<Image> task : cache.values()) {
+
+            if (task.isDone()) {
+
+                try {
+                    weight += ImageUtils.getWeight(task.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    // Failed loads have no weight
+                }
+            }
+        }
+
+        return weight;
+    }
+}
@@ -0,0 +1,398 @@
+package com.idragon.adastra.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.core.io.Resource;
+
+import org.springframework.util.Assert;
+import org.springframework.util.DigestUtils;
+
+import java.awt.Dimension;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.net.URLConnection;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Persistent cache of resized images stored in a workspace directory. Each entry is keyed by the
+ * image code and the dimension, and carries the fingerprint (content length and last modification
+ * time) of its source resource, so entries become stale automatically, when the source changes.
+ * Entries are read through memory mapping, and written through a temporary file, which is moved
+ * in place atomically.
+ *
+ * <p>Input/output failures are logged, and handled as cache misses.</p>
+ *
+ * @author  iDragon
+ */
+public class DiskImageCache {
+
+    /** Default name of the cache directory within the workspace */
+    public static final String DEFAULT_DIRECTORY_NAME = "image-cache";
+
+    /** Entry file magic number */
+    private static final int MAGIC = 0x41444943;
+
+    /** Entry file format version */
+    private static final int VERSION = 1;
+
+    /** Size of the entry file header: magic number, version and fingerprint */
+    private static final int HEADER_SIZE = 24;
+
+    /** Entry file extension */
+    private static final String EXTENSION = ".img";
+
+    /** Character set of the image codes */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    // SLF4J log
+    private final Logger log = LoggerFactory.getLogger(DiskImageCache.class);
+
+    /** Workspace */
+    private Workspace workspace;
+
+    /** Name of the cache directory within the workspace */
+    private String directoryName = DEFAULT_DIRECTORY_NAME;
+
+    /** Cache directory */
+    private Path directory;
+
+    /**
+     * Persistent cache of resized images.
+     */
+    public DiskImageCache() {
+    }
+
+    /**
+     * Deletes every entry of the cache.
+     */
+    public void clear() {
+        Assert.notNull(directory, "disk image cache is not initialized");
+
+        log.debug("Clearing disk image cache: directory={}", directory);
+
+        File[] files = directory.toFile().listFiles();
+
+        if (files != null) {
+
+            for (File file : files) {
+                delete(file.toPath());
+            }
+        }
+    }
+
+    /**
+     * Checks, if a fresh entry of a resized image is cached. Only the header of the entry is read.
+     *
+     * @param   imageCode  Image code.
+     * @param   dimension  Image dimension.
+     * @param   source     The source resource of the image.
+     *
+     * @return  {@code true}, if a fresh entry is cached.
+     */
+    public boolean contains(String imageCode, Dimension dimension, Resource source) {
+        Assert.notNull(directory, "disk image cache is not initialized");
+
+        Path file = getFile(imageCode, dimension);
+
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return isFresh(channel, getFingerprint(source));
+        } catch (IOException | RuntimeException e) {
+
+            log.warn("Disk cache entry can't be read: " + file, e);
+
+            return false;
+        }
+    }
+
+    /**
+     * Deletes a file quietly.
+     */
+    private void delete(Path file) {
+
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Disk cache entry can't be deleted: " + file, e);
+        }
+    }
+
+    /**
+     * Reads a resized image from the cache. Stale entries are deleted.
+     *
+     * @param   imageCode  Image code.
+     * @param   dimension  Image dimension.
+     * @param   source     The source resource of the image.
+     *
+     * @return  the cached image, or {@code null}, if the image is not cached, or its entry is
+     *          stale.
+     */
+    public BufferedImage get(String imageCode, Dimension dimension, Resource source) {
+        Assert.notNull(directory, "disk image cache is not initialized");
+
+        Path file = getFile(imageCode, dimension);
+
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try {
+
+            long[] fingerprint = getFingerprint(source);
+
+            try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+                // The header is validated before mapping, so stale entries are never mapped
+                if (isFresh(channel, fingerprint)) {
+
+                    return read(imageCode, dimension,
+                            channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+                                channel.size() - HEADER_SIZE));
+                }
+            }
+
+            // The entry is deleted after its channel is closed
+            log.debug("Stale disk cache entry: code={}, dimension={}", imageCode, dimension);
+            delete(file);
+
+            return null;
+
+        } catch (IOException | RuntimeException e) {
+
+            log.warn("Disk cache entry can't be read: " + file, e);
+
+            return null;
+        }
+    }
+
+    /**
+     * @return  the name of the cache directory within the workspace.
+     */
+    public String getDirectoryName() {
+        return directoryName;
+    }
+
+    /**
+     * @return  the entry file of an image code and dimension.
+     */
+    private Path getFile(String imageCode, Dimension dimension) {
+        return directory.resolve(getPrefix(imageCode) + dimension.width + "x" + dimension.height +
+                EXTENSION);
+    }
+
+    /**
+     * @return  the fingerprint of a resource: its content length and last modification time.
+     */
+    private long[] getFingerprint(Resource source) throws IOException {
+
+        File file;
+
+        try {
+            file = source.getFile();
+        } catch (IOException e) {
+
+            // The resource is not available in the file system, for example it's a jar entry
+            URLConnection connection = source.getURL().openConnection();
+
+            return new long[] { connection.getContentLength(), connection.getLastModified() };
+        }
+
+        return new long[] { file.length(), file.lastModified() };
+    }
+
+    /**
+     * @return  the common file name prefix of the entries of an image code.
+     */
+    private String getPrefix(String imageCode) {
+        return DigestUtils.md5DigestAsHex(imageCode.getBytes(CHARSET)) + "-";
+    }
+
+    /**
+     * @return  the workspace.
+     */
+    public Workspace getWorkspace() {
+        return workspace;
+    }
+
+    /**
+     * Initialize cache after performing dependency injection.
+     *
+     * @throws  IOException               if the cache directory can't be created.
+     * @throws  IllegalArgumentException  if the cache is already initialized, or no workspace is
+     *                                    set.
+     */
+    public void init() throws IOException {
+
+        Assert.isTrue(directory == null, "disk image cache already initialized");
+        Assert.notNull(workspace, "workspace is null");
+
+        directory = workspace.getDirectory(directoryName).toPath();
+    }
+
+    /**
+     * Reads the header of an entry into a heap buffer, and checks its format and fingerprint.
+     *
+     * @return  {@code true}, if the entry is fresh.
+     */
+    private boolean isFresh(FileChannel channel, long[] fingerprint) throws IOException {
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        int count = 0;
+
+        while (header.hasRemaining() && (count != -1)) {
+            count = channel.read(header, header.position());
+        }
+
+        header.flip();
+
+        return (header.remaining() == HEADER_SIZE) && (header.getInt() == MAGIC) &&
+            (header.getInt() == VERSION) && (header.getLong() == fingerprint[0]) &&
+            (header.getLong() == fingerprint[1]);
+    }
+
+    /**
+     * Writes a resized image into the cache.
+     *
+     * @param  imageCode  Image code.
+     * @param  dimension  Image dimension.
+     * @param  source     The source resource of the image.
+     * @param  image      The resized image.
+     */
+    public void put(String imageCode, Dimension dimension, Resource source, BufferedImage image) {
+        Assert.notNull(directory, "disk image cache is not initialized");
+
+        Path file = getFile(imageCode, dimension);
+        Path temporaryFile = null;
+
+        try {
+
+            long[] fingerprint = getFingerprint(source);
+            byte[] code = imageCode.getBytes(CHARSET);
+
+            int width = image.getWidth();
+            int height = image.getHeight();
+
+            ByteBuffer buffer = ByteBuffer.allocate(40 + code.length + (width * height * 4));
+
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(fingerprint[0]).putLong(fingerprint[1]);
+            buffer.putInt(code.length).put(code);
+            buffer.putInt(width).putInt(height).putInt(image.getTransparency());
+            buffer.asIntBuffer().put(image.getRGB(0, 0, width, height, null, 0, width));
+            buffer.rewind();
+
+            temporaryFile = Files.createTempFile(directory, null, null);
+
+            try(FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+            log.debug("Disk caching image: code={}, dimension={}", imageCode, dimension);
+
+        } catch (IOException | RuntimeException e) {
+
+            log.warn("Disk cache entry can't be written: " + file, e);
+
+            if (temporaryFile != null) {
+                delete(temporaryFile);
+            }
+        }
+    }
+
+    /**
+     * Reads the image of an entry following the validated header.
+     *
+     * @return  the image, or {@code null}, if the entry belongs to another image code or
+     *          dimension.
+     */
+    private BufferedImage read(String imageCode, Dimension dimension, ByteBuffer buffer) {
+
+        byte[] code = new byte[buffer.getInt()];
+        buffer.get(code);
+
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        int transparency = buffer.getInt();
+
+        if (!imageCode.equals(new String(code, CHARSET)) || (width != dimension.width) ||
+                (height != dimension.height)) {
+
+            // File name hash collision
+            return null;
+        }
+
+        int[] pixels = new int[width * height];
+        IntBuffer pixelBuffer = buffer.asIntBuffer();
+        pixelBuffer.get(pixels);
+
+        BufferedImage image = new BufferedImage(width, height,
+                (transparency == Transparency.OPAQUE) ? BufferedImage.TYPE_INT_RGB
+                                                      : BufferedImage.TYPE_INT_ARGB);
+
+        image.getRaster().setDataElements(0, 0, width, height, pixels);
+
+        log.debug("Returning disk cached image: code={}, dimension={}", imageCode, dimension);
+
+        return image;
+    }
+
+    /**
+     * Deletes every entry of an image code from the cache.
+     *
+     * @param  imageCode  Image code.
+     */
+    public void remove(String imageCode) {
+        Assert.notNull(directory, "disk image cache is not initialized");
+
+        String prefix = getPrefix(imageCode);
+        File[] files = directory.toFile().listFiles();
+
+        if (files != null) {
+
+            for (File file : files) {
+
+                if (file.getName().startsWith(prefix)) {
+                    delete(file.toPath());
+                }
+            }
+        }
+    }
+
+    /**
+     * @param  directoryName  the name of the cache directory within the workspace to set.
+     */
+    public void setDirectoryName(String directoryName) {
+        Assert.hasText(directoryName, "directory name is empty");
+
+        this.directoryName = directoryName;
+    }
+
+    /**
+     * @param  workspace  the workspace to set.
+     */
+    public void setWorkspace(Workspace workspace) {
+        this.workspace = workspace;
+    }
+}
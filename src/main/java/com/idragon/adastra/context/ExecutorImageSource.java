@@ -0,0 +1,377 @@
+package com.idragon.adastra.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.Assert;
+
+import java.awt.Dimension;
+import java.awt.Image;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Asynchronous image source, which delegates image requests to a target image source using an
+ * executor. The target should be a thread-safe caching image source, otherwise asynchronous and
+ * preloaded images are not retained.
+ *
+ * <p>Images listed in the {@code preloadImageCodes} property are preloaded on initialization. If
+ * no executor is configured, a pool of daemon threads is created on initialization, and is shut
+ * down on destruction.</p>
+ *
+ * @author  iDragon
+ */
+public class ExecutorImageSource implements AsyncImageSource {
+
+    /** Default thread count of the created executor */
+    public static final int DEFAULT_THREAD_COUNT = 2;
+
+    // SLF4J log
+    private final Logger log = LoggerFactory.getLogger(ExecutorImageSource.class);
+
+    /** Target image source */
+    private ImageSource imageSource;
+
+    /** Executor of the image requests */
+    private ExecutorService executor;
+
+    /** Whether the executor was created by this instance */
+    private boolean executorOwned;
+
+    /** Thread count of the created executor */
+    private int threadCount = DEFAULT_THREAD_COUNT;
+
+    /** Image codes to preload on initialization */
+    private Collection<String> preloadImageCodes = Collections.emptyList();
+
+    /** Dimensions to preload on initialization */
+    private Dimension[] preloadDimensions = new Dimension[0];
+
+    /** Initialized? */
+    private boolean initialized = false;
+
+    /**
+     * Asynchronous image source.
+     */
+    public ExecutorImageSource() {
+    }
+
+    /**
+     * Shut down the executor, if it was created by this instance.
+     */
+    public void destroy() {
+
+        if (executorOwned) {
+
+            executor.shutdownNow();
+            executor = null;
+            executorOwned = false;
+        }
+
+        initialized = false;
+    }
+
+    /**
+     * @return  the executor of the image requests.
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    @Override public Image getImage(String imageCode) {
+        return imageSource.getImage(imageCode);
+    }
+
+    @Override public Image getImage(String imageCode, Dimension dimension) {
+        return imageSource.getImage(imageCode, dimension);
+    }
+
+    @Override public Image getImage(String imageCode, int width, int height) {
+        return imageSource.getImage(imageCode, width, height);
+    }
+
+    @Override public Future<Image> getImageAsync(String imageCode, Dimension dimension) {
+        return getImageAsync(imageCode, dimension, null);
+    }
+
+    @Override public Future<Image> getImageAsync(final String imageCode, Dimension dimension,
+        final ImageCallback callback) {
+
+        Assert.isTrue(initialized, "image source is not initialized");
+        Assert.hasText(imageCode, "invalid image code: " + imageCode);
+
+        // Dimension instances are mutable, so the request keeps its own copy
+        final Dimension size = (dimension == null) ? null : new Dimension(dimension);
+
+        return executor.submit(new Callable<Image>() {
+
+                    @Override public Image call() {
+
+                        Image image;
+
+                        try {
+                            image = imageSource.getImage(imageCode, size);
+                        } catch (RuntimeException e) {
+
+                            if (callback != null) {
+                                callback.imageFailed(imageCode, size, e);
+                            }
+
+                            throw e;
+                        }
+
+                        if (callback != null) {
+                            callback.imageLoaded(imageCode, size, image);
+                        }
+
+                        return image;
+                    }
+                });
+    }
+
+    /**
+     * @return  the target image source.
+     */
+    public ImageSource getImageSource() {
+        return imageSource;
+    }
+
+    /**
+     * @return  the dimensions to preload on initialization.
+     */
+    public Dimension[] getPreloadDimensions() {
+        return preloadDimensions;
+    }
+
+    /**
+     * @return  the image codes to preload on initialization.
+     */
+    public Collection<String> getPreloadImageCodes() {
+        return preloadImageCodes;
+    }
+
+    /**
+     * @return  the thread count of the created executor.
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Initialize image source after performing dependency injection. Creates the executor, if
+     * needed, and starts preloading the configured images.
+     *
+     * @throws  IllegalArgumentException  if the image source is already initialized, or no target
+     *                                    image source is set.
+     */
+    public void init() {
+
+        Assert.isTrue(!initialized, "image source already initialized");
+        Assert.notNull(imageSource, "image source is null");
+
+        if (executor == null) {
+
+            executor = Executors.newFixedThreadPool(threadCount, new DaemonThreadFactory());
+            executorOwned = true;
+        }
+
+        initialized = true;
+
+        if (!preloadImageCodes.isEmpty()) {
+            preload(preloadImageCodes, preloadDimensions);
+        }
+    }
+
+    /**
+     * Failures of preloaded images are logged, but not propagated through the returned future.
+     */
+    @Override public Future<?> preload(Collection<String> imageCodes, Dimension... dimensions) {
+
+        Assert.notNull(imageCodes, "image codes are null");
+
+        ImageCallback callback = new ImageCallback() {
+
+            @Override public void imageFailed(String imageCode, Dimension dimension,
+                Throwable cause) {
+
+                log.warn("Image preloading failed: code=" + imageCode + ", dimension=" + dimension,
+                    cause);
+            }
+
+            @Override public void imageLoaded(String imageCode, Dimension dimension, Image image) {
+                log.debug("Image preloaded: code={}, dimension={}", imageCode, dimension);
+            }
+        };
+
+        List<Future<Image>> futures = new ArrayList<Future<Image>>();
+
+        for (String imageCode : imageCodes) {
+
+            if ((dimensions == null) || (dimensions.length == 0)) {
+                futures.add(getImageAsync(imageCode, null, callback));
+            } else {
+
+                for (Dimension dimension : dimensions) {
+                    futures.add(getImageAsync(imageCode, dimension, callback));
+                }
+            }
+        }
+
+        return new PreloadFuture(futures);
+    }
+
+    /**
+     * @param  executor  the executor of the image requests to set. An executor is created on
+     *                   initialization, if none is set.
+     */
+    public void setExecutor(ExecutorService executor) {
+        Assert.isTrue(!initialized, "image source already initialized");
+
+        this.executor = executor;
+    }
+
+    /**
+     * @param  imageSource  the target image source to set.
+     */
+    public void setImageSource(ImageSource imageSource) {
+        this.imageSource = imageSource;
+    }
+
+    /**
+     * @param  preloadDimensions  the dimensions to preload on initialization to set. The default
+     *                            size is preloaded, if no dimensions are given.
+     */
+    public void setPreloadDimensions(Dimension[] preloadDimensions) {
+        this.preloadDimensions = (preloadDimensions == null) ? new Dimension[0] : preloadDimensions;
+    }
+
+    /**
+     * @param  preloadImageCodes  the image codes to preload on initialization to set.
+     */
+    public void setPreloadImageCodes(Collection<String> preloadImageCodes) {
+
+        this.preloadImageCodes = (preloadImageCodes == null) ? Collections.<String>emptyList()
+                                                             : preloadImageCodes;
+    }
+
+    /**
+     * @param  threadCount  the thread count of the created executor to set.
+     */
+    public void setThreadCount(int threadCount) {
+        Assert.isTrue(0 < threadCount, "invalid thread count: " + threadCount);
+
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Thread factory of daemon image loader threads.
+     */
+    private static final class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override public Thread newThread(Runnable runnable) {
+
+            Thread thread = new Thread(runnable, "image-loader-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+
+    /**
+     * Future of preloaded images, which completes when every image is loaded.
+     */
+    private static final class PreloadFuture implements Future<Object> {
+
+        private final List<Future<Image>> futures;
+
+        /**
+         * Future of preloaded images.
+         *
+         * @param  futures  The futures of the preloaded images.
+         */
+        public PreloadFuture(List<Future<Image>> futures) {
+            this.futures = futures;
+        }
+
+        @Override public boolean cancel(boolean mayInterruptIfRunning) {
+
+            boolean cancelled = false;
+
+            for (Future<Image> future : futures) {
+                cancelled |= future.cancel(mayInterruptIfRunning);
+            }
+
+            return cancelled;
+        }
+
+        @Override public Object get() throws InterruptedException {
+
+            for (Future<Image> future : futures) {
+
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // Failures are logged by the preloading callback
+                }
+            }
+
+            return null;
+        }
+
+        @Override public Object get(long timeout, TimeUnit unit) throws InterruptedException,
+            TimeoutException {
+
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+            for (Future<Image> future : futures) {
+
+                try {
+                    future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                } catch (ExecutionException e) {
+                    // Failures are logged by the preloading callback
+                }
+            }
+
+            return null;
+        }
+
+        @Override public boolean isCancelled() {
+
+            for (Future<Image> future : futures) {
+
+                if (!future.isCancelled()) {
+                    return false;
+                }
+            }
+
+            return !futures.isEmpty();
+        }
+
+        @Override public boolean isDone() {
+
+            for (Future<Image> future : futures) {
+
+                if (!future.isDone()) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
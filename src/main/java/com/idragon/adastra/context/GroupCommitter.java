@@ -0,0 +1,345 @@
+package com.idragon.adastra.context;
+
+import com.idragon.adastra.lang.LatencyHistogram;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Committer of staged writes, which groups concurrent commits into batches. The batch is collected
+ * for at most the commit delay, or until it reaches the maximal batch size. Every staging file of
+ * the batch is forced to the disk and renamed atomically, then each directory of the batch is
+ * forced once, and the waiting writers are released together. The longer delay and the larger
+ * batch trade commit latency for throughput.
+ *
+ * <p>Commits are processed by a daemon thread started on the first commit.</p>
+ *
+ * @author  hp
+ * @see     com.idragon.adastra.context.StagedWrite
+ */
+public class GroupCommitter implements StagedWrite.Committer {
+
+    /** Default maximal batch size */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
+    /** Default maximal commit delay in milliseconds */
+    public static final long DEFAULT_MAX_COMMIT_DELAY = 2L;
+
+    // SLF4J log
+    private final Logger log = LoggerFactory.getLogger(GroupCommitter.class);
+
+    /** Pending commits */
+    private final BlockingQueue<Commit> queue = new LinkedBlockingQueue<Commit>();
+
+    /** Latency of commits, from the request until the release of the writer */
+    private final LatencyHistogram commitLatency = new LatencyHistogram();
+
+    /** Batch count */
+    private final AtomicLong batchCount = new AtomicLong();
+
+    /** Commit count */
+    private final AtomicLong commitCount = new AtomicLong();
+
+    /** Maximal batch size */
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    /** Maximal commit delay in milliseconds */
+    private long maxCommitDelay = DEFAULT_MAX_COMMIT_DELAY;
+
+    /** Committer thread, or {@code null}, if it's not started */
+    private Thread thread;
+
+    /** Destroyed? Commits are rejected after destruction */
+    private boolean destroyed;
+
+    /**
+     * Committer of staged writes, which groups concurrent commits into batches.
+     */
+    public GroupCommitter() {
+    }
+
+    /**
+     * Publishes a staging file atomically, and waits, until the file is durable.
+     *
+     * @param   write  The staged write to commit.
+     *
+     * @throws  IOException  if the file can't be published, the committer is destroyed, or the
+     *                       thread is interrupted while waiting. The staging file is deleted in
+     *                       the former cases.
+     */
+    @Override public void commit(StagedWrite write) throws IOException {
+
+        Assert.notNull(write, "write is null");
+
+        Commit commit = new Commit(write);
+
+        if (!enqueue(commit)) {
+
+            write.discard();
+            throw new IOException("committer is destroyed: " + write.getFile());
+        }
+
+        try {
+            commit.done.await();
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while committing: " + write.getFile());
+        }
+
+        if (commit.failure != null) {
+            throw commit.failure;
+        }
+    }
+
+    /**
+     * Stops the committer thread. Pending commits fail, and later commits are rejected.
+     */
+    public synchronized void destroy() {
+
+        destroyed = true;
+
+        if (thread != null) {
+
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * Adds a commit to the queue, and starts the committer thread, unless it's running. Since the
+     * thread is never started again after destruction, it owns every queued commit.
+     *
+     * @return  {@code true}, if the commit is queued, {@code false}, if the committer is
+     *          destroyed.
+     */
+    private synchronized boolean enqueue(Commit commit) {
+
+        if (destroyed) {
+            return false;
+        }
+
+        start();
+        queue.add(commit);
+
+        return true;
+    }
+
+    /**
+     * @return  the batch count.
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * @return  the commit count, including failed commits.
+     */
+    public long getCommitCount() {
+        return commitCount.get();
+    }
+
+    /**
+     * @return  the latency histogram of commits.
+     */
+    public LatencyHistogram getCommitLatency() {
+        return commitLatency;
+    }
+
+    /**
+     * @return  the maximal batch size.
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * @return  the maximal commit delay in milliseconds.
+     */
+    public long getMaxCommitDelay() {
+        return maxCommitDelay;
+    }
+
+    /**
+     * Forces the staging files of a batch, publishes them, and forces their directories.
+     */
+    private void process(List<Commit> batch) {
+
+        Set<Path> directories = new LinkedHashSet<Path>();
+
+        for (Commit commit : batch) {
+
+            StagedWrite write = commit.write;
+
+            try {
+
+                write.getChannel().force(true);
+                write.getChannel().close();
+                Files.move(write.getStagingFile(), write.getFile(),
+                    StandardCopyOption.ATOMIC_MOVE);
+
+                directories.add(write.getFile().getParent());
+
+            } catch (IOException e) {
+
+                commit.failure = e;
+
+                try {
+                    write.discard();
+                } catch (IOException discardException) {
+                    log.warn("Staging file can't be deleted: " + write.getStagingFile(),
+                        discardException);
+                }
+            }
+        }
+
+        // The renames are durable, when their directories are forced
+        for (Path directory : directories) {
+
+            try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException e) {
+
+                // Some platforms, like Windows, can't open directories
+                log.debug("Directory can't be forced: {}", directory);
+            }
+        }
+
+        batchCount.incrementAndGet();
+        commitCount.addAndGet(batch.size());
+
+        long now = System.nanoTime();
+
+        for (Commit commit : batch) {
+
+            commitLatency.record(now - commit.start);
+            commit.done.countDown();
+        }
+    }
+
+    /**
+     * Collects and processes the batches until the thread is interrupted.
+     */
+    private void run() {
+
+        List<Commit> batch = new ArrayList<Commit>();
+
+        try {
+
+            while (true) {
+
+                batch.add(queue.take());
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxCommitDelay);
+
+                while (batch.size() < maxBatchSize) {
+
+                    Commit commit = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+                    if (commit == null) {
+                        break;
+                    }
+
+                    batch.add(commit);
+                }
+
+                process(batch);
+                batch.clear();
+            }
+
+        } catch (InterruptedException e) {
+
+            log.debug("Committer thread interrupted");
+
+            queue.drainTo(batch);
+
+            for (Commit commit : batch) {
+
+                commit.failure = new IOException("committer is destroyed: " +
+                        commit.write.getFile());
+                commit.done.countDown();
+            }
+        }
+    }
+
+    /**
+     * @param  maxBatchSize  the maximal batch size to set. The default is {@code 64}.
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        Assert.isTrue(0 < maxBatchSize, "invalid batch size: " + maxBatchSize);
+
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @param  maxCommitDelay  the maximal commit delay in milliseconds to set. Only the commits
+     *                         already pending are grouped, if it's {@code 0}. The default is
+     *                         {@code 2}.
+     */
+    public void setMaxCommitDelay(long maxCommitDelay) {
+        Assert.isTrue(0L <= maxCommitDelay, "invalid commit delay: " + maxCommitDelay);
+
+        this.maxCommitDelay = maxCommitDelay;
+    }
+
+    /**
+     * Starts the committer thread, unless it's running.
+     */
+    private synchronized void start() {
+
+        if (thread == null) {
+
+            thread = new Thread(new Runnable() {
+
+                        @Override public void run() {
+                            GroupCommitter.this.run();
+                        }
+                    }, "workspace-committer");
+
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Pending commit.
+     */
+    private static final class Commit {
+
+        private final StagedWrite write;
+        private final long start = System.nanoTime();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile IOException failure;
+
+        /**
+         * Pending commit.
+         *
+         * @param  write  The staged write to commit.
+         */
+        public Commit(StagedWrite write) {
+            this.write = write;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.idragon.adastra.context;
+
+import org.springframework.core.io.Resource;
+
+import org.springframework.util.Assert;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+
+/**
+ * Packed image bundle. A bundle holds many small images in a single atlas: the file starts with a
+ * table of contents, which maps each image code to its rectangle within the atlas, and is followed
+ * by the pixel block of the atlas. The pixel block contains raw or deflated ARGB pixels, so no
+ * image decoding is needed. Bundled images are copied out of the pixel block on request, so each
+ * image is independent of the atlas and of the other images.
+ *
+ * <p>File system bundles are read through memory mapping, and raw pixel blocks are served from
+ * the mapped file directly. Deflated pixel blocks, and bundles not in the file system, are read
+ * into the heap. Bundles are created by the {@link ImageBundlePacker}.</p>
+ *
+ * @author  iDragon
+ */
+public class ImageBundle {
+
+    /** Bundle file magic number */
+    static final int MAGIC = 0x41444142;
+
+    /** Bundle file format version */
+    static final int VERSION = 1;
+
+    /** Flag of deflated pixel blocks */
+    static final int FLAG_DEFLATED = 1;
+
+    /** Character set of the image codes */
+    static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /** ARGB pixels of the atlas row by row, either mapped or in the heap */
+    private final IntBuffer pixels;
+
+    /** Width of the atlas */
+    private final int width;
+
+    /** Table of contents */
+    private final Map<String, Rectangle> contents;
+
+    /**
+     * Packed image bundle.
+     *
+     * @param  pixels    ARGB pixels of the atlas row by row.
+     * @param  width     Width of the atlas.
+     * @param  contents  Table of contents.
+     */
+    private ImageBundle(IntBuffer pixels, int width, Map<String, Rectangle> contents) {
+
+        this.pixels = pixels;
+        this.width = width;
+        this.contents = contents;
+    }
+
+    /**
+     * Loads a bundle.
+     *
+     * @param   resource  The bundle resource.
+     *
+     * @return  the loaded bundle.
+     *
+     * @throws  IOException               if the bundle can't be read.
+     * @throws  IllegalArgumentException  if the bundle format is invalid.
+     */
+    public static ImageBundle load(Resource resource) throws IOException {
+
+        Assert.notNull(resource, "resource is null");
+
+        File file;
+
+        try {
+            file = resource.getFile();
+        } catch (IOException e) {
+
+            // The resource is not available in the file system, for example it's a jar entry
+            InputStream input = resource.getInputStream();
+
+            try {
+
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int count;
+
+                while ((count = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, count);
+                }
+
+                return load(ByteBuffer.wrap(output.toByteArray()), resource);
+
+            } finally {
+
+                input.close();
+            }
+        }
+
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return load(channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size()), resource);
+        }
+    }
+
+    /**
+     * Parses a bundle.
+     */
+    private static ImageBundle load(ByteBuffer buffer, Resource resource) {
+
+        Assert.isTrue((buffer.getInt() == MAGIC) && (buffer.getInt() == VERSION),
+            "invalid image bundle: " + resource);
+
+        int flags = buffer.getInt();
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        int count = buffer.getInt();
+
+        HashMap<String, Rectangle> contents = new HashMap<String, Rectangle>();
+
+        for (int i = 0; i < count; i++) {
+
+            byte[] code = new byte[buffer.getInt()];
+            buffer.get(code);
+
+            contents.put(new String(code, CHARSET),
+                new Rectangle(buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt()));
+        }
+
+        int pixelCount = width * height;
+        int length = buffer.getInt();
+        IntBuffer pixels;
+
+        if ((flags & FLAG_DEFLATED) == 0) {
+
+            Assert.isTrue(pixelCount <= (buffer.remaining() / 4),
+                "invalid image bundle: " + resource);
+
+            // The pixels stay in the mapped file
+            pixels = buffer.slice().asIntBuffer();
+        } else {
+
+            byte[] deflated = new byte[length];
+            buffer.get(deflated);
+
+            pixels = inflate(deflated, pixelCount * 4, resource).asIntBuffer();
+        }
+
+        for (Rectangle bounds : contents.values()) {
+            Assert.isTrue(new Rectangle(width, height).contains(bounds),
+                "invalid image bundle: " + resource);
+        }
+
+        return new ImageBundle(pixels, width, Collections.unmodifiableMap(contents));
+    }
+
+    /**
+     * Inflates a deflated pixel block.
+     *
+     * @param   deflated  The deflated pixel block.
+     * @param   length    The length of the inflated pixel block.
+     * @param   resource  The bundle resource.
+     *
+     * @return  the inflated pixel block.
+     *
+     * @throws  IllegalArgumentException  if the pixel block is invalid or truncated.
+     */
+    private static ByteBuffer inflate(byte[] deflated, int length, Resource resource) {
+
+        byte[] inflated = new byte[length];
+        Inflater inflater = new Inflater();
+
+        try {
+
+            inflater.setInput(deflated);
+
+            int offset = 0;
+
+            // Inflate returns only a part of the block at a time
+            while (!inflater.finished()) {
+
+                int count = inflater.inflate(inflated, offset, length - offset);
+
+                if ((count == 0) &&
+                        (inflater.needsInput() || inflater.needsDictionary() ||
+                            (offset == length))) {
+                    throw new IllegalArgumentException("invalid image bundle: " + resource);
+                }
+
+                offset += count;
+            }
+
+            Assert.isTrue(offset == length, "invalid image bundle: " + resource);
+
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("invalid image bundle: " + resource, e);
+        } finally {
+            inflater.end();
+        }
+
+        return ByteBuffer.wrap(inflated);
+    }
+
+    /**
+     * @param   imageCode  Image code.
+     *
+     * @return  {@code true}, if the bundle contains the image.
+     */
+    public boolean contains(String imageCode) {
+        return contents.containsKey(imageCode);
+    }
+
+    /**
+     * @param   imageCode  Image code.
+     *
+     * @return  a copy of the image, or {@code null}, if the bundle doesn't contain the image.
+     */
+    public BufferedImage getImage(String imageCode) {
+
+        Rectangle bounds = contents.get(imageCode);
+
+        if (bounds == null) {
+            return null;
+        }
+
+        BufferedImage image = new BufferedImage(Math.max(1, bounds.width),
+                Math.max(1, bounds.height), BufferedImage.TYPE_INT_ARGB);
+        WritableRaster raster = image.getRaster();
+
+        // The buffer is duplicated, so images are copied concurrently
+        IntBuffer source = pixels.duplicate();
+        int[] row = new int[bounds.width];
+
+        for (int y = 0; y < bounds.height; y++) {
+
+            source.position(((bounds.y + y) * width) + bounds.x);
+            source.get(row);
+            raster.setDataElements(0, y, bounds.width, 1, row);
+        }
+
+        return image;
+    }
+
+    /**
+     * @return  the codes of the bundled images.
+     */
+    public Set<String> getImageCodes() {
+        return contents.keySet();
+    }
+}
@@ -0,0 +1,306 @@
+package com.idragon.adastra.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.Assert;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageIO;
+
+
+/**
+ * Build time packer of image bundles. The packer collects the images of a directory tree, packs
+ * them into a single atlas using shelves of decreasing height, and writes the bundle file. The code
+ * of each image is its path relative to the directory, with an optional prefix.
+ *
+ * <p>Usage: {@code ImageBundlePacker <directory> <bundle> [prefix] [--deflate]}</p>
+ *
+ * @author  iDragon
+ * @see     com.idragon.adastra.context.ImageBundle
+ */
+public class ImageBundlePacker {
+
+    // SLF4J log
+    private final Logger log = LoggerFactory.getLogger(ImageBundlePacker.class);
+
+    /** Prefix of the image codes */
+    private String prefix = "";
+
+    /** Deflate the pixel block? */
+    private boolean deflated = false;
+
+    /**
+     * Image bundle packer.
+     */
+    public ImageBundlePacker() {
+    }
+
+    /**
+     * Packs the images of a directory into a bundle.
+     *
+     * @param   args  Command line arguments: directory, bundle file, optional prefix and the
+     *                optional {@code --deflate} flag.
+     *
+     * @throws  IOException  if packing fails.
+     */
+    public static void main(String[] args) throws IOException {
+
+        List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+
+        ImageBundlePacker packer = new ImageBundlePacker();
+        packer.setDeflated(arguments.remove("--deflate"));
+
+        if ((arguments.size() < 2) || (3 < arguments.size())) {
+
+            System.err.println(
+                "Usage: ImageBundlePacker <directory> <bundle> [prefix] [--deflate]");
+            System.exit(1);
+        }
+
+        if (arguments.size() == 3) {
+            packer.setPrefix(arguments.get(2));
+        }
+
+        packer.pack(new File(arguments.get(0)), new File(arguments.get(1)));
+    }
+
+    /**
+     * Collects the images of a directory tree.
+     */
+    private void collect(File directory, String path, Set<String> suffixes,
+        Map<String, BufferedImage> images) throws IOException {
+
+        File[] files = directory.listFiles();
+
+        if (files == null) {
+            throw new IOException("directory can't be listed: " + directory);
+        }
+
+        Arrays.sort(files);
+
+        for (File file : files) {
+
+            String name = file.getName();
+
+            if (file.isDirectory()) {
+                collect(file, path + name + "/", suffixes, images);
+            } else {
+
+                int index = name.lastIndexOf('.');
+
+                if ((index != -1) &&
+                        suffixes.contains(name.substring(index + 1).toLowerCase(Locale.ENGLISH))) {
+
+                    BufferedImage image = ImageIO.read(file);
+
+                    if (image == null) {
+                        log.warn("Skipping unsupported image: {}", file);
+                    } else {
+                        images.put(prefix + path + name, image);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return  the deflated data.
+     */
+    private byte[] deflate(byte[] data) {
+
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+
+        try {
+
+            deflater.setInput(data);
+            deflater.finish();
+
+            byte[] buffer = new byte[8192];
+            ByteArrayOutputStream result = new ByteArrayOutputStream(data.length / 4);
+
+            while (!deflater.finished()) {
+                result.write(buffer, 0, deflater.deflate(buffer));
+            }
+
+            return result.toByteArray();
+
+        } finally {
+
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return  the prefix of the image codes.
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * @return  {@code true}, if the pixel block is deflated.
+     */
+    public boolean isDeflated() {
+        return deflated;
+    }
+
+    /**
+     * Packs the images of a directory tree into a bundle.
+     *
+     * @param   directory  The directory of the images.
+     * @param   bundle     The bundle file to write.
+     *
+     * @throws  IOException  if an image can't be read, or the bundle can't be written.
+     */
+    public void pack(File directory, File bundle) throws IOException {
+
+        Assert.isTrue(directory.isDirectory(), "invalid directory: " + directory);
+
+        final Map<String, BufferedImage> images = new LinkedHashMap<String, BufferedImage>();
+        collect(directory, "", new HashSet<String>(Arrays.asList(ImageIO.getReaderFileSuffixes())),
+            images);
+
+        // Shelf packing of the images in decreasing height
+        List<String> codes = new ArrayList<String>(images.keySet());
+
+        Collections.sort(codes, new Comparator<String>() {
+
+                @Override public int compare(String code1, String code2) {
+                    return images.get(code2).getHeight() - images.get(code1).getHeight();
+                }
+            });
+
+        long area = 0L;
+        int width = 0;
+
+        for (BufferedImage image : images.values()) {
+
+            area += (long) image.getWidth() * image.getHeight();
+            width = Math.max(width, image.getWidth());
+        }
+
+        width = Math.max(width, (int) Math.ceil(Math.sqrt(area)));
+
+        Map<String, Rectangle> contents = new LinkedHashMap<String, Rectangle>();
+        int x = 0;
+        int y = 0;
+        int shelfHeight = 0;
+
+        for (String code : codes) {
+
+            BufferedImage image = images.get(code);
+
+            if (width < (x + image.getWidth())) {
+
+                x = 0;
+                y += shelfHeight;
+                shelfHeight = 0;
+            }
+
+            contents.put(code, new Rectangle(x, y, image.getWidth(), image.getHeight()));
+
+            x += image.getWidth();
+            shelfHeight = Math.max(shelfHeight, image.getHeight());
+        }
+
+        int height = y + shelfHeight;
+
+        // Pixel block
+        ByteBuffer pixels = ByteBuffer.allocate(width * height * 4);
+
+        for (Map.Entry<String, Rectangle> entry : contents.entrySet()) {
+
+            BufferedImage image = images.get(entry.getKey());
+            Rectangle bounds = entry.getValue();
+
+            int[] row = new int[bounds.width];
+
+            for (int i = 0; i < bounds.height; i++) {
+
+                image.getRGB(0, i, bounds.width, 1, row, 0, bounds.width);
+                pixels.position((((bounds.y + i) * width) + bounds.x) * 4);
+                pixels.asIntBuffer().put(row);
+            }
+        }
+
+        byte[] block = pixels.array();
+
+        if (deflated) {
+            block = deflate(block);
+        }
+
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(bundle)));
+
+        try {
+
+            output.writeInt(ImageBundle.MAGIC);
+            output.writeInt(ImageBundle.VERSION);
+            output.writeInt(deflated ? ImageBundle.FLAG_DEFLATED : 0);
+            output.writeInt(width);
+            output.writeInt(height);
+            output.writeInt(contents.size());
+
+            for (Map.Entry<String, Rectangle> entry : contents.entrySet()) {
+
+                byte[] code = entry.getKey().getBytes(ImageBundle.CHARSET);
+                Rectangle bounds = entry.getValue();
+
+                output.writeInt(code.length);
+                output.write(code);
+                output.writeInt(bounds.x);
+                output.writeInt(bounds.y);
+                output.writeInt(bounds.width);
+                output.writeInt(bounds.height);
+            }
+
+            output.writeInt(block.length);
+            output.write(block);
+
+        } finally {
+
+            output.close();
+        }
+
+        log.info("Image bundle packed: bundle={}, images={}", bundle, contents.size());
+    }
+
+    /**
+     * @param  deflated  whether the pixel block should be deflated. Raw pixels are written ({@code
+     *                   false}) by default.
+     */
+    public void setDeflated(boolean deflated) {
+        this.deflated = deflated;
+    }
+
+    /**
+     * @param  prefix  the prefix of the image codes to set, for example {@code "adastra-images/"}.
+     */
+    public void setPrefix(String prefix) {
+        this.prefix = (prefix == null) ? "" : prefix;
+    }
+}
@@ -0,0 +1,24 @@
+package com.idragon.adastra.context;
+
+/**
+ * JMX management interface of image caches. The statistics are exposed as a composite attribute.
+ *
+ * @author  iDragon
+ */
+public interface ImageCacheMXBean {
+
+    /**
+     * Clears the cache.
+     */
+    void clear();
+
+    /**
+     * @return  the snapshot of the cache statistics.
+     */
+    ImageCacheStatistics getStatistics();
+
+    /**
+     * Resets the counters and the latency histograms of the cache.
+     */
+    void resetStatistics();
+}
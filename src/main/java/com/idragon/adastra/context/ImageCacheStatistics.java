@@ -0,0 +1,322 @@
+package com.idragon.adastra.context;
+
+import com.idragon.adastra.lang.LatencyHistogram;
+
+import java.io.Serializable;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Immutable snapshot of the statistics of an image cache. Lookups are either hits of existing
+ * images, hits of images cached as missing, or misses, separately for default size and resized
+ * lookups. Latencies are given in microseconds, percentiles are estimated by the upper bound of
+ * their histogram bucket.
+ *
+ * <p>The counters are read one by one without locking, so a snapshot taken under load may be
+ * slightly inconsistent.</p>
+ *
+ * @author  iDragon
+ * @see     com.idragon.adastra.lang.LatencyHistogram
+ */
+public class ImageCacheStatistics implements Serializable {
+
+    // Serial number
+    private static final long serialVersionUID = -3862791350745106418L;
+
+    private final int size;
+    private final long weight;
+
+    private final long defaultHitCount;
+    private final long defaultMissingHitCount;
+    private final long defaultMissCount;
+    private final long defaultEvictionCount;
+    private final long defaultLoadFailureCount;
+
+    private final long resizedHitCount;
+    private final long resizedMissingHitCount;
+    private final long resizedMissCount;
+    private final long resizedEvictionCount;
+    private final long resizedLoadFailureCount;
+
+    private final long loadCount;
+    private final long meanLoadMicros;
+    private final long maxLoadMicros;
+    private final long medianLoadMicros;
+    private final long percentile99LoadMicros;
+    private final long[] loadHistogram;
+
+    private final long scaleCount;
+    private final long meanScaleMicros;
+    private final long maxScaleMicros;
+    private final long medianScaleMicros;
+    private final long percentile99ScaleMicros;
+    private final long[] scaleHistogram;
+
+    /**
+     * Immutable snapshot of the statistics of an image cache.
+     *
+     * @param  imageSource  The image source to take the snapshot of.
+     * @param  size         The cache size.
+     * @param  weight       The cache weight.
+     */
+    ImageCacheStatistics(AbstractCachingImageSource imageSource, int size, long weight) {
+
+        this.size = size;
+        this.weight = weight;
+
+        defaultHitCount = imageSource.getHitCount(false);
+        defaultMissingHitCount = imageSource.getMissingHitCount(false);
+        defaultMissCount = imageSource.getMissCount(false);
+        defaultEvictionCount = imageSource.getEvictionCount(false);
+        defaultLoadFailureCount = imageSource.getLoadFailureCount(false);
+
+        resizedHitCount = imageSource.getHitCount(true);
+        resizedMissingHitCount = imageSource.getMissingHitCount(true);
+        resizedMissCount = imageSource.getMissCount(true);
+        resizedEvictionCount = imageSource.getEvictionCount(true);
+        resizedLoadFailureCount = imageSource.getLoadFailureCount(true);
+
+        LatencyHistogram load = imageSource.getLoadLatency();
+
+        loadCount = load.getCount();
+        meanLoadMicros = TimeUnit.NANOSECONDS.toMicros(load.getMeanNanos());
+        maxLoadMicros = TimeUnit.NANOSECONDS.toMicros(load.getMaxNanos());
+        medianLoadMicros = load.getPercentileMicros(50d);
+        percentile99LoadMicros = load.getPercentileMicros(99d);
+        loadHistogram = load.getBuckets();
+
+        LatencyHistogram scale = imageSource.getScaleLatency();
+
+        scaleCount = scale.getCount();
+        meanScaleMicros = TimeUnit.NANOSECONDS.toMicros(scale.getMeanNanos());
+        maxScaleMicros = TimeUnit.NANOSECONDS.toMicros(scale.getMaxNanos());
+        medianScaleMicros = scale.getPercentileMicros(50d);
+        percentile99ScaleMicros = scale.getPercentileMicros(99d);
+        scaleHistogram = scale.getBuckets();
+    }
+
+    /**
+     * @return  the eviction count of default size images.
+     */
+    public long getDefaultEvictionCount() {
+        return defaultEvictionCount;
+    }
+
+    /**
+     * @return  the hit count of existing default size images.
+     */
+    public long getDefaultHitCount() {
+        return defaultHitCount;
+    }
+
+    /**
+     * @return  the failed load count of default size images.
+     */
+    public long getDefaultLoadFailureCount() {
+        return defaultLoadFailureCount;
+    }
+
+    /**
+     * @return  the hit count of default size images cached as missing.
+     */
+    public long getDefaultMissingHitCount() {
+        return defaultMissingHitCount;
+    }
+
+    /**
+     * @return  the miss count of default size images.
+     */
+    public long getDefaultMissCount() {
+        return defaultMissCount;
+    }
+
+    /**
+     * @return  the total eviction count.
+     */
+    public long getEvictionCount() {
+        return defaultEvictionCount + resizedEvictionCount;
+    }
+
+    /**
+     * @return  the total hit count, including the hits of images cached as missing.
+     */
+    public long getHitCount() {
+        return defaultHitCount + defaultMissingHitCount + resizedHitCount + resizedMissingHitCount;
+    }
+
+    /**
+     * @return  the ratio of hits to lookups, or {@code 0}, if there was no lookup yet.
+     */
+    public double getHitRatio() {
+
+        long lookupCount = getLookupCount();
+
+        return (lookupCount == 0L) ? 0d : ((double) getHitCount() / lookupCount);
+    }
+
+    /**
+     * @return  the load count, including failed loads.
+     */
+    public long getLoadCount() {
+        return loadCount;
+    }
+
+    /**
+     * @return  the total failed load count.
+     */
+    public long getLoadFailureCount() {
+        return defaultLoadFailureCount + resizedLoadFailureCount;
+    }
+
+    /**
+     * @return  the copy of the load latency histogram.
+     *
+     * @see     com.idragon.adastra.lang.LatencyHistogram#getBuckets
+     */
+    public long[] getLoadHistogram() {
+        return loadHistogram.clone();
+    }
+
+    /**
+     * @return  the total lookup count.
+     */
+    public long getLookupCount() {
+        return getHitCount() + getMissCount();
+    }
+
+    /**
+     * @return  the maximal load latency in microseconds.
+     */
+    public long getMaxLoadMicros() {
+        return maxLoadMicros;
+    }
+
+    /**
+     * @return  the maximal resize latency in microseconds.
+     */
+    public long getMaxScaleMicros() {
+        return maxScaleMicros;
+    }
+
+    /**
+     * @return  the mean load latency in microseconds.
+     */
+    public long getMeanLoadMicros() {
+        return meanLoadMicros;
+    }
+
+    /**
+     * @return  the mean resize latency in microseconds.
+     */
+    public long getMeanScaleMicros() {
+        return meanScaleMicros;
+    }
+
+    /**
+     * @return  the estimated median load latency in microseconds.
+     */
+    public long getMedianLoadMicros() {
+        return medianLoadMicros;
+    }
+
+    /**
+     * @return  the estimated median resize latency in microseconds.
+     */
+    public long getMedianScaleMicros() {
+        return medianScaleMicros;
+    }
+
+    /**
+     * @return  the total miss count.
+     */
+    public long getMissCount() {
+        return defaultMissCount + resizedMissCount;
+    }
+
+    /**
+     * @return  the estimated 99th percentile of the load latency in microseconds.
+     */
+    public long getPercentile99LoadMicros() {
+        return percentile99LoadMicros;
+    }
+
+    /**
+     * @return  the estimated 99th percentile of the resize latency in microseconds.
+     */
+    public long getPercentile99ScaleMicros() {
+        return percentile99ScaleMicros;
+    }
+
+    /**
+     * @return  the eviction count of resized images.
+     */
+    public long getResizedEvictionCount() {
+        return resizedEvictionCount;
+    }
+
+    /**
+     * @return  the hit count of existing resized images.
+     */
+    public long getResizedHitCount() {
+        return resizedHitCount;
+    }
+
+    /**
+     * @return  the failed load count of resized images.
+     */
+    public long getResizedLoadFailureCount() {
+        return resizedLoadFailureCount;
+    }
+
+    /**
+     * @return  the hit count of resized images cached as missing.
+     */
+    public long getResizedMissingHitCount() {
+        return resizedMissingHitCount;
+    }
+
+    /**
+     * @return  the miss count of resized images.
+     */
+    public long getResizedMissCount() {
+        return resizedMissCount;
+    }
+
+    /**
+     * @return  the resize count.
+     */
+    public long getScaleCount() {
+        return scaleCount;
+    }
+
+    /**
+     * @return  the copy of the resize latency histogram.
+     *
+     * @see     com.idragon.adastra.lang.LatencyHistogram#getBuckets
+     */
+    public long[] getScaleHistogram() {
+        return scaleHistogram.clone();
+    }
+
+    /**
+     * @return  the cache size.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return  the cache weight in pixel bytes.
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    @Override public String toString() {
+        return "ImageCacheStatistics[size=" + size + ", weight=" + weight + ", lookups=" +
+            getLookupCount() + ", hits=" + getHitCount() + ", misses=" + getMissCount() +
+            ", evictions=" + getEvictionCount() + ", loadFailures=" + getLoadFailureCount() +
+            ", meanLoadMicros=" + meanLoadMicros + ", meanScaleMicros=" + meanScaleMicros + "]";
+    }
+}
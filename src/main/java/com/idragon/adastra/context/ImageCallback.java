@@ -0,0 +1,32 @@
+package com.idragon.adastra.context;
+
+import java.awt.Dimension;
+import java.awt.Image;
+
+
+/**
+ * Callback of asynchronous image requests.
+ *
+ * @author  iDragon
+ * @see     com.idragon.adastra.context.AsyncImageSource
+ */
+public interface ImageCallback {
+
+    /**
+     * Called, when an image request failed.
+     *
+     * @param  imageCode  Image code.
+     * @param  dimension  The requested dimension, or {@code null} for the default size.
+     * @param  cause      The cause of the failure.
+     */
+    void imageFailed(String imageCode, Dimension dimension, Throwable cause);
+
+    /**
+     * Called, when an image request completed.
+     *
+     * @param  imageCode  Image code.
+     * @param  dimension  The requested dimension, or {@code null} for the default size.
+     * @param  image      The image, or {@code null}, if the image doesn't exist.
+     */
+    void imageLoaded(String imageCode, Dimension dimension, Image image);
+}
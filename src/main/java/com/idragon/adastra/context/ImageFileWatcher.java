@@ -0,0 +1,343 @@
+package com.idragon.adastra.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.Assert;
+import org.springframework.util.ResourceUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+
+/**
+ * Watcher of the file system locations of a caching image source, which removes the changed
+ * images from the cache. Changed files are mapped back to image codes relative to their location;
+ * changing a pre-rendered variant, like {@code name@2x.png} or {@code name-32x32.png}, removes the
+ * base image {@code name.png} too, along with every resized image of both. Locations other than
+ * {@code file:} URLs are ignored.
+ *
+ * <p>The locations are watched recursively by a daemon thread started on initialization. Images
+ * are removed on the watcher thread, unless an executor is set. An image source, which is not
+ * thread-safe, requires an executor running the removals on the thread using the image source,
+ * for example {@code SwingUtilities.invokeLater} on the event dispatch thread. If the image
+ * source is indexed, its index is rebuilt, when files are created or deleted. If events were lost,
+ * the whole cache is cleared.</p>
+ *
+ * @author  iDragon
+ */
+public class ImageFileWatcher {
+
+    // SLF4J log
+    private final Logger log = LoggerFactory.getLogger(ImageFileWatcher.class);
+
+    /** Watched directories by watch key: the location directory and the watched directory */
+    private final Map<WatchKey, Path[]> directories = new ConcurrentHashMap<WatchKey, Path[]>();
+
+    /** The caching image source to invalidate */
+    private AbstractCachingImageSource imageSource;
+
+    /** Executor of the invalidations, or {@code null} to invalidate on the watcher thread */
+    private Executor executor;
+
+    /** Watch service, or {@code null}, if the watcher is not initialized */
+    private WatchService watchService;
+
+    /** Watcher thread */
+    private Thread thread;
+
+    /**
+     * Watcher of the file system locations of a caching image source.
+     */
+    public ImageFileWatcher() {
+    }
+
+    /**
+     * Stops watching the locations.
+     */
+    public void destroy() {
+
+        if (watchService != null) {
+
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.warn("Watch service can't be closed", e);
+            }
+
+            thread.interrupt();
+            directories.clear();
+
+            watchService = null;
+            thread = null;
+        }
+    }
+
+    /**
+     * @return  the executor of the invalidations, or {@code null}, if images are removed on the
+     *          watcher thread.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return  the caching image source to invalidate.
+     */
+    public AbstractCachingImageSource getImageSource() {
+        return imageSource;
+    }
+
+    /**
+     * Initialize watcher after performing dependency injection.
+     *
+     * @throws  IOException               if the locations can't be watched.
+     * @throws  IllegalArgumentException  if the watcher is already initialized, no image source is
+     *                                    set, or the image source is not thread-safe, and no
+     *                                    executor is set.
+     */
+    public void init() throws IOException {
+
+        Assert.isTrue(watchService == null, "watcher already initialized");
+        Assert.notNull(imageSource, "image source is null");
+        Assert.isTrue((executor != null) || imageSource.isThreadSafe(),
+            "image source is not thread-safe, executor is null");
+
+        watchService = FileSystems.getDefault().newWatchService();
+
+        for (String location : imageSource.getLocations()) {
+
+            if (!location.startsWith(ResourceUtils.FILE_URL_PREFIX)) {
+                continue;
+            }
+
+            File directory = ResourceUtils.getFile(StringUtils.applyRelativePath(location, ""));
+
+            if (directory.isDirectory()) {
+                register(watchService, directory.toPath(), directory.toPath(), null);
+            } else {
+                log.warn("Location is not a directory, it won't be watched: {}", location);
+            }
+        }
+
+        final WatchService currentWatchService = watchService;
+
+        thread = new Thread(new Runnable() {
+
+                    @Override public void run() {
+                        watch(currentWatchService);
+                    }
+                }, "image-watcher");
+
+        thread.setDaemon(true);
+        thread.start();
+
+        log.debug("Watching image locations: directories={}", directories.size());
+    }
+
+    /**
+     * Removes the changed images from the cache.
+     */
+    private void invalidate(final Collection<String> imageCodes, final boolean overflow,
+        final boolean structural) {
+
+        Runnable invalidation = new Runnable() {
+
+            @Override public void run() {
+
+                if (structural && imageSource.isIndexed()) {
+                    imageSource.rebuildIndex();
+                }
+
+                if (overflow) {
+
+                    log.debug("Watch events lost, clearing image source cache");
+                    imageSource.clear();
+
+                    return;
+                }
+
+                for (String imageCode : imageCodes) {
+
+                    log.debug("Removing changed image: code={}", imageCode);
+                    imageSource.remove(imageCode);
+
+                    String baseCode = ResourceImageSource.getBaseCode(imageCode);
+
+                    if (baseCode != null) {
+                        imageSource.remove(baseCode);
+                    }
+                }
+            }
+        };
+
+        if (executor == null) {
+            invalidation.run();
+        } else {
+            executor.execute(invalidation);
+        }
+    }
+
+    /**
+     * Processes the events of a watch key.
+     */
+    private void process(WatchService currentWatchService, WatchKey key) {
+
+        Path[] entry = directories.get(key);
+        LinkedHashSet<String> imageCodes = new LinkedHashSet<String>();
+        boolean overflow = false;
+        boolean structural = false;
+
+        try {
+
+            for (WatchEvent<?> event : key.pollEvents()) {
+
+                if ((entry == null) || (event.kind() == StandardWatchEventKinds.OVERFLOW)) {
+
+                    overflow = true;
+
+                    continue;
+                }
+
+                Path path = entry[1].resolve((Path) event.context());
+
+                if (event.kind() != StandardWatchEventKinds.ENTRY_MODIFY) {
+                    structural = true;
+                }
+
+                if ((event.kind() == StandardWatchEventKinds.ENTRY_CREATE) &&
+                        Files.isDirectory(path)) {
+
+                    // Files may have been created before the directory was registered
+                    try {
+                        register(currentWatchService, entry[0], path, imageCodes);
+                    } catch (IOException e) {
+                        log.warn("Directory can't be watched: " + path, e);
+                    }
+
+                } else {
+                    imageCodes.add(toImageCode(entry[0], path));
+                }
+            }
+
+        } finally {
+
+            // A failed key is re-armed, so the directory stays watched
+            if (!key.reset()) {
+                directories.remove(key);
+            }
+        }
+
+        if (overflow || !imageCodes.isEmpty()) {
+            invalidate(imageCodes, overflow, structural);
+        }
+    }
+
+    /**
+     * Registers a directory tree with the watch service.
+     *
+     * @param  currentWatchService  The watch service.
+     * @param  root                 The location directory.
+     * @param  directory            The root of the directory tree to register.
+     * @param  imageCodes           The collection of the image codes of the files found, or {@code
+     *                              null}, if they're not needed.
+     */
+    private void register(final WatchService currentWatchService, final Path root,
+        Path directory, final Collection<String> imageCodes) throws IOException {
+
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+
+                @Override public FileVisitResult preVisitDirectory(Path dir,
+                    BasicFileAttributes attributes) throws IOException {
+
+                    WatchKey key = dir.register(currentWatchService,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE,
+                            StandardWatchEventKinds.ENTRY_MODIFY);
+
+                    directories.put(key, new Path[] { root, dir });
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override public FileVisitResult visitFile(Path file,
+                    BasicFileAttributes attributes) {
+
+                    if (imageCodes != null) {
+                        imageCodes.add(toImageCode(root, file));
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+    }
+
+    /**
+     * @param  executor  the executor of the invalidations to set, or {@code null} to remove images
+     *                   on the watcher thread, which requires a thread-safe image source.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param  imageSource  the caching image source to invalidate.
+     */
+    public void setImageSource(AbstractCachingImageSource imageSource) {
+        this.imageSource = imageSource;
+    }
+
+    /**
+     * @return  the image code of a file within a location directory.
+     */
+    private String toImageCode(Path root, Path file) {
+        return root.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Takes and processes the watch keys until the watch service is closed. A failure of a key is
+     * logged, and the watching goes on.
+     */
+    private void watch(WatchService currentWatchService) {
+
+        try {
+
+            while (true) {
+
+                WatchKey key = currentWatchService.take();
+
+                try {
+                    process(currentWatchService, key);
+                } catch (ClosedWatchServiceException e) {
+                    throw e;
+                } catch (RuntimeException e) {
+                    log.warn("Watch events can't be processed: " + key.watchable(), e);
+                }
+            }
+
+        } catch (ClosedWatchServiceException e) {
+            log.debug("Watch service closed");
+        } catch (InterruptedException e) {
+            log.debug("Watcher thread interrupted");
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.idragon.adastra.context;
+
+import org.springframework.util.Assert;
+
+import java.awt.Dimension;
+
+import java.io.Serializable;
+
+
+/**
+ * Immutable image request of a batch: an image code with an optional size. Unlike {@code
+ * Dimension} keys, requests can't be changed after they are submitted, so they're safe to use as
+ * map keys.
+ *
+ * @author  iDragon
+ * @see     com.idragon.adastra.context.BatchImageSource
+ */
+public final class ImageRequest implements Serializable {
+
+    // Serial number
+    private static final long serialVersionUID = 5318203647105395416L;
+
+    /** Image code */
+    private final String imageCode;
+
+    /** Required image width, or {@code -1} for the default size */
+    private final int width;
+
+    /** Required image height, or {@code -1} for the default size */
+    private final int height;
+
+    /**
+     * Image request with the default size.
+     *
+     * @param  imageCode  Image code.
+     */
+    public ImageRequest(String imageCode) {
+        this(imageCode, null);
+    }
+
+    /**
+     * Image request.
+     *
+     * @param  imageCode  Image code.
+     * @param  dimension  Dimension, or {@code null} to use the image's default size.
+     */
+    public ImageRequest(String imageCode, Dimension dimension) {
+
+        Assert.hasText(imageCode, "invalid image code: " + imageCode);
+
+        this.imageCode = imageCode;
+        this.width = (dimension == null) ? -1 : dimension.width;
+        this.height = (dimension == null) ? -1 : dimension.height;
+    }
+
+    /**
+     * Image request.
+     *
+     * @param  imageCode  Image code.
+     * @param  width      Required image width.
+     * @param  height     Required image height.
+     */
+    public ImageRequest(String imageCode, int width, int height) {
+        this(imageCode, new Dimension(width, height));
+    }
+
+    /**
+     * This method is considering the image code and the size.
+     */
+    @Override public boolean equals(Object object) {
+
+        if (this == object) {
+            return true;
+        }
+
+        if (!(object instanceof ImageRequest)) {
+            return false;
+        }
+
+        ImageRequest request = (ImageRequest) object;
+
+        return imageCode.equals(request.imageCode) && (width == request.width) &&
+            (height == request.height);
+    }
+
+    /**
+     * @return  the new dimension instance of the required size, or {@code null}, if the default
+     *          size is required.
+     */
+    public Dimension getDimension() {
+        return (width == -1) ? null : new Dimension(width, height);
+    }
+
+    /**
+     * @return  the image code.
+     */
+    public String getImageCode() {
+        return imageCode;
+    }
+
+    /**
+     * This method is considering the image code and the size.
+     */
+    @Override public int hashCode() {
+        return (((imageCode.hashCode() * 31) + width) * 31) + height;
+    }
+
+    /**
+     * @return  {@code true}, if the image is requested with a size other than its default one.
+     */
+    public boolean isResized() {
+        return width != -1;
+    }
+
+    @Override public String toString() {
+        return isResized() ? (imageCode + " (" + width + "x" + height + ")") : imageCode;
+    }
+}
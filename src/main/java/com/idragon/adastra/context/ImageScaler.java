@@ -0,0 +1,24 @@
+package com.idragon.adastra.context;
+
+import java.awt.image.BufferedImage;
+
+
+/**
+ * Image scaling strategy.
+ *
+ * @author  iDragon
+ * @see     com.idragon.adastra.context.ScalingQuality
+ */
+public interface ImageScaler {
+
+    /**
+     * Scale an image to the given size.
+     *
+     * @param   image   The image to scale.
+     * @param   width   Required image width.
+     * @param   height  Required image height.
+     *
+     * @return  the scaled image, which is ready to paint.
+     */
+    BufferedImage scale(BufferedImage image, int width, int height);
+}
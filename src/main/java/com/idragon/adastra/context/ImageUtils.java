@@ -0,0 +1,147 @@
+package com.idragon.adastra.context;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+import javax.swing.ImageIcon;
+
+
+/**
+ * Miscellaneous image utility methods.
+ *
+ * @author  iDragon
+ */
+public abstract class ImageUtils {
+
+    /** Bytes per pixel assumed for images without a known pixel format */
+    public static final int DEFAULT_BYTES_PER_PIXEL = 4;
+
+    /**
+     * @param   image  Image, may be {@code null}.
+     *
+     * @return  the count of bytes per pixel of the image.
+     */
+    public static int getBytesPerPixel(Image image) {
+
+        if (image instanceof BufferedImage) {
+            return (((BufferedImage) image).getColorModel().getPixelSize() + 7) / 8;
+        }
+
+        return DEFAULT_BYTES_PER_PIXEL;
+    }
+
+    /**
+     * Calculates the weight of an image as width &times; height &times; bytes per pixel. Images,
+     * which are not loaded yet, are loaded synchronously to determine their size.
+     *
+     * @param   image  Image, may be {@code null}.
+     *
+     * @return  the weight of the image in pixel bytes, or {@code 0}, if the image is {@code null}
+     *          or its size is unknown.
+     */
+    public static long getWeight(Image image) {
+
+        if (image == null) {
+            return 0L;
+        }
+
+        if ((image.getWidth(null) < 0) || (image.getHeight(null) < 0)) {
+
+            // The image icon waits for the image to be loaded
+            new ImageIcon(image);
+        }
+
+        int width = image.getWidth(null);
+        int height = image.getHeight(null);
+
+        if ((width < 0) || (height < 0)) {
+            return 0L;
+        }
+
+        return (long) width * height * getBytesPerPixel(image);
+    }
+
+    /**
+     * Converts an image to the pixel format compatible with the screen, so painting it takes the
+     * fast path. In headless environments, the integer RGB and ARGB formats are used. Images, which
+     * are not loaded yet, are loaded synchronously.
+     *
+     * @param   image  Image to convert.
+     *
+     * @return  the image itself, if it's already compatible, or a compatible copy of it.
+     */
+    public static BufferedImage toCompatibleImage(Image image) {
+
+        if ((image.getWidth(null) < 0) || (image.getHeight(null) < 0)) {
+
+            // The image icon waits for the image to be loaded
+            new ImageIcon(image);
+        }
+
+        int transparency = (image instanceof BufferedImage)
+            ? ((BufferedImage) image).getTransparency() : Transparency.TRANSLUCENT;
+
+        GraphicsConfiguration configuration = getGraphicsConfiguration();
+
+        if ((image instanceof BufferedImage) &&
+                isCompatible((BufferedImage) image, configuration, transparency)) {
+            return (BufferedImage) image;
+        }
+
+        int width = Math.max(1, image.getWidth(null));
+        int height = Math.max(1, image.getHeight(null));
+
+        BufferedImage result;
+
+        if (configuration != null) {
+            result = configuration.createCompatibleImage(width, height, transparency);
+        } else {
+            result = new BufferedImage(width, height,
+                    (transparency == Transparency.OPAQUE) ? BufferedImage.TYPE_INT_RGB
+                                                          : BufferedImage.TYPE_INT_ARGB);
+        }
+
+        Graphics2D graphics = result.createGraphics();
+
+        try {
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        return result;
+    }
+
+    /**
+     * @return  {@code true}, if the image has the pixel format of a graphics configuration, or the
+     *          integer RGB or ARGB format, if the configuration is {@code null}.
+     */
+    private static boolean isCompatible(BufferedImage image, GraphicsConfiguration configuration,
+        int transparency) {
+
+        if (configuration != null) {
+            return configuration.getColorModel(transparency).equals(image.getColorModel());
+        }
+
+        return (image.getType() == BufferedImage.TYPE_INT_ARGB) ||
+            (image.getType() == BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * @return  the configuration of the default screen device, or {@code null} in headless
+     *          environments.
+     */
+    private static GraphicsConfiguration getGraphicsConfiguration() {
+
+        if (GraphicsEnvironment.isHeadless()) {
+            return null;
+        }
+
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+            .getDefaultConfiguration();
+    }
+}
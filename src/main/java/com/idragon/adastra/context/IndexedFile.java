@@ -0,0 +1,90 @@
+package com.idragon.adastra.context;
+
+import java.io.Serializable;
+
+
+/**
+ * Immutable metadata of a file in a workspace index.
+ *
+ * @author  hp
+ * @see     com.idragon.adastra.context.WorkspaceIndexer
+ */
+public final class IndexedFile implements Serializable {
+
+    // Serial number
+    private static final long serialVersionUID = 2476183096547235381L;
+
+    /** Path relative to the workspace root, separated by slashes */
+    private final String path;
+
+    /** Size in bytes */
+    private final long size;
+
+    /** Last modification time in milliseconds */
+    private final long lastModified;
+
+    /**
+     * Metadata of a file in a workspace index.
+     *
+     * @param  path          Path relative to the workspace root, separated by slashes.
+     * @param  size          Size in bytes.
+     * @param  lastModified  Last modification time in milliseconds.
+     */
+    IndexedFile(String path, long size, long lastModified) {
+
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * This method is considering every field.
+     */
+    @Override public boolean equals(Object object) {
+
+        if (this == object) {
+            return true;
+        }
+
+        if (!(object instanceof IndexedFile)) {
+            return false;
+        }
+
+        IndexedFile file = (IndexedFile) object;
+
+        return path.equals(file.path) && (size == file.size) && (lastModified == file.lastModified);
+    }
+
+    /**
+     * @return  the last modification time in milliseconds.
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return  the path relative to the workspace root, separated by slashes.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return  the size in bytes.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * This method is considering every field.
+     */
+    @Override public int hashCode() {
+        return (((path.hashCode() * 31) + (int) (size ^ (size >>> 32))) * 31) +
+            (int) (lastModified ^ (lastModified >>> 32));
+    }
+
+    @Override public String toString() {
+        return path + " (" + size + " bytes)";
+    }
+}
@@ -0,0 +1,118 @@
+package com.idragon.adastra.context;
+
+import org.springframework.util.Assert;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+
+/**
+ * Image scaler, which draws the image scaled with an interpolation hint. Progressive scaling
+ * halves the image size in each step until the required size is reached, which keeps the quality
+ * of bilinear interpolation for large downscaling factors.
+ *
+ * @author  iDragon
+ */
+public class ProgressiveImageScaler implements ImageScaler {
+
+    /** Interpolation rendering hint value */
+    private Object interpolation = RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+
+    /** Progressive scaling? */
+    private boolean progressive = true;
+
+    /**
+     * Progressive image scaler.
+     */
+    public ProgressiveImageScaler() {
+    }
+
+    /**
+     * @return  the interpolation rendering hint value.
+     */
+    public Object getInterpolation() {
+        return interpolation;
+    }
+
+    /**
+     * @return  {@code true}, if the image size is halved in each step.
+     */
+    public boolean isProgressive() {
+        return progressive;
+    }
+
+    @Override public BufferedImage scale(BufferedImage image, int width, int height) {
+
+        Assert.notNull(image, "image is null");
+        Assert.isTrue((0 < width) && (0 < height),
+            "invalid dimension: width=" + width + ", height=" + height);
+
+        BufferedImage result = image;
+
+        if (progressive) {
+
+            int stepWidth = result.getWidth();
+            int stepHeight = result.getHeight();
+
+            while ((width <= (stepWidth / 2)) || (height <= (stepHeight / 2))) {
+
+                stepWidth = (width <= (stepWidth / 2)) ? (stepWidth / 2) : stepWidth;
+                stepHeight = (height <= (stepHeight / 2)) ? (stepHeight / 2) : stepHeight;
+
+                result = draw(result, stepWidth, stepHeight);
+            }
+        }
+
+        if ((result == image) || (result.getWidth() != width) || (result.getHeight() != height)) {
+            result = draw(result, width, height);
+        }
+
+        return result;
+    }
+
+    /**
+     * @param  interpolation  the interpolation rendering hint value to set.
+     *
+     * @see    java.awt.RenderingHints#KEY_INTERPOLATION
+     */
+    public void setInterpolation(Object interpolation) {
+        Assert.isTrue(RenderingHints.KEY_INTERPOLATION.isCompatibleValue(interpolation),
+            "invalid interpolation: " + interpolation);
+
+        this.interpolation = interpolation;
+    }
+
+    /**
+     * @param  progressive  whether the image size should be halved in each step. Progressive
+     *                      scaling is enabled ({@code true}) by default.
+     */
+    public void setProgressive(boolean progressive) {
+        this.progressive = progressive;
+    }
+
+    /**
+     * @return  the image drawn with the given size.
+     */
+    private BufferedImage draw(BufferedImage image, int width, int height) {
+
+        BufferedImage result = new BufferedImage(width, height,
+                (image.getTransparency() == Transparency.OPAQUE) ? BufferedImage.TYPE_INT_RGB
+                                                                 : BufferedImage.TYPE_INT_ARGB);
+
+        Graphics2D graphics = result.createGraphics();
+
+        try {
+
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+            graphics.drawImage(image, 0, 0, width, height, null);
+
+        } finally {
+
+            graphics.dispose();
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,789 @@
+package com.idragon.adastra.context;
+
+import org.apache.commons.io.FileUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.Assert;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Caching workspace, which limits the disk usage of its files. The usage is accounted per top-level
+ * subdirectory incrementally, as files are written through the channels of the workspace, so the
+ * usage figures are available without walking the directory tree. The tree is walked only on
+ * initialization, and when a {@link #rescan} is requested.
+ *
+ * <p>When the usage exceeds the quota, the least recently used top-level subdirectories are
+ * deleted in the background, until the usage fits the quota again. A subdirectory is used, when
+ * it's requested from the workspace, or a channel is opened to one of its files. Subdirectories
+ * with open channels, or used since the eviction started, are never evicted. A subdirectory is
+ * locked while it's evicted, so it's not requested or opened meanwhile. Evictions run on a daemon
+ * thread, unless an executor is set. If nothing can be evicted, because every subdirectory has
+ * open channels, no eviction is scheduled again, until a channel is closed, or a rescan is
+ * requested.</p>
+ *
+ * <p>Files written through the {@code File} handles of the workspace are not accounted, until the
+ * next rescan.</p>
+ *
+ * @author  hp
+ */
+public class QuotaWorkspace extends CachingWorkspace {
+
+    // SLF4J log
+    private final Logger log = LoggerFactory.getLogger(QuotaWorkspace.class);
+
+    /** Usage of the top-level subdirectories by name */
+    private final ConcurrentMap<String, Usage> usages = new ConcurrentHashMap<String, Usage>();
+
+    /** Total usage in bytes, including the files directly within the root */
+    private final AtomicLong totalUsage = new AtomicLong();
+
+    /** Logical clock of the accesses */
+    private final AtomicLong clock = new AtomicLong();
+
+    /** Eviction count */
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /** Is an eviction scheduled or running? */
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    /** Is the eviction blocked by open channels? */
+    private final AtomicBoolean evictionBlocked = new AtomicBoolean();
+
+    /** Quota in bytes */
+    private long quota = Long.MAX_VALUE;
+
+    /** Executor of the evictions, or {@code null} to evict on a new daemon thread */
+    private Executor executor;
+
+    /**
+     * Caching workspace, which limits the disk usage of its files.
+     */
+    public QuotaWorkspace() {
+    }
+
+    /**
+     * Adds the size change of a file to the usage, and schedules an eviction, if the quota is
+     * exceeded.
+     *
+     * @param  usage  The usage of the top-level subdirectory of the file, or {@code null}, if the
+     *                file is directly within the root.
+     * @param  delta  The size change in bytes.
+     */
+    private void account(Usage usage, long delta) {
+
+        if (usage != null) {
+            usage.bytes.addAndGet(delta);
+        }
+
+        if (quota < totalUsage.addAndGet(delta)) {
+            scheduleEviction();
+        }
+    }
+
+    /**
+     * Publishes a staged write, and accounts the removal of the replaced file. The content of the
+     * staging file is accounted already. If the write fails, the content is no longer accounted.
+     *
+     * @param   write  The staged write to commit.
+     *
+     * @throws  IOException  if the file can't be published.
+     */
+    @Override protected void commit(StagedWrite write) throws IOException {
+
+        Path file = write.getFile();
+        long size = sizeOf(file);
+
+        try {
+            super.commit(write);
+        } catch (IOException e) {
+
+            // The staging file is deleted without truncating it, if its channel was closed before
+            if ((write.getChannel() instanceof AccountingChannel) &&
+                    !Files.exists(write.getStagingFile())) {
+                ((AccountingChannel) write.getChannel()).unaccount();
+            }
+
+            throw e;
+        }
+
+        account(usageOf(file), -size);
+    }
+
+    /**
+     * Evicts a top-level subdirectory by deleting it. Subclasses may keep the content elsewhere.
+     *
+     * @param   name       The name of the subdirectory.
+     * @param   directory  The subdirectory.
+     *
+     * @throws  IOException  if the subdirectory can't be evicted.
+     */
+    protected void evict(String name, File directory) throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    /**
+     * Evicts the least recently used top-level subdirectories without open channels, until the
+     * usage fits the quota. If the usage still exceeds the quota, because of open channels, the
+     * eviction is blocked, until a channel is closed.
+     */
+    private void evictLeastRecentlyUsed() {
+
+        // The access times are copied, since they may change while evicting
+        TreeMap<Long, String> candidates = new TreeMap<Long, String>();
+
+        for (Map.Entry<String, Usage> entry : usages.entrySet()) {
+            candidates.put(entry.getValue().lastAccess, entry.getKey());
+        }
+
+        boolean blocked = true;
+
+        for (Map.Entry<Long, String> candidate : candidates.entrySet()) {
+
+            if (totalUsage.get() <= quota) {
+                return;
+            }
+
+            String name = candidate.getValue();
+            Usage usage = usages.get(name);
+
+            if (usage == null) {
+                continue;
+            }
+
+            // Requests and channels of the subdirectory wait for the eviction
+            synchronized (usage) {
+
+                if (usage.evicted || (usage.lastAccess != candidate.getKey())) {
+
+                    // Used since the candidates were copied
+                    blocked = false;
+
+                    continue;
+                }
+
+                if (0 < usage.openChannels.get()) {
+                    continue;
+                }
+
+                File directory = new File(getRoot(), name);
+
+                log.debug("Evicting workspace directory: name={}, bytes={}", name,
+                    usage.bytes.get());
+
+                try {
+                    evict(name, directory);
+                } catch (IOException e) {
+
+                    log.warn("Workspace directory can't be evicted: " + directory, e);
+                    remeasure(name, usage);
+
+                    continue;
+                }
+
+                usage.evicted = true;
+                usages.remove(name, usage);
+                invalidate(name);
+            }
+
+            totalUsage.addAndGet(-usage.bytes.get());
+            evictionCount.incrementAndGet();
+        }
+
+        if (blocked && (quota < totalUsage.get())) {
+
+            log.debug("Workspace eviction blocked by open channels: bytes={}", totalUsage.get());
+            evictionBlocked.set(true);
+        }
+    }
+
+    @Override protected File getDirectoryInternal(String[] pathSequence) throws IOException {
+
+        if ((pathSequence == null) || (pathSequence.length == 0)) {
+            return super.getDirectoryInternal(pathSequence);
+        }
+
+        while (true) {
+
+            Usage usage = usageOf(pathSequence[0]);
+
+            if (usage == null) {
+                return super.getDirectoryInternal(pathSequence);
+            }
+
+            synchronized (usage) {
+
+                // An evicted usage is replaced by a new one
+                if (!usage.evicted) {
+
+                    touch(usage);
+
+                    return super.getDirectoryInternal(pathSequence);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return  the count of evicted top-level subdirectories.
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * @return  the executor of the evictions, or {@code null}, if evictions run on a new daemon
+     *          thread.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return  the quota in bytes.
+     */
+    public long getQuota() {
+        return quota;
+    }
+
+    /**
+     * @return  the total usage in bytes.
+     */
+    public long getUsage() {
+        return totalUsage.get();
+    }
+
+    /**
+     * @param   name  The name of a top-level subdirectory.
+     *
+     * @return  the usage of the subdirectory in bytes, or {@code 0}, if it's not used.
+     */
+    public long getUsage(String name) {
+
+        Usage usage = usages.get(name);
+
+        return (usage == null) ? 0L : usage.bytes.get();
+    }
+
+    /**
+     * @return  the snapshot of the usage of the top-level subdirectories in bytes by name.
+     */
+    public Map<String, Long> getUsages() {
+
+        Map<String, Long> result = new HashMap<String, Long>();
+
+        for (Map.Entry<String, Usage> entry : usages.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().bytes.get());
+        }
+
+        return result;
+    }
+
+    /**
+     * Initialize workspace after performing dependency injection, and measure the usage.
+     *
+     * @throws  IllegalArgumentException  if the workspace is already initialized, or the given root
+     *                                    is invalid.
+     * @throws  IllegalStateException     if the usage can't be measured.
+     */
+    @Override public void init() {
+
+        super.init();
+
+        try {
+            rescan();
+        } catch (IOException e) {
+            throw new IllegalStateException("usage can't be measured", e);
+        }
+    }
+
+    /**
+     * @param   name  The name of a top-level subdirectory.
+     *
+     * @return  {@code true}, if the usage of the subdirectory is accounted. Subclasses may exclude
+     *          subdirectories stored elsewhere.
+     */
+    protected boolean isAccounted(String name) {
+        return true;
+    }
+
+    /**
+     * @return  the size of the files within a directory tree in bytes.
+     */
+    private long measure(Path directory) throws IOException {
+
+        final long[] result = new long[1];
+
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+
+                @Override public FileVisitResult visitFile(Path file,
+                    BasicFileAttributes attributes) {
+
+                    result[0] += attributes.size();
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override public FileVisitResult visitFileFailed(Path file, IOException e) {
+
+                    // Files may be deleted while walking
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+
+        return result[0];
+    }
+
+    /**
+     * Opens an accounting channel to a workspace file. Size changes are accounted, when the file
+     * is truncated or written, including mappings and transfers, and when the channel is closed.
+     *
+     * @see  com.idragon.adastra.context.Workspace#openChannel
+     */
+    @Override public FileChannel openChannel(Path file, OpenOption... options) throws IOException {
+
+        Path path = checkPath(file);
+        AccountingChannel channel;
+
+        while (true) {
+
+            Usage usage = usageOf(path);
+
+            if (usage == null) {
+
+                channel = new AccountingChannel(super.openChannel(path, options), null,
+                        sizeOf(path));
+
+                break;
+            }
+
+            synchronized (usage) {
+
+                // An evicted usage is replaced by a new one
+                if (!usage.evicted) {
+
+                    channel = new AccountingChannel(super.openChannel(path, options), usage,
+                            sizeOf(path));
+                    touch(usage);
+                    usage.openChannels.incrementAndGet();
+
+                    break;
+                }
+            }
+        }
+
+        // The file may have been created or truncated
+        try {
+            channel.account();
+        } catch (IOException e) {
+
+            channel.close();
+            throw e;
+        }
+
+        return channel;
+    }
+
+    /**
+     * Measures the usage of a top-level subdirectory again.
+     */
+    private void remeasure(String name, Usage usage) {
+
+        try {
+
+            long bytes = measure(new File(getRoot(), name).toPath());
+            account(usage, bytes - usage.bytes.get());
+
+        } catch (IOException e) {
+            log.warn("Usage can't be measured: " + name, e);
+        }
+    }
+
+    /**
+     * Measures the usage by walking the workspace. Files written through the {@code File} handles
+     * of the workspace are accounted this way. Usage changes made while the walk is running may be
+     * lost.
+     *
+     * @throws  IOException  if the workspace can't be walked.
+     */
+    public void rescan() throws IOException {
+
+        long total = 0L;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(getRoot().toPath())) {
+
+            for (Path path : stream) {
+
+                String name = path.getFileName().toString();
+
+                if (Files.isDirectory(path)) {
+
+                    Usage usage = usageOf(name);
+
+                    if (usage != null) {
+
+                        long bytes = measure(path);
+                        usage.bytes.set(bytes);
+                        total += bytes;
+                    }
+
+                } else {
+
+                    usages.remove(name);
+                    total += Files.size(path);
+                }
+            }
+        }
+
+        // Subdirectories deleted from outside
+        for (Map.Entry<String, Usage> entry : usages.entrySet()) {
+
+            if (!new File(getRoot(), entry.getKey()).isDirectory()) {
+                usages.remove(entry.getKey(), entry.getValue());
+            }
+        }
+
+        totalUsage.set(total);
+        evictionBlocked.set(false);
+
+        log.debug("Workspace usage measured: bytes={}", total);
+
+        if (quota < total) {
+            scheduleEviction();
+        }
+    }
+
+    /**
+     * Schedules an eviction, unless one is already scheduled, or the eviction is blocked.
+     */
+    private void scheduleEviction() {
+
+        if (evictionBlocked.get() || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+
+        Runnable eviction = new Runnable() {
+
+            @Override public void run() {
+
+                try {
+                    evictLeastRecentlyUsed();
+                } finally {
+                    evicting.set(false);
+                }
+            }
+        };
+
+        if (executor == null) {
+
+            Thread thread = new Thread(eviction, "workspace-evictor");
+            thread.setDaemon(true);
+            thread.start();
+
+        } else {
+            executor.execute(eviction);
+        }
+    }
+
+    /**
+     * @param  executor  the executor of the evictions to set, or {@code null} to evict on a new
+     *                   daemon thread.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param  quota  the quota in bytes to set. The usage is not limited ({@code Long.MAX_VALUE})
+     *                by default.
+     */
+    public void setQuota(long quota) {
+        Assert.isTrue(0L <= quota, "invalid quota: " + quota);
+
+        this.quota = quota;
+    }
+
+    /**
+     * @return  the size of a file, or {@code 0}, if it doesn't exist.
+     */
+    private long sizeOf(Path file) throws IOException {
+
+        try {
+            return Files.size(file);
+        } catch (NoSuchFileException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * Marks a top-level subdirectory as the most recently used.
+     */
+    private void touch(Usage usage) {
+        usage.lastAccess = clock.incrementAndGet();
+    }
+
+    /**
+     * @param   file  The absolute, normalized path of a workspace file.
+     *
+     * @return  the usage of the top-level subdirectory of the file, or {@code null}, if the file is
+     *          directly within the root, or the subdirectory is not accounted.
+     */
+    private Usage usageOf(Path file) {
+
+        Path relativePath = getRoot().toPath().toAbsolutePath().normalize().relativize(file);
+
+        if (relativePath.getNameCount() < 2) {
+            return null;
+        }
+
+        return usageOf(relativePath.getName(0).toString());
+    }
+
+    /**
+     * @return  the usage of a top-level subdirectory, which is created, if needed, or {@code null},
+     *          if the subdirectory is not accounted.
+     */
+    private Usage usageOf(String name) {
+
+        if (!isAccounted(name)) {
+            return null;
+        }
+
+        Usage usage = usages.get(name);
+
+        if (usage == null) {
+
+            Usage newUsage = new Usage(clock.incrementAndGet());
+            usage = usages.putIfAbsent(name, newUsage);
+
+            if (usage == null) {
+                usage = newUsage;
+            }
+        }
+
+        return usage;
+    }
+
+    /**
+     * File channel, which accounts the size changes of its file.
+     */
+    private final class AccountingChannel extends FileChannel {
+
+        private final FileChannel delegate;
+        private final Usage usage;
+        private long accountedSize;
+
+        /**
+         * File channel, which accounts the size changes of its file.
+         *
+         * @param  delegate       The channel to delegate to.
+         * @param  usage          The usage of the top-level subdirectory of the file, or {@code
+         *                        null}, if the file is directly within the root.
+         * @param  accountedSize  The size of the file, which is accounted already.
+         */
+        public AccountingChannel(FileChannel delegate, Usage usage, long accountedSize) {
+
+            this.delegate = delegate;
+            this.usage = usage;
+            this.accountedSize = accountedSize;
+        }
+
+        /**
+         * Accounts the size change of the file since the last call.
+         */
+        private synchronized void account() throws IOException {
+
+            long size = delegate.size();
+
+            if (size != accountedSize) {
+
+                QuotaWorkspace.this.account(usage, size - accountedSize);
+                accountedSize = size;
+            }
+        }
+
+        @Override public void force(boolean metaData) throws IOException {
+            delegate.force(metaData);
+        }
+
+        @Override protected void implCloseChannel() throws IOException {
+
+            try {
+                account();
+            } finally {
+
+                delegate.close();
+
+                // The subdirectory may be evicted now
+                if ((usage != null) && (usage.openChannels.decrementAndGet() == 0) &&
+                        evictionBlocked.compareAndSet(true, false) &&
+                        (quota < totalUsage.get())) {
+                    scheduleEviction();
+                }
+            }
+        }
+
+        @Override public FileLock lock(long position, long size, boolean shared)
+            throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override public MappedByteBuffer map(MapMode mode, long position, long size)
+            throws IOException {
+
+            MappedByteBuffer buffer = delegate.map(mode, position, size);
+            account();
+
+            return buffer;
+        }
+
+        @Override public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override public FileChannel position(long newPosition) throws IOException {
+
+            delegate.position(newPosition);
+
+            return this;
+        }
+
+        @Override public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override public long transferFrom(ReadableByteChannel src, long position, long count)
+            throws IOException {
+
+            // Unwrapped channels are transferred without copying through the heap
+            ReadableByteChannel source = (src instanceof AccountingChannel)
+                ? ((AccountingChannel) src).delegate : src;
+            long result = delegate.transferFrom(source, position, count);
+            account();
+
+            return result;
+        }
+
+        @Override public long transferTo(long position, long count, WritableByteChannel target)
+            throws IOException {
+
+            if (target instanceof AccountingChannel) {
+
+                AccountingChannel channel = (AccountingChannel) target;
+                long result = delegate.transferTo(position, count, channel.delegate);
+                channel.account();
+
+                return result;
+            }
+
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override public FileChannel truncate(long size) throws IOException {
+
+            delegate.truncate(size);
+            account();
+
+            return this;
+        }
+
+        @Override public FileLock tryLock(long position, long size, boolean shared)
+            throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        /**
+         * Removes the accounted size of the file, which is deleted.
+         */
+        private synchronized void unaccount() {
+
+            QuotaWorkspace.this.account(usage, -accountedSize);
+            accountedSize = 0L;
+        }
+
+        @Override public int write(ByteBuffer src) throws IOException {
+
+            int result = delegate.write(src);
+            account();
+
+            return result;
+        }
+
+        @Override public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+
+            long result = delegate.write(srcs, offset, length);
+            account();
+
+            return result;
+        }
+
+        @Override public int write(ByteBuffer src, long position) throws IOException {
+
+            int result = delegate.write(src, position);
+            account();
+
+            return result;
+        }
+    }
+
+    /**
+     * Usage of a top-level subdirectory.
+     */
+    private static final class Usage {
+
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicInteger openChannels = new AtomicInteger();
+        private volatile long lastAccess;
+        private boolean evicted;
+
+        /**
+         * Usage of a top-level subdirectory.
+         *
+         * @param  lastAccess  The logical time of the last access.
+         */
+        public Usage(long lastAccess) {
+            this.lastAccess = lastAccess;
+        }
+    }
+}
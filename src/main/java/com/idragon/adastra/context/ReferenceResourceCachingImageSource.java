@@ -0,0 +1,378 @@
+package com.idragon.adastra.context;
+
+import com.idragon.adastra.lang.CompositeValue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.Assert;
+
+import java.awt.Dimension;
+import java.awt.Image;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+
+/**
+ * Resource based image source with a garbage collector cooperative cache. Default size images are
+ * held strongly, but resized images, which are cheap to recompute, are held through soft or weak
+ * references, so they are the first to go under memory pressure. Cleared references are drained
+ * from a reference queue on every cache access, and are counted as evictions.
+ *
+ * <p>The cache is thread-safe, but concurrent requests of the same uncached image may load it more
+ * than once.</p>
+ *
+ * @author  iDragon
+ */
+public class ReferenceResourceCachingImageSource extends AbstractCachingImageSource {
+
+    // SLF4J log
+    private final Logger log = LoggerFactory.getLogger(ReferenceResourceCachingImageSource.class);
+
+    /** Cache of default size images. Missing images are cached as {@code null} values. */
+    private final HashMap<String, Image> defaultCache = new HashMap<String, Image>();
+
+    /** Cache of resized images */
+    private final HashMap<CompositeValue, Reference<Image>> resizedCache =
+        new HashMap<CompositeValue, Reference<Image>>();
+
+    /** Queue of cleared resized image references */
+    private final ReferenceQueue<Image> queue = new ReferenceQueue<Image>();
+
+    /** Reference type of resized images */
+    private ReferenceType referenceType = ReferenceType.SOFT;
+
+    /** Weight of the default size image cache */
+    private long defaultWeight;
+
+    /** Weight of the resized image cache */
+    private long resizedWeight;
+
+    /**
+     * Resource based image source with a garbage collector cooperative cache.
+     */
+    public ReferenceResourceCachingImageSource() {
+    }
+
+    @Override public synchronized void clear() {
+
+        log.debug("Clearing image source cache");
+
+        defaultCache.clear();
+        resizedCache.clear();
+
+        defaultWeight = 0L;
+        resizedWeight = 0L;
+    }
+
+    /**
+     * Drains cleared references from the queue and removes their stale cache entries.
+     */
+    private void expunge() {
+
+        Reference<? extends Image> polled;
+
+        while ((polled = queue.poll()) != null) {
+
+            ImageReference reference = (ImageReference) polled;
+
+            // The key may have been mapped to a new reference meanwhile
+            if (resizedCache.get(reference.getKey()) == polled) {
+
+                log.debug("Expunging cleared image: code={}", reference.getImageCode());
+
+                resizedCache.remove(reference.getKey());
+                resizedWeight -= reference.getWeight();
+                recordEviction(true);
+            }
+        }
+    }
+
+    @Override public synchronized long getEvictionCount() {
+
+        expunge();
+
+        return super.getEvictionCount();
+    }
+
+    @Override public Image getImage(String imageCode, Dimension dimension) {
+        Assert.hasText(imageCode, "invalid image code: " + imageCode);
+
+        if (dimension == null) {
+
+            synchronized (this) {
+
+                expunge();
+
+                if (defaultCache.containsKey(imageCode)) {
+                    log.debug("Returning cached image: code={}", imageCode);
+
+                    Image image = defaultCache.get(imageCode);
+                    recordHit(false, image);
+
+                    return image;
+                }
+            }
+
+            recordMiss(false);
+
+            Image image = getImageInternal(imageCode, null);
+
+            synchronized (this) {
+
+                // Null values are cached too
+                log.debug("Caching image: code={}", imageCode);
+
+                defaultWeight += ImageUtils.getWeight(image) -
+                    ImageUtils.getWeight(defaultCache.put(imageCode, image));
+            }
+
+            return image;
+
+        } else {
+
+            CompositeValue key = new CompositeValue(imageCode, dimension.width, dimension.height);
+
+            synchronized (this) {
+
+                expunge();
+
+                if (defaultCache.containsKey(imageCode) && (defaultCache.get(imageCode) == null)) {
+                    log.debug("Returning cached missing image: code={}", imageCode);
+                    recordHit(true, null);
+
+                    return null;
+                }
+
+                Reference<Image> reference = resizedCache.get(key);
+                Image image = (reference == null) ? null : reference.get();
+
+                if (image != null) {
+                    log.debug("Returning cached image: code={}, dimension={}", imageCode,
+                        dimension);
+                    recordHit(true, image);
+
+                    return image;
+                }
+            }
+
+            recordMiss(true);
+
+            Image image = getImageInternal(imageCode, dimension);
+
+            synchronized (this) {
+
+                if (image == null) {
+
+                    // The image doesn't exist at all, which is cached as a missing default image
+                    log.debug("Caching missing image: code={}", imageCode);
+                    defaultCache.put(imageCode, null);
+
+                } else {
+
+                    log.debug("Caching image: code={}, dimension={}", imageCode, dimension);
+
+                    long weight = ImageUtils.getWeight(image);
+                    Reference<Image> oldReference = resizedCache.put(key,
+                            referenceType.createReference(imageCode, key, image, weight, queue));
+
+                    resizedWeight += weight;
+
+                    if (oldReference != null) {
+
+                        // The old reference won't be expunged, since it's no longer mapped
+                        resizedWeight -= ((ImageReference) oldReference).getWeight();
+
+                        if (oldReference.get() == null) {
+                            recordEviction(true);
+                        }
+                    }
+                }
+            }
+
+            return image;
+        }
+    }
+
+    /**
+     * @return  the reference type of resized images.
+     */
+    public ReferenceType getReferenceType() {
+        return referenceType;
+    }
+
+    @Override public synchronized long getWeight() {
+
+        expunge();
+
+        return defaultWeight + resizedWeight;
+    }
+
+    @Override public boolean isThreadSafe() {
+        return true;
+    }
+
+    @Override public synchronized void remove(String imageCode) {
+
+        defaultWeight -= ImageUtils.getWeight(defaultCache.remove(imageCode));
+
+        for (Iterator<Reference<Image>> i = resizedCache.values().iterator(); i.hasNext();) {
+
+            ImageReference reference = (ImageReference) i.next();
+
+            if (reference.getImageCode().equals(imageCode)) {
+
+                i.remove();
+                resizedWeight -= reference.getWeight();
+            }
+        }
+    }
+
+    /**
+     * @param  referenceType  the reference type of resized images to set. Images already cached
+     *                        keep their reference type.
+     */
+    public void setReferenceType(ReferenceType referenceType) {
+        Assert.notNull(referenceType, "reference type is null");
+
+        this.referenceType = referenceType;
+    }
+
+    @Override public synchronized int size() {
+
+        expunge();
+
+        return defaultCache.size() + resizedCache.size();
+    }
+
+    /**
+     * Reference types of resized images.
+     */
+    public static enum ReferenceType {
+
+        /** Soft references are cleared at the discretion of the garbage collector */
+        SOFT {
+
+            @Override Reference<Image> createReference(String imageCode, CompositeValue key,
+                Image image, long weight, ReferenceQueue<Image> queue) {
+
+                return new SoftImageReference(imageCode, key, image, weight, queue);
+            }
+        },
+
+        /** Weak references are cleared as soon as the image isn't referenced elsewhere */
+        WEAK {
+
+            @Override Reference<Image> createReference(String imageCode, CompositeValue key,
+                Image image, long weight, ReferenceQueue<Image> queue) {
+
+                return new WeakImageReference(imageCode, key, image, weight, queue);
+            }
+        };
+
+        /**
+         * @return  a new reference of this type.
+         */
+        abstract Reference<Image> createReference(String imageCode, CompositeValue key,
+            Image image, long weight, ReferenceQueue<Image> queue);
+    }
+
+    /**
+     * Image reference, which remembers its cache key.
+     */
+    private interface ImageReference {
+
+        /**
+         * @return  the image code.
+         */
+        String getImageCode();
+
+        /**
+         * @return  the cache key.
+         */
+        CompositeValue getKey();
+
+        /**
+         * @return  the weight of the referenced image.
+         */
+        long getWeight();
+    }
+
+    /**
+     * Soft image reference.
+     */
+    private static final class SoftImageReference extends SoftReference<Image>
+        implements ImageReference {
+
+        private final String imageCode;
+        private final CompositeValue key;
+        private final long weight;
+
+        /**
+         * Soft image reference.
+         */
+        public SoftImageReference(String imageCode, CompositeValue key, Image image, long weight,
+            ReferenceQueue<Image> queue) {
+
+            super(image, queue);
+
+            this.imageCode = imageCode;
+            this.key = key;
+            this.weight = weight;
+        }
+
+        @Override public String getImageCode() {
+            return imageCode;
+        }
+
+        @Override public CompositeValue getKey() {
+            return key;
+        }
+
+        @Override public long getWeight() {
+            return weight;
+        }
+    }
+
+    /**
+     * Weak image reference.
+     */
+    private static final class WeakImageReference extends WeakReference<Image>
+        implements ImageReference {
+
+        private final String imageCode;
+        private final CompositeValue key;
+        private final long weight;
+
+        /**
+         * Weak image reference.
+         */
+        public WeakImageReference(String imageCode, CompositeValue key, Image image, long weight,
+            ReferenceQueue<Image> queue) {
+
+            super(image, queue);
+
+            this.imageCode = imageCode;
+            this.key = key;
+            this.weight = weight;
+        }
+
+        @Override public String getImageCode() {
+            return imageCode;
+        }
+
+        @Override public CompositeValue getKey() {
+            return key;
+        }
+
+        @Override public long getWeight() {
+            return weight;
+        }
+    }
+}
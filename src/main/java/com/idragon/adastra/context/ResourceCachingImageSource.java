@@ -4,107 +4,450 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 
 import java.awt.Dimension;
 import java.awt.Image;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
 
 
 /**
- * Resource based image source with cache.
+ * Resource based image source with cache. The cache is a single open addressing table keyed by
+ * the image code and the packed width and height, so a cache hit allocates nothing: neither a
+ * {@code Dimension}, nor a key, nor a log argument array. Since the key is packed into primitives,
+ * callers may reuse their {@code Dimension} instances freely.
+ *
+ * <p>If derivation is enabled, resized images are derived from the smallest larger image of the
+ * same code, which is cached already, instead of loading the image again. To limit the loss of
+ * quality, the cached image must be larger by the minimal derivation factor on both axes, its
+ * aspect ratio must match, it must not be larger than the natural size of the image, and derived
+ * images are never derived from again. Images available without resizing, like exact size
+ * variants or disk cached images, are not derived.</p>
+ *
+ * <p>The cache is not thread-safe.</p>
  *
  * @author  iDragon
  */
-public class ResourceCachingImageSource extends ResourceImageSource implements CachingImageSource {
+public class ResourceCachingImageSource extends AbstractCachingImageSource {
+
+    /** Default minimal ratio of the size of a cached image to the derived size */
+    public static final double DEFAULT_MIN_DERIVATION_FACTOR = 1.0d;
+
+    /** Default maximal relative deviation of the aspect ratio of a derived image */
+    public static final double DEFAULT_MAX_ASPECT_DEVIATION = 0.01d;
+
+    /** Initial capacity of the cache table, a power of two */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Packed size of default size images */
+    private static final long DEFAULT_SIZE = -1L;
 
     // SLF4J log
     private final Logger log = LoggerFactory.getLogger(ResourceCachingImageSource.class);
 
-    /** Cache of default size images */
-    private HashMap<String, Image> defaultCache = new HashMap<String, Image>();
+    /** Packed sizes of the loaded resized images by image code, the sources of derivation */
+    private final Map<String, long[]> derivationSources = new HashMap<String, long[]>();
+
+    /** Image codes of the entries, {@code null} marks a free slot */
+    private String[] codes;
+
+    /** Packed sizes of the entries */
+    private long[] sizes;
+
+    /** Images of the entries, missing images are cached as {@code null} values */
+    private Image[] images;
+
+    /** Entry count */
+    private int count;
 
-    /** Cache of resized images */
-    private HashMap<String, HashMap<Dimension, Image>> resizedCache =
-        new HashMap<String, HashMap<Dimension, Image>>();
+    /** Derive resized images from larger cached images? */
+    private boolean derivation = false;
+
+    /** Minimal ratio of the size of a cached image to the derived size */
+    private double minDerivationFactor = DEFAULT_MIN_DERIVATION_FACTOR;
+
+    /** Maximal relative deviation of the aspect ratio of a derived image */
+    private double maxAspectDeviation = DEFAULT_MAX_ASPECT_DEVIATION;
 
     /**
      * Resource based image source with cache.
      */
     public ResourceCachingImageSource() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Checks the image code without allocating, unless it's invalid.
+     */
+    private static void checkImageCode(String imageCode) {
+
+        if (!StringUtils.hasText(imageCode)) {
+            throw new IllegalArgumentException("invalid image code: " + imageCode);
+        }
+    }
+
+    /**
+     * @return  the hash of a cache key.
+     */
+    private static int hash(String imageCode, long size) {
+
+        int hash = imageCode.hashCode() + ((int) (size ^ (size >>> 32)) * 0x9e3779b9);
+
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return  the width and height packed into a single value.
+     *
+     * @throws  IllegalArgumentException  if the width or height is negative.
+     */
+    private static long pack(int width, int height) {
+
+        if ((width < 0) || (height < 0)) {
+            throw new IllegalArgumentException("invalid dimension: width=" + width + ", height=" +
+                height);
+        }
+
+        return ((long) width << 32) | height;
+    }
+
+    /**
+     * Allocates an empty cache table.
+     */
+    private void allocate(int capacity) {
+
+        codes = new String[capacity];
+        sizes = new long[capacity];
+        images = new Image[capacity];
+        count = 0;
     }
 
     @Override public void clear() {
 
         log.debug("Clearing image source cache");
 
-        defaultCache.clear();
-        resizedCache.clear();
+        Arrays.fill(codes, null);
+        Arrays.fill(images, null);
+        derivationSources.clear();
+        count = 0;
+    }
+
+    /**
+     * Finds the smallest cached image of an image code, from which an image can be derived. Only
+     * the loaded resized images of the image code are considered.
+     *
+     * @param   imageCode  Image code.
+     * @param   dimension  The dimension of the image to derive.
+     *
+     * @return  the slot of the cached image, or {@code -1}, if there's none.
+     */
+    private int findDerivationSource(String imageCode, Dimension dimension) {
+
+        long[] candidates = derivationSources.get(imageCode);
+
+        if (candidates == null) {
+            return -1;
+        }
+
+        long resultSize = DEFAULT_SIZE;
+        long resultArea = Long.MAX_VALUE;
+        double aspectRatio = (double) dimension.width / dimension.height;
+        Dimension naturalDimension = null;
+
+        for (long size : candidates) {
+
+            int width = (int) (size >>> 32);
+            int height = (int) size;
+            long area = (long) width * height;
+
+            if ((width < (dimension.width * minDerivationFactor)) ||
+                    (height < (dimension.height * minDerivationFactor)) || (resultArea <= area)) {
+                continue;
+            }
+
+            if (Math.abs((((double) width / height) / aspectRatio) - 1d) > maxAspectDeviation) {
+                continue;
+            }
+
+            // Upscaled images are not better than the original
+            if (naturalDimension == null) {
+
+                naturalDimension = getNaturalDimension(imageCode);
+
+                if (naturalDimension == null) {
+                    return -1;
+                }
+            }
+
+            if ((naturalDimension.width < width) || (naturalDimension.height < height)) {
+                continue;
+            }
+
+            resultSize = size;
+            resultArea = area;
+        }
+
+        return (resultSize == DEFAULT_SIZE) ? -1 : indexOf(imageCode, resultSize);
     }
 
     @Override public Image getImage(String imageCode, Dimension dimension) {
-        Assert.hasText(imageCode, "invalid image code: " + imageCode);
+        checkImageCode(imageCode);
 
         if (dimension == null) {
+            return lookup(imageCode, DEFAULT_SIZE, null);
+        }
 
-            if (defaultCache.containsKey(imageCode)) {
-                log.debug("Returning cached image: code={}", imageCode);
+        return lookup(imageCode, pack(dimension.width, dimension.height), dimension);
+    }
+
+    @Override public Image getImage(String imageCode, int width, int height) {
+        checkImageCode(imageCode);
+
+        return lookup(imageCode, pack(width, height), null);
+    }
+
+    /**
+     * Determines the natural size of an image, which is taken from the cached default size image,
+     * if it's cached.
+     */
+    @Override protected Dimension getNaturalDimension(String imageCode) {
+
+        int index = indexOf(imageCode, DEFAULT_SIZE);
+
+        if ((codes[index] != null) && (images[index] != null)) {
+            return new Dimension(images[index].getWidth(null), images[index].getHeight(null));
+        }
+
+        return super.getNaturalDimension(imageCode);
+    }
+
+    /**
+     * @return  the maximal relative deviation of the aspect ratio of a derived image.
+     */
+    public double getMaxAspectDeviation() {
+        return maxAspectDeviation;
+    }
+
+    /**
+     * @return  the minimal ratio of the size of a cached image to the derived size.
+     */
+    public double getMinDerivationFactor() {
+        return minDerivationFactor;
+    }
 
-                return defaultCache.get(imageCode);
+    @Override public long getWeight() {
+
+        long weight = 0L;
+
+        for (int i = 0; i < codes.length; i++) {
+
+            if (codes[i] != null) {
+                weight += ImageUtils.getWeight(images[i]);
+            }
+        }
+
+        return weight;
+    }
+
+    /**
+     * @return  the slot of a cache key, or the free slot, where the key should be inserted.
+     */
+    private int indexOf(String imageCode, long size) {
+
+        int mask = codes.length - 1;
+        int index = hash(imageCode, size) & mask;
+
+        while (true) {
+
+            String code = codes[index];
+
+            if ((code == null) ||
+                    ((sizes[index] == size) && ((code == imageCode) || code.equals(imageCode)))) {
+                return index;
             }
 
-            Image image = getImageInternal(imageCode, null);
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * @return  {@code true}, if resized images are derived from larger cached images.
+     */
+    public boolean isDerivation() {
+        return derivation;
+    }
+
+    /**
+     * Looks up an image in the cache, and loads it on a miss.
+     *
+     * @param   imageCode  Image code.
+     * @param   size       Packed size of the image.
+     * @param   dimension  Dimension of the image, or {@code null}, if it's not created yet, or the
+     *                     default size is requested.
+     *
+     * @return  the image, or {@code null}, if the image doesn't exist.
+     */
+    private Image lookup(String imageCode, long size, Dimension dimension) {
+
+        boolean resized = size != DEFAULT_SIZE;
+        int index = indexOf(imageCode, size);
+
+        if (codes[index] != null) {
 
-            // null values are cached too
-            log.debug("Caching image: code={}", imageCode);
-            defaultCache.put(imageCode, image);
+            Image image = images[index];
+
+            if (log.isDebugEnabled()) {
+                log.debug("Returning cached image: code={}, size={}", imageCode, unpack(size));
+            }
+
+            recordHit(resized, image);
 
             return image;
+        }
 
-        } else {
+        recordMiss(resized);
 
-            HashMap<Dimension, Image> cache = resizedCache.get(imageCode);
+        if (resized && (dimension == null)) {
+            dimension = new Dimension((int) (size >>> 32), (int) size);
+        }
+
+        int source = derivation && resized ? findDerivationSource(imageCode, dimension) : -1;
 
-            if ((cache != null) && cache.containsKey(dimension)) {
+        // Exact size variants and disk cached images are better than derived ones
+        if ((source != -1) && isPrepared(imageCode, dimension)) {
+            source = -1;
+        }
 
-                log.debug("Returning cached image: code={}, dimension={}",
-                    new Object[] { imageCode, dimension });
+        Image image;
+
+        if (source == -1) {
+            image = getImageInternal(imageCode, dimension);
+        } else {
 
-                return cache.get(dimension);
+            if (log.isDebugEnabled()) {
+                log.debug("Deriving image: code={}, size={}, source={}",
+                    new Object[] { imageCode, unpack(size), unpack(sizes[source]) });
             }
 
-            Image image = getImageInternal(imageCode, dimension);
+            image = resize(ImageUtils.toCompatibleImage(images[source]), dimension);
+        }
+
+        if (((count + 1) * 2) > codes.length) {
 
-            if (cache == null) {
+            rehash(codes.length * 2);
+            index = indexOf(imageCode, size);
+        }
+
+        // Null values are cached too
+        if (log.isDebugEnabled()) {
+            log.debug("Caching image: code={}, size={}", imageCode, unpack(size));
+        }
 
-                cache = new HashMap<Dimension, Image>();
-                resizedCache.put(imageCode, cache);
+        codes[index] = imageCode;
+        sizes[index] = size;
+        images[index] = image;
+        count++;
+
+        if (resized && (source == -1) && (image != null)) {
+
+            long[] candidates = derivationSources.get(imageCode);
+
+            if (candidates == null) {
+                candidates = new long[] { size };
+            } else {
+
+                candidates = Arrays.copyOf(candidates, candidates.length + 1);
+                candidates[candidates.length - 1] = size;
             }
 
-            // Null values are to be cached!
-            log.debug("Caching image: code={}, dimension={}",
-                new Object[] { imageCode, dimension });
+            derivationSources.put(imageCode, candidates);
+        }
+
+        return image;
+    }
 
-            cache.put(dimension, image);
+    /**
+     * Moves the entries into a new cache table, skipping the entries of an image code.
+     *
+     * @param  capacity   The capacity of the new table.
+     * @param  imageCode  Image code to skip, or {@code null} to keep every entry.
+     */
+    private void rehash(int capacity, String imageCode) {
 
-            return image;
+        String[] oldCodes = codes;
+        long[] oldSizes = sizes;
+        Image[] oldImages = images;
+
+        allocate(capacity);
+
+        for (int i = 0; i < oldCodes.length; i++) {
+
+            String code = oldCodes[i];
+
+            if ((code != null) && !code.equals(imageCode)) {
+
+                int index = indexOf(code, oldSizes[i]);
+
+                codes[index] = code;
+                sizes[index] = oldSizes[i];
+                images[index] = oldImages[i];
+                count++;
+            }
         }
     }
 
+    /**
+     * Moves the entries into a new cache table.
+     */
+    private void rehash(int capacity) {
+        rehash(capacity, null);
+    }
+
     @Override public void remove(String imageCode) {
 
-        defaultCache.remove(imageCode);
-        resizedCache.remove(imageCode);
+        derivationSources.remove(imageCode);
+        rehash(codes.length, imageCode);
     }
 
-    @Override public int size() {
+    /**
+     * @param  derivation  whether resized images should be derived from larger cached images.
+     *                     Derivation is disabled ({@code false}) by default.
+     */
+    public void setDerivation(boolean derivation) {
+        this.derivation = derivation;
+    }
 
-        int size = defaultCache.size();
+    /**
+     * @param  maxAspectDeviation  the maximal relative deviation of the aspect ratio of a derived
+     *                             image to set. The default is {@code 0.01}.
+     */
+    public void setMaxAspectDeviation(double maxAspectDeviation) {
+        Assert.isTrue(0d <= maxAspectDeviation, "invalid deviation: " + maxAspectDeviation);
 
-        for (HashMap<Dimension, Image> subCache : resizedCache.values()) {
-            size += subCache.size();
-        }
+        this.maxAspectDeviation = maxAspectDeviation;
+    }
 
-        return size;
+    /**
+     * @param  minDerivationFactor  the minimal ratio of the size of a cached image to the derived
+     *                              size to set. Any larger image is used ({@code 1.0}) by default.
+     */
+    public void setMinDerivationFactor(double minDerivationFactor) {
+        Assert.isTrue(1d <= minDerivationFactor, "invalid factor: " + minDerivationFactor);
+
+        this.minDerivationFactor = minDerivationFactor;
+    }
+
+    @Override public int size() {
+        return count;
+    }
+
+    /**
+     * @return  the readable form of a packed size.
+     */
+    private String unpack(long size) {
+        return (size == DEFAULT_SIZE) ? "default" : ((size >>> 32) + "x" + (int) size);
     }
 }
@@ -1,31 +1,86 @@
 package com.idragon.adastra.context;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import org.springframework.context.ResourceLoaderAware;
 
 import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
 
 import org.springframework.util.Assert;
+import org.springframework.util.ResourceUtils;
 import org.springframework.util.StringUtils;
 
 import java.awt.Dimension;
 import java.awt.Image;
-import java.awt.Toolkit;
 import java.awt.image.BufferedImage;
 
 import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 
 /**
  * Resource based image source.
  *
+ * <p>If variant lookup is enabled, resized images are created from the best pre-rendered variant
+ * of the image: {@code name-WxH.png} for the exact size, or the smallest of {@code name.png},
+ * {@code name@2x.png} and {@code name@3x.png} covering the required size. Indexed image sources
+ * consider every {@code name-WxH.png} variant of the index too. Their variants are grouped by the
+ * base image, when the index is built, and the dimensions of the variants are read once.</p>
+ *
  * @author  iDragon
  */
 public class ResourceImageSource implements ImageSource, ResourceLoaderAware {
 
+    /** Scale factors of the pre-rendered variants */
+    private static final int[] VARIANT_SCALES = { 2, 3 };
+
+    /** Pattern of the size suffix of pre-rendered variants */
+    private static final Pattern VARIANT_SIZE_PATTERN = Pattern.compile("-(\\d+)x(\\d+)");
+
+    /** Pattern of the image codes of pre-rendered variants */
+    private static final Pattern VARIANT_CODE_PATTERN = Pattern.compile(
+            "(.*)(?:@\\d+x|-\\d+x\\d+)(\\.[^./]+)");
+
+    // SLF4J log
+    private final Logger log = LoggerFactory.getLogger(ResourceImageSource.class);
+
     private String[] locations = new String[0];
     private ResourceLoader resourceLoader = new DefaultResourceLoader();
+    private ImageScaler scaler = ScalingQuality.BALANCED.createScaler();
+    private DiskImageCache diskImageCache;
+    private boolean indexed = false;
+    private String indexPattern = "**/*";
+    private boolean variantLookup = false;
+
+    private String[] bundleLocations = new String[0];
+
+    /** Image bundles, or {@code null}, if they're not loaded yet */
+    private volatile List<ImageBundle> bundles;
+
+    /** Index of image resources, or {@code null}, if it's not built yet */
+    private volatile Map<String, Resource> index;
+
+    /** Variants of the indexed images by base image code, the base image first */
+    private volatile Map<String, Variant[]> variantIndex;
 
     /**
      * Resource based source.
@@ -33,6 +88,167 @@ public class ResourceImageSource implements ImageSource, ResourceLoaderAware {
     public ResourceImageSource() {
     }
 
+    /**
+     * @param   imageCode  Image code.
+     *
+     * @return  the code of the base image, if the image code denotes a pre-rendered variant, or
+     *          {@code null} otherwise.
+     */
+    static String getBaseCode(String imageCode) {
+
+        Matcher matcher = VARIANT_CODE_PATTERN.matcher(imageCode);
+
+        return matcher.matches() ? (matcher.group(1) + matcher.group(2)) : null;
+    }
+
+    /**
+     * Groups the pre-rendered variants of an index by the code of their base image. Only the
+     * variants of indexed base images are grouped.
+     *
+     * @param   newIndex  The index of image resources.
+     *
+     * @return  the variants by base image code, the base image first, then the variants ordered by
+     *          image code.
+     */
+    private Map<String, Variant[]> buildVariantIndex(Map<String, Resource> newIndex) {
+
+        HashMap<String, TreeMap<String, Resource>> groups =
+            new HashMap<String, TreeMap<String, Resource>>();
+
+        for (Map.Entry<String, Resource> entry : newIndex.entrySet()) {
+
+            String imageCode = entry.getKey();
+            Matcher matcher = VARIANT_CODE_PATTERN.matcher(imageCode);
+
+            if (!matcher.matches()) {
+                continue;
+            }
+
+            String baseCode = matcher.group(1) + matcher.group(2);
+            String suffix = imageCode.substring(matcher.group(1).length(),
+                    imageCode.length() - matcher.group(2).length());
+
+            if (!newIndex.containsKey(baseCode) ||
+                    !(VARIANT_SIZE_PATTERN.matcher(suffix).matches() || isScaleSuffix(suffix))) {
+                continue;
+            }
+
+            TreeMap<String, Resource> group = groups.get(baseCode);
+
+            if (group == null) {
+
+                group = new TreeMap<String, Resource>();
+                groups.put(baseCode, group);
+            }
+
+            group.put(imageCode, entry.getValue());
+        }
+
+        HashMap<String, Variant[]> result = new HashMap<String, Variant[]>();
+
+        for (Map.Entry<String, TreeMap<String, Resource>> group : groups.entrySet()) {
+
+            Variant[] variants = new Variant[group.getValue().size() + 1];
+            int i = 0;
+
+            variants[i++] = new Variant(newIndex.get(group.getKey()));
+
+            for (Resource resource : group.getValue().values()) {
+                variants[i++] = new Variant(resource);
+            }
+
+            result.put(group.getKey(), variants);
+        }
+
+        return result;
+    }
+
+    /**
+     * Decodes an image resource eagerly. The result is fully decoded and converted to the pixel
+     * format compatible with the screen, so its dimensions are known and painting it is fast.
+     *
+     * @param   resource  The resource to decode.
+     *
+     * @return  the decoded image.
+     *
+     * @throws  IllegalArgumentException  if the resource can't be read, or its format is not
+     *                                    supported.
+     */
+    protected BufferedImage decode(Resource resource) {
+
+        BufferedImage image;
+
+        try {
+
+            InputStream input = resource.getInputStream();
+
+            try {
+                image = ImageIO.read(input);
+            } finally {
+                input.close();
+            }
+
+        } catch (IOException e) {
+            throw new IllegalArgumentException("invalid resource: " + resource, e);
+        }
+
+        if (image == null) {
+            throw new IllegalArgumentException("unsupported image format: " + resource);
+        }
+
+        return ImageUtils.toCompatibleImage(image);
+    }
+
+    /**
+     * @param   roots  The URLs of the root directories.
+     * @param   url    The URL of a resource.
+     *
+     * @return  the longest root URL, which is a prefix of the URL, or {@code null}, if none is.
+     */
+    private String findRoot(List<String> roots, String url) {
+
+        String result = null;
+
+        for (String root : roots) {
+
+            if (url.startsWith(root) && ((result == null) || (result.length() < root.length()))) {
+                result = root;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return  the array of image bundle locations.
+     */
+    public String[] getBundleLocations() {
+        return bundleLocations;
+    }
+
+    /**
+     * @return  the image bundles, which are loaded on first use.
+     *
+     * @throws  IllegalArgumentException  if a bundle can't be loaded.
+     */
+    private List<ImageBundle> getBundles() {
+
+        List<ImageBundle> currentBundles = bundles;
+
+        if (currentBundles == null) {
+            currentBundles = reloadBundles();
+        }
+
+        return currentBundles;
+    }
+
+    /**
+     * @return  the persistent cache of resized images, or {@code null}, if there's none.
+     */
+    public DiskImageCache getDiskImageCache() {
+        return diskImageCache;
+    }
+
     @Override public Image getImage(String imageCode) {
         return getImage(imageCode, null);
     }
@@ -48,7 +264,10 @@ public class ResourceImageSource implements ImageSource, ResourceLoaderAware {
     }
 
     /**
-     * Resolves the image code and resizes the image, if needed.
+     * Resolves the image code and resizes the image, if needed. If variant lookup is enabled,
+     * resized images are created from the best variant. If a disk image cache is set, resized
+     * images are read from it, or written into it after resizing. In both cases, the image code is
+     * resolved through {@link #resolveResource} and {@link #decode}.
      *
      * @param   imageCode  Image code to resolve.
      * @param   dimension  The required image dimensions, or {@code null}, if the default image size
@@ -58,7 +277,30 @@ public class ResourceImageSource implements ImageSource, ResourceLoaderAware {
      */
     protected Image getImageInternal(String imageCode, Dimension dimension) {
 
-        Image image = resolveCode(imageCode);
+        Resource resource = null;
+
+        // Bundled images are decoded already, so they are not worth caching on disk
+        if ((dimension != null) && ((diskImageCache != null) || variantLookup) &&
+                !isBundled(imageCode)) {
+
+            resource = variantLookup ? resolveVariant(imageCode, dimension)
+                                     : resolveResource(imageCode);
+
+            if (resource == null) {
+                return null;
+            }
+
+            if (diskImageCache != null) {
+
+                BufferedImage cachedImage = diskImageCache.get(imageCode, dimension, resource);
+
+                if (cachedImage != null) {
+                    return ImageUtils.toCompatibleImage(cachedImage);
+                }
+            }
+        }
+
+        Image image = (resource == null) ? resolveCode(imageCode) : decode(resource);
 
         if (image == null) {
             return image;
@@ -71,8 +313,21 @@ public class ResourceImageSource implements ImageSource, ResourceLoaderAware {
         }
 
         // Image needs resize
-        return image.getScaledInstance(dimension.width, dimension.height,
-                BufferedImage.SCALE_SMOOTH);
+        Image resizedImage = resize(ImageUtils.toCompatibleImage(image), dimension);
+
+        if ((resource != null) && (diskImageCache != null)) {
+            diskImageCache.put(imageCode, dimension, resource,
+                ImageUtils.toCompatibleImage(resizedImage));
+        }
+
+        return resizedImage;
+    }
+
+    /**
+     * @return  the resource pattern of the index relative to the location directories.
+     */
+    public String getIndexPattern() {
+        return indexPattern;
     }
 
     /**
@@ -83,7 +338,267 @@ public class ResourceImageSource implements ImageSource, ResourceLoaderAware {
     }
 
     /**
-     * Resolves an image code, but doesn't alter the image.
+     * Determines the natural size of an image. Bundled images are taken from their bundle, other
+     * images are not decoded, only the header of their resource is read.
+     *
+     * @param   imageCode  Image code.
+     *
+     * @return  the natural size of the image, or {@code null}, if the image doesn't exist, or its
+     *          size can't be read.
+     */
+    protected Dimension getNaturalDimension(String imageCode) {
+
+        if (isBundled(imageCode)) {
+
+            Image image = resolveCode(imageCode);
+
+            return (image == null) ? null : new Dimension(image.getWidth(null),
+                    image.getHeight(null));
+        }
+
+        Resource resource = resolveResource(imageCode);
+
+        return (resource == null) ? null : readDimension(resource);
+    }
+
+    /**
+     * @return  the image scaler used to resize images.
+     */
+    public ImageScaler getScaler() {
+        return scaler;
+    }
+
+    /**
+     * @return  {@code true}, if an image bundle contains the image.
+     */
+    private boolean isBundled(String imageCode) {
+
+        for (ImageBundle bundle : getBundles()) {
+
+            if (bundle.contains(imageCode)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return  {@code true}, if the resource denotes a directory of the file system.
+     */
+    private boolean isDirectory(Resource resource) {
+
+        try {
+            return resource.getFile().isDirectory();
+        } catch (IOException e) {
+
+            // The resource is not available in the file system
+            return false;
+        }
+    }
+
+    /**
+     * @return  {@code true}, if image resources are looked up in an index built by scanning the
+     *          locations.
+     */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Checks, if a resized image is available without resizing the image: from its exact size
+     * variant, if variant lookup is enabled, or from the disk image cache, if it's set.
+     *
+     * @param   imageCode  Image code.
+     * @param   dimension  The required image dimensions.
+     *
+     * @return  {@code true}, if the resized image is available without resizing.
+     */
+    protected boolean isPrepared(String imageCode, Dimension dimension) {
+
+        if (isBundled(imageCode)) {
+            return false;
+        }
+
+        if (variantLookup && (resolveExactVariant(imageCode, dimension) != null)) {
+            return true;
+        }
+
+        if (diskImageCache == null) {
+            return false;
+        }
+
+        Resource resource = variantLookup ? resolveVariant(imageCode, dimension)
+                                          : resolveResource(imageCode);
+
+        return (resource != null) && diskImageCache.contains(imageCode, dimension, resource);
+    }
+
+    /**
+     * @return  {@code true}, if resized images are created from pre-rendered variants.
+     */
+    public boolean isVariantLookup() {
+        return variantLookup;
+    }
+
+    /**
+     * @return  {@code true}, if the suffix of an image code denotes a pre-rendered scale variant,
+     *          like {@code @2x}.
+     */
+    private boolean isScaleSuffix(String suffix) {
+
+        for (int scale : VARIANT_SCALES) {
+
+            if (suffix.equals("@" + scale + "x")) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Reads the dimension of an image resource from its header, without decoding the pixels.
+     *
+     * @return  the dimension of the image, or {@code null}, if it can't be read.
+     */
+    private Dimension readDimension(Resource resource) {
+
+        try(InputStream input = resource.getInputStream();
+                ImageInputStream stream = ImageIO.createImageInputStream(input)) {
+
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+
+            try {
+
+                reader.setInput(stream, true, true);
+
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+
+            } finally {
+
+                reader.dispose();
+            }
+
+        } catch (IOException e) {
+
+            log.warn("Image header can't be read: " + resource, e);
+
+            return null;
+        }
+    }
+
+    /**
+     * Rebuilds the resource index scanning each location once. Image resources are matched against
+     * the index pattern relative to the directory of the location, and are mapped to their path
+     * relative to the same directory. Class path locations are scanned in every class path root,
+     * in class path order. When an image code is found at multiple locations, the first location
+     * wins, just like without the index.
+     *
+     * @return  the new index.
+     *
+     * @throws  IllegalArgumentException  if a location can't be scanned.
+     */
+    public Map<String, Resource> rebuildIndex() {
+
+        ResourcePatternResolver resolver = new PathMatchingResourcePatternResolver(resourceLoader);
+        HashMap<String, Resource> newIndex = new HashMap<String, Resource>();
+
+        for (int i = 0; i < locations.length; i++) {
+
+            String directory = StringUtils.applyRelativePath(locations[i], "");
+
+            if (directory.startsWith(ResourceUtils.CLASSPATH_URL_PREFIX)) {
+                directory = ResourcePatternResolver.CLASSPATH_ALL_URL_PREFIX +
+                    directory.substring(ResourceUtils.CLASSPATH_URL_PREFIX.length());
+            }
+
+            try {
+
+                ArrayList<String> roots = new ArrayList<String>();
+
+                for (Resource root : resolver.getResources(directory)) {
+                    roots.add(root.getURL().toString());
+                }
+
+                for (Resource resource : resolver.getResources(directory + indexPattern)) {
+
+                    String url = resource.getURL().toString();
+                    String root = findRoot(roots, url);
+
+                    if ((root != null) && !url.endsWith("/") && !isDirectory(resource)) {
+
+                        String imageCode = url.substring(root.length());
+
+                        if (!newIndex.containsKey(imageCode)) {
+                            newIndex.put(imageCode, resource);
+                        }
+                    }
+                }
+
+            } catch (IOException e) {
+                throw new IllegalArgumentException("location can't be indexed: " + locations[i],
+                    e);
+            }
+        }
+
+        log.debug("Resource index rebuilt: size={}", newIndex.size());
+
+        variantIndex = buildVariantIndex(newIndex);
+        index = Collections.unmodifiableMap(newIndex);
+
+        return index;
+    }
+
+    /**
+     * Reloads the image bundles.
+     *
+     * @return  the loaded bundles.
+     *
+     * @throws  IllegalArgumentException  if a bundle can't be loaded.
+     */
+    public List<ImageBundle> reloadBundles() {
+
+        ArrayList<ImageBundle> newBundles = new ArrayList<ImageBundle>();
+
+        for (String bundleLocation : bundleLocations) {
+
+            Resource resource = resourceLoader.getResource(bundleLocation);
+
+            try {
+                newBundles.add(ImageBundle.load(resource));
+            } catch (IOException e) {
+                throw new IllegalArgumentException("invalid bundle: " + resource, e);
+            }
+        }
+
+        bundles = Collections.unmodifiableList(newBundles);
+
+        return bundles;
+    }
+
+    /**
+     * Resizes an image with the image scaler.
+     *
+     * @param   image      The image to resize.
+     * @param   dimension  The required image dimensions.
+     *
+     * @return  the resized image, which is converted to the screen compatible pixel format.
+     */
+    protected Image resize(BufferedImage image, Dimension dimension) {
+        return ImageUtils.toCompatibleImage(scaler.scale(image, dimension.width,
+                    dimension.height));
+    }
+
+    /**
+     * Resolves an image code, but doesn't alter the image. Bundles are looked up first, then the
+     * locations.
      *
      * @param   imageCode  Image code to resolve.
      *
@@ -91,22 +606,223 @@ public class ResourceImageSource implements ImageSource, ResourceLoaderAware {
      */
     protected Image resolveCode(String imageCode) {
 
+        for (ImageBundle bundle : getBundles()) {
+
+            BufferedImage image = bundle.getImage(imageCode);
+
+            if (image != null) {
+                return image;
+            }
+        }
+
+        Resource resource = resolveResource(imageCode);
+
+        return (resource == null) ? null : decode(resource);
+    }
+
+    /**
+     * @return  the resource of the exact size variant {@code name-WxH.ext} of an image, or {@code
+     *          null}, if it doesn't exist.
+     */
+    private Resource resolveExactVariant(String imageCode, Dimension dimension) {
+
+        int extensionIndex = imageCode.lastIndexOf('.');
+
+        if (extensionIndex <= (imageCode.lastIndexOf('/') + 1)) {
+            return null;
+        }
+
+        return resolveResource(imageCode.substring(0, extensionIndex) + "-" + dimension.width +
+                "x" + dimension.height + imageCode.substring(extensionIndex));
+    }
+
+    /**
+     * Finds the resource of an image code walking along the locations. If the image source is
+     * indexed, the resource is looked up in the index instead.
+     *
+     * @param   imageCode  Image code to resolve.
+     *
+     * @return  the first existing resource of the image code, or {@code null}, if the image
+     *          resource doesn't exist.
+     */
+    protected Resource resolveResource(String imageCode) {
+
+        if (indexed) {
+
+            Map<String, Resource> currentIndex = index;
+
+            if (currentIndex == null) {
+                currentIndex = rebuildIndex();
+            }
+
+            return currentIndex.get(imageCode);
+        }
+
         for (int i = 0; i < locations.length; i++) {
 
             String path = StringUtils.applyRelativePath(locations[i], imageCode);
             Resource resource = resourceLoader.getResource(path);
 
             if (resource.exists()) {
+                return resource;
+            }
+        }
 
-                try {
-                    return Toolkit.getDefaultToolkit().createImage(resource.getURL());
-                } catch (IOException e) {
-                    throw new IllegalArgumentException("invalid resource: " + resource);
+        return null;
+    }
+
+    /**
+     * Finds the best pre-rendered variant of an image for a dimension. The exact size variant
+     * {@code name-WxH.ext} wins, otherwise the smallest variant covering the dimension is chosen,
+     * or the largest variant, if none of them covers it. The dimensions of the candidates are read
+     * from their headers. If the image source is indexed, the variants grouped by the index are
+     * the candidates, and their dimensions are read only once per index.
+     *
+     * @param   imageCode  Image code to resolve.
+     * @param   dimension  The required image dimensions.
+     *
+     * @return  the resource of the best variant, or {@code null}, if the image resource doesn't
+     *          exist.
+     */
+    protected Resource resolveVariant(String imageCode, Dimension dimension) {
+
+        Resource resource = resolveResource(imageCode);
+        int extensionIndex = imageCode.lastIndexOf('.');
+
+        if ((resource == null) || (extensionIndex <= (imageCode.lastIndexOf('/') + 1))) {
+            return resource;
+        }
+
+        Resource exactVariant = resolveExactVariant(imageCode, dimension);
+
+        if (exactVariant != null) {
+            return exactVariant;
+        }
+
+        Map<String, Variant[]> currentVariantIndex = indexed ? variantIndex : null;
+        Variant[] variants;
+
+        if (currentVariantIndex != null) {
+
+            variants = currentVariantIndex.get(imageCode);
+
+            // The image has no variants
+            if (variants == null) {
+                return resource;
+            }
+
+        } else {
+
+            String name = imageCode.substring(0, extensionIndex);
+            String extension = imageCode.substring(extensionIndex);
+            List<Variant> probed = new ArrayList<Variant>();
+
+            probed.add(new Variant(resource));
+
+            for (int scale : VARIANT_SCALES) {
+
+                Resource variant = resolveResource(name + "@" + scale + "x" + extension);
+
+                if (variant != null) {
+                    probed.add(new Variant(variant));
                 }
             }
+
+            if (probed.size() == 1) {
+                return resource;
+            }
+
+            variants = probed.toArray(new Variant[probed.size()]);
+        }
+
+        Resource best = resource;
+        long bestArea = -1L;
+        boolean bestCovers = false;
+
+        for (Variant variant : variants) {
+
+            Dimension variantDimension = variant.getDimension();
+
+            if (variantDimension == null) {
+                continue;
+            }
+
+            long area = (long) variantDimension.width * variantDimension.height;
+            boolean covers = (dimension.width <= variantDimension.width) &&
+                (dimension.height <= variantDimension.height);
+
+            if ((bestArea < 0L) || (covers && (!bestCovers || (area < bestArea))) ||
+                    (!covers && !bestCovers && (bestArea < area))) {
+
+                best = variant.resource;
+                bestArea = area;
+                bestCovers = covers;
+            }
         }
 
-        return null;
+        log.debug("Variant resolved: code={}, variant={}", imageCode, best);
+
+        return best;
+    }
+
+    /**
+     * @param  bundleLocation  the location of an image bundle, which is looked up before the
+     *                         locations.
+     */
+    public void setBundleLocation(String bundleLocation) {
+        setBundleLocations(new String[] { bundleLocation });
+    }
+
+    /**
+     * @param  bundleLocations  the array of image bundle locations, which are looked up in order
+     *                          before the locations.
+     *
+     * @see    com.idragon.adastra.context.ImageBundlePacker
+     */
+    public void setBundleLocations(String[] bundleLocations) {
+
+        this.bundleLocations = new String[(bundleLocations == null) ? 0 : bundleLocations.length];
+
+        for (int i = 0; i < this.bundleLocations.length; i++) {
+            Assert.hasText(bundleLocations[i], "bundle location is empty");
+            this.bundleLocations[i] = bundleLocations[i].trim();
+        }
+
+        bundles = null;
+    }
+
+    /**
+     * @param  diskImageCache  the persistent cache of resized images to set, or {@code null} to
+     *                         disable it.
+     */
+    public void setDiskImageCache(DiskImageCache diskImageCache) {
+        this.diskImageCache = diskImageCache;
+    }
+
+    /**
+     * @param  indexed  whether image resources should be looked up in an index built by scanning
+     *                  the locations. The index is built on the first lookup, and can be rebuilt
+     *                  on demand. Indexing is disabled ({@code false}) by default.
+     *
+     * @see    #rebuildIndex
+     */
+    public void setIndexed(boolean indexed) {
+
+        this.indexed = indexed;
+        index = null;
+        variantIndex = null;
+    }
+
+    /**
+     * @param  indexPattern  the resource pattern of the index relative to the location directories
+     *                       to set. Every resource is indexed ({@code **}{@code /*}) by default.
+     */
+    public void setIndexPattern(String indexPattern) {
+        Assert.hasText(indexPattern, "index pattern is empty");
+
+        this.indexPattern = indexPattern;
+        index = null;
+        variantIndex = null;
     }
 
     /**
@@ -134,11 +850,80 @@ public class ResourceImageSource implements ImageSource, ResourceLoaderAware {
         }
 
         this.locations = locations;
+        index = null;
+        variantIndex = null;
     }
 
     @Override public void setResourceLoader(ResourceLoader resourceLoader) {
 
         this.resourceLoader = ((resourceLoader != null) ? resourceLoader
                                                         : new DefaultResourceLoader());
+        index = null;
+        variantIndex = null;
+        bundles = null;
+    }
+
+    /**
+     * @param  scaler  the image scaler used to resize images to set.
+     */
+    public void setScaler(ImageScaler scaler) {
+        Assert.notNull(scaler, "scaler is null");
+
+        this.scaler = scaler;
+    }
+
+    /**
+     * @param  scalingQuality  the scaling quality preset to set. The {@link
+     *                         ScalingQuality#BALANCED} preset is used by default.
+     */
+    public void setScalingQuality(ScalingQuality scalingQuality) {
+        Assert.notNull(scalingQuality, "scaling quality is null");
+
+        this.scaler = scalingQuality.createScaler();
+    }
+
+    /**
+     * @param  variantLookup  whether resized images should be created from pre-rendered variants.
+     *                        Variant lookup is disabled ({@code false}) by default.
+     */
+    public void setVariantLookup(boolean variantLookup) {
+        this.variantLookup = variantLookup;
+    }
+
+    /**
+     * Pre-rendered variant of an image with its dimension, which is read on demand.
+     */
+    private final class Variant {
+
+        private final Resource resource;
+
+        /** Has the dimension been read? */
+        private volatile boolean read;
+
+        /** Dimension, or {@code null}, if it can't be read */
+        private volatile Dimension dimension;
+
+        /**
+         * Pre-rendered variant of an image.
+         *
+         * @param  resource  The resource of the variant.
+         */
+        public Variant(Resource resource) {
+            this.resource = resource;
+        }
+
+        /**
+         * @return  the dimension of the variant, or {@code null}, if it can't be read.
+         */
+        public Dimension getDimension() {
+
+            if (!read) {
+
+                dimension = readDimension(resource);
+                read = true;
+            }
+
+            return dimension;
+        }
     }
 }
@@ -0,0 +1,42 @@
+package com.idragon.adastra.context;
+
+/**
+ * Quality and speed presets of image scaling.
+ *
+ * @author  iDragon
+ */
+public enum ScalingQuality {
+
+    /** Single step bilinear scaling */
+    SPEED {
+
+        @Override public ImageScaler createScaler() {
+
+            ProgressiveImageScaler scaler = new ProgressiveImageScaler();
+            scaler.setProgressive(false);
+
+            return scaler;
+        }
+    },
+
+    /** Progressive bilinear scaling, which halves the image size in each step */
+    BALANCED {
+
+        @Override public ImageScaler createScaler() {
+            return new ProgressiveImageScaler();
+        }
+    },
+
+    /** Area averaging resampling, which runs in parallel for large images */
+    QUALITY {
+
+        @Override public ImageScaler createScaler() {
+            return new AreaAveragingImageScaler();
+        }
+    };
+
+    /**
+     * @return  a new image scaler of this preset.
+     */
+    public abstract ImageScaler createScaler();
+}
@@ -0,0 +1,231 @@
+package com.idragon.adastra.context;
+
+import org.apache.commons.io.FileUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Short-lived workspace, which keeps its directories in memory. The root is a new directory on a
+ * memory backed file system, {@code /dev/shm} by default, where available, otherwise in the
+ * temporary directory. A configured root is used as is, like a {@code tmpfs} mount.
+ *
+ * <p>The quota of the workspace is the memory limit. Above the limit, the least recently used
+ * top-level subdirectories are spilled to the spill directory on disk, and replaced by symbolic
+ * links, so their {@code File} handles stay valid, once they're requested again. Spilled
+ * subdirectories are not accounted. Where symbolic links are not supported, nothing is spilled,
+ * and the usage may exceed the limit.</p>
+ *
+ * <p>The whole workspace, including the spilled directories, is deleted on destruction.</p>
+ *
+ * @author  hp
+ */
+public class ScratchWorkspace extends QuotaWorkspace {
+
+    /** Default memory backed directory */
+    public static final String DEFAULT_MEMORY_DIRECTORY = "/dev/shm";
+
+    // SLF4J log
+    private final Logger log = LoggerFactory.getLogger(ScratchWorkspace.class);
+
+    /** Names of the spilled top-level subdirectories */
+    private final Set<String> spilledNames =
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /** Directory, where the root is created, or {@code null} to detect it */
+    private File memoryDirectory;
+
+    /** Directory, where the spill directory is created, or {@code null} to use the temporary one */
+    private File spillDirectory;
+
+    /** Spill directory of the workspace, or {@code null}, if nothing is spilled yet */
+    private File spillRoot;
+
+    /**
+     * Short-lived workspace, which keeps its directories in memory.
+     */
+    public ScratchWorkspace() {
+    }
+
+    /**
+     * @return  the memory backed directory, where the root is created: {@code /dev/shm}, if it's a
+     *          writable directory, otherwise the temporary directory.
+     */
+    private static File detectMemoryDirectory() {
+
+        File directory = new File(DEFAULT_MEMORY_DIRECTORY);
+
+        if (directory.isDirectory() && directory.canWrite()) {
+            return directory;
+        }
+
+        return new File(System.getProperty("java.io.tmpdir"));
+    }
+
+    /**
+     * Release the resources of the workspace, and delete its directories.
+     */
+    @Override public void destroy() {
+
+        super.destroy();
+
+        try {
+
+            // The spilled directories are deleted first, the links to them don't matter then
+            if (spillRoot != null) {
+                FileUtils.deleteDirectory(spillRoot);
+            }
+
+            FileUtils.deleteDirectory(getRoot());
+
+        } catch (IOException e) {
+            log.warn("Scratch workspace can't be deleted: " + getRoot(), e);
+        }
+
+        spilledNames.clear();
+        invalidate();
+    }
+
+    /**
+     * Spills a top-level subdirectory to the disk, and replaces it with a symbolic link. The link
+     * is created before the subdirectory is moved, so nothing is moved, where symbolic links are
+     * not supported. A failed spill moves the subdirectory back.
+     *
+     * @param   name       The name of the subdirectory.
+     * @param   directory  The subdirectory.
+     *
+     * @throws  IOException  if the subdirectory can't be spilled.
+     */
+    @Override protected void evict(String name, File directory) throws IOException {
+
+        File target = new File(getSpillRoot(), name);
+        Path link = directory.toPath().resolveSibling("." + name + ".spill");
+
+        log.debug("Spilling workspace directory: name={}, target={}", name, target);
+
+        try {
+            Files.createSymbolicLink(link, target.toPath());
+        } catch (UnsupportedOperationException e) {
+            throw new IOException("symbolic links are not supported: " + link, e);
+        }
+
+        try {
+            FileUtils.moveDirectory(directory, target);
+        } catch (IOException e) {
+
+            Files.deleteIfExists(link);
+
+            throw e;
+        }
+
+        try {
+            Files.move(link, directory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+
+            FileUtils.moveDirectory(target, directory);
+            Files.deleteIfExists(link);
+
+            throw e;
+        }
+
+        spilledNames.add(name);
+    }
+
+    /**
+     * @return  the directory, where the root is created, or {@code null}, if it's detected.
+     */
+    public File getMemoryDirectory() {
+        return memoryDirectory;
+    }
+
+    /**
+     * @return  the spill directory of the workspace, which is created, if needed.
+     */
+    private synchronized File getSpillRoot() throws IOException {
+
+        if (spillRoot == null) {
+
+            File parent = (spillDirectory == null)
+                ? new File(System.getProperty("java.io.tmpdir")) : spillDirectory;
+
+            FileUtils.forceMkdir(parent);
+            spillRoot = Files.createTempDirectory(parent.toPath(), "scratch-spill-").toFile();
+        }
+
+        return spillRoot;
+    }
+
+    /**
+     * @return  the directory, where the spill directory is created, or {@code null}, if the
+     *          temporary directory is used.
+     */
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * Initialize workspace after performing dependency injection. If no root is set, a new root is
+     * created in the memory directory.
+     *
+     * @throws  IllegalArgumentException  if the workspace is already initialized, or the given root
+     *                                    is invalid.
+     * @throws  IllegalStateException     if the root can't be created.
+     */
+    @Override public void init() {
+
+        if (getRoot() == null) {
+
+            File parent = (memoryDirectory == null) ? detectMemoryDirectory() : memoryDirectory;
+
+            try {
+                setRoot(Files.createTempDirectory(parent.toPath(), "scratch-").toFile());
+            } catch (IOException e) {
+                throw new IllegalStateException("root can't be created in: " + parent, e);
+            }
+        }
+
+        super.init();
+    }
+
+    @Override protected boolean isAccounted(String name) {
+        return !spilledNames.contains(name);
+    }
+
+    /**
+     * @param   name  The name of a top-level subdirectory.
+     *
+     * @return  {@code true}, if the subdirectory is spilled to the disk.
+     */
+    public boolean isSpilled(String name) {
+        return spilledNames.contains(name);
+    }
+
+    /**
+     * @param  memoryDirectory  the directory, where the root is created, or {@code null} to use
+     *                          {@code /dev/shm}, if it's available, or the temporary directory
+     *                          otherwise. It's ignored, if a root is set.
+     */
+    public void setMemoryDirectory(File memoryDirectory) {
+        this.memoryDirectory = memoryDirectory;
+    }
+
+    /**
+     * @param  spillDirectory  the directory, where the spill directory is created, or {@code null}
+     *                         to use the temporary directory.
+     */
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+}
@@ -0,0 +1,306 @@
+package com.idragon.adastra.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Caching workspace, which fans the entries of high-cardinality directories out into hash-prefix
+ * directory levels. The entry of a key is stored in the directory of the hex prefix of the hash of
+ * the key, split into levels, like {@code cache/3f/a2/key} with two levels of width two. So the
+ * directories stay small, even with hundreds of thousands of entries.
+ *
+ * <p>The hash is derived from {@code String.hashCode}, which is specified, so the layout is
+ * stable across virtual machines. Flat directories can be migrated to the sharded layout with
+ * {@link #migrate}. Keys, which look like shard directories, are not supported.</p>
+ *
+ * @author  hp
+ */
+public class ShardedWorkspace extends CachingWorkspace {
+
+    /** Default count of shard levels */
+    public static final int DEFAULT_LEVELS = 2;
+
+    /** Default count of hex digits in the names of the shard directories */
+    public static final int DEFAULT_SHARD_WIDTH = 2;
+
+    // SLF4J log
+    private final Logger log = LoggerFactory.getLogger(ShardedWorkspace.class);
+
+    /** Count of shard levels */
+    private int levels = DEFAULT_LEVELS;
+
+    /** Count of hex digits in the names of the shard directories */
+    private int shardWidth = DEFAULT_SHARD_WIDTH;
+
+    /**
+     * Caching workspace, which fans the entries of high-cardinality directories out into
+     * hash-prefix directory levels.
+     */
+    public ShardedWorkspace() {
+    }
+
+    /**
+     * Checks a key.
+     *
+     * @throws  IllegalArgumentException  if the key is empty, or it's not a single path element.
+     */
+    private static void checkKey(String key) {
+
+        Assert.hasText(key, "key is empty");
+        Assert.isTrue((key.indexOf('/') == -1) && (key.indexOf('\\') == -1) && !".".equals(key) &&
+            !"..".equals(key), "invalid key: " + key);
+    }
+
+    /**
+     * @return  the hash of a key with its bits mixed, since similar keys have similar hash codes.
+     */
+    private static int hash(String key) {
+
+        int hash = key.hashCode();
+
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @param   key           The key of the entry.
+     * @param   pathSequence  Path sequence of the sharded directory.
+     *
+     * @return  {@code true}, if the entry of the key exists. No directory is created.
+     *
+     * @throws  IllegalArgumentException  if the key is invalid.
+     */
+    public boolean containsKey(String key, String... pathSequence) {
+
+        checkKey(key);
+
+        Path path = joinPathSequence(getRoot(), pathSequence).toPath();
+
+        for (String shard : getShardSequence(key)) {
+            path = path.resolve(shard);
+        }
+
+        return Files.exists(path.resolve(key));
+    }
+
+    /**
+     * @param   key           The key of the entry.
+     * @param   pathSequence  Path sequence of the sharded directory.
+     *
+     * @return  the entry of the key, which may not exist. The shard directories of the entry are
+     *          created.
+     *
+     * @throws  IOException               if the shard directories can't be created.
+     * @throws  IllegalArgumentException  if the key is invalid.
+     */
+    public Path getKeyPath(String key, String... pathSequence) throws IOException {
+
+        checkKey(key);
+
+        String[] shardSequence = getShardSequence(key);
+        int length = (pathSequence == null) ? 0 : pathSequence.length;
+        String[] sequence = new String[length + shardSequence.length];
+
+        if (length != 0) {
+            System.arraycopy(pathSequence, 0, sequence, 0, length);
+        }
+
+        System.arraycopy(shardSequence, 0, sequence, length, shardSequence.length);
+
+        return getPath(sequence).resolve(key);
+    }
+
+    /**
+     * Lists the keys of a sharded directory by walking the shard directories.
+     *
+     * @param   pathSequence  Path sequence of the sharded directory.
+     *
+     * @return  the keys of the existing entries in no particular order.
+     *
+     * @throws  IOException  if the directory can't be listed.
+     */
+    public List<String> getKeys(String... pathSequence) throws IOException {
+
+        List<String> keys = new ArrayList<String>();
+        listKeys(getPath(pathSequence), 0, keys);
+
+        return keys;
+    }
+
+    /**
+     * @return  the count of shard levels.
+     */
+    public int getLevels() {
+        return levels;
+    }
+
+    /**
+     * @return  the count of hex digits in the names of the shard directories.
+     */
+    public int getShardWidth() {
+        return shardWidth;
+    }
+
+    /**
+     * @return  the names of the shard directories of a key.
+     */
+    private String[] getShardSequence(String key) {
+
+        String hex = Integer.toHexString(hash(key));
+
+        // Leading zeros are restored
+        if (hex.length() < 8) {
+
+            char[] zeros = new char[8 - hex.length()];
+            Arrays.fill(zeros, '0');
+            hex = new String(zeros) + hex;
+        }
+
+        String[] result = new String[levels];
+
+        for (int i = 0; i < levels; i++) {
+            result[i] = hex.substring(i * shardWidth, (i + 1) * shardWidth);
+        }
+
+        return result;
+    }
+
+    /**
+     * Initialize workspace after performing dependency injection.
+     *
+     * @throws  IllegalArgumentException  if the workspace is already initialized, the given root
+     *                                    is invalid, or the shard levels don't fit the hash.
+     */
+    @Override public void init() {
+
+        Assert.isTrue((levels * shardWidth) <= 8, "shard levels exceed the hash: levels=" + levels +
+            ", shardWidth=" + shardWidth);
+
+        super.init();
+    }
+
+    /**
+     * @return  {@code true}, if the path looks like a shard directory.
+     */
+    private boolean isShard(Path path) {
+
+        String name = path.getFileName().toString();
+
+        if (name.length() != shardWidth) {
+            return false;
+        }
+
+        for (int i = 0; i < name.length(); i++) {
+
+            if (Character.digit(name.charAt(i), 16) == -1) {
+                return false;
+            }
+        }
+
+        return Files.isDirectory(path);
+    }
+
+    /**
+     * Collects the keys of a shard directory recursively.
+     */
+    private void listKeys(Path directory, int level, List<String> keys) throws IOException {
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+
+            for (Path path : stream) {
+
+                if (level == levels) {
+                    keys.add(path.getFileName().toString());
+                } else if (isShard(path)) {
+                    listKeys(path, level + 1, keys);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the entries of a flat directory into their shard directories. Entries, whose key exists
+     * already in the sharded layout, are left in place.
+     *
+     * @param   pathSequence  Path sequence of the directory to migrate.
+     *
+     * @return  the count of the entries moved.
+     *
+     * @throws  IOException  if an entry can't be moved.
+     */
+    public int migrate(String... pathSequence) throws IOException {
+
+        Path directory = getPath(pathSequence);
+        List<Path> entries = new ArrayList<Path>();
+
+        // The entries are collected first, since new shard directories are created while moving
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+
+            for (Path path : stream) {
+
+                if (!isShard(path)) {
+                    entries.add(path);
+                }
+            }
+        }
+
+        int result = 0;
+
+        for (Path entry : entries) {
+
+            String key = entry.getFileName().toString();
+            Path target = getKeyPath(key, pathSequence);
+
+            if (Files.exists(target)) {
+
+                log.warn("Entry exists already, it won't be migrated: {}", entry);
+
+                continue;
+            }
+
+            Files.move(entry, target, StandardCopyOption.ATOMIC_MOVE);
+            result++;
+        }
+
+        log.debug("Directory migrated: directory={}, entries={}", directory, result);
+
+        return result;
+    }
+
+    /**
+     * @param  levels  the count of shard levels to set. The default is {@code 2}.
+     */
+    public void setLevels(int levels) {
+        Assert.isTrue(0 < levels, "invalid levels: " + levels);
+
+        this.levels = levels;
+    }
+
+    /**
+     * @param  shardWidth  the count of hex digits in the names of the shard directories to set.
+     *                     The default is {@code 2}, which gives 256 directories per level.
+     */
+    public void setShardWidth(int shardWidth) {
+        Assert.isTrue(0 < shardWidth, "invalid shard width: " + shardWidth);
+
+        this.shardWidth = shardWidth;
+    }
+}
@@ -0,0 +1,149 @@
+package com.idragon.adastra.context;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+/**
+ * Write of a workspace file through a staging file in the same directory. The content is written
+ * to the channel of the staging file, which is published by an atomic rename on commit, so
+ * readers see either the old file or the complete new one, even after a crash.
+ *
+ * <p>Closing an uncommitted write aborts it, so the staging file is best used in a
+ * try-with-resources statement, and committed as the last statement of the block.</p>
+ *
+ * @author  hp
+ * @see     com.idragon.adastra.context.Workspace#stage
+ */
+public final class StagedWrite implements Closeable {
+
+    private final Committer committer;
+    private final Path file;
+    private final Path stagingFile;
+    private final FileChannel channel;
+
+    /** Committed or aborted? */
+    private volatile boolean finished;
+
+    /**
+     * Write of a workspace file through a staging file in the same directory.
+     *
+     * @param  committer    The committer publishing the staging file.
+     * @param  file         The file to write.
+     * @param  stagingFile  The staging file.
+     * @param  channel      The channel of the staging file.
+     */
+    public StagedWrite(Committer committer, Path file, Path stagingFile, FileChannel channel) {
+
+        this.committer = committer;
+        this.file = file;
+        this.stagingFile = stagingFile;
+        this.channel = channel;
+    }
+
+    /**
+     * Aborts the write, unless it's committed already. The staging file is deleted.
+     *
+     * @throws  IOException  if the staging file can't be deleted.
+     */
+    @Override public void close() throws IOException {
+
+        if (!finished) {
+
+            finished = true;
+            discard();
+        }
+    }
+
+    /**
+     * Publishes the staging file atomically with the committer, and waits, until the file is
+     * durable. Commits of the workspaces are grouped by their group committer.
+     *
+     * @throws  IOException            if the file can't be published. The staging file is deleted
+     *                                 in this case.
+     * @throws  IllegalStateException  if the write is committed or aborted already.
+     *
+     * @see     com.idragon.adastra.context.GroupCommitter
+     */
+    public void commit() throws IOException {
+
+        if (finished) {
+            throw new IllegalStateException("write is finished: " + file);
+        }
+
+        finished = true;
+        committer.commit(this);
+    }
+
+    /**
+     * Truncates, closes and deletes the staging file. The file is truncated first, if the channel
+     * is still open, so the size of the content is accounted by accounting channels.
+     */
+    void discard() throws IOException {
+
+        try {
+
+            if (channel.isOpen()) {
+                channel.truncate(0L);
+            }
+
+        } finally {
+
+            channel.close();
+            Files.deleteIfExists(stagingFile);
+        }
+    }
+
+    /**
+     * @return  the channel of the staging file.
+     */
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * @return  the file to write.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return  the staging file.
+     */
+    public Path getStagingFile() {
+        return stagingFile;
+    }
+
+    /**
+     * @return  {@code true}, if the write is committed or aborted.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override public String toString() {
+        return "StagedWrite[file=" + file + ", stagingFile=" + stagingFile + "]";
+    }
+
+    /**
+     * Committer of staged writes, which publishes the staging file, or deletes it on failure.
+     */
+    public interface Committer {
+
+        /**
+         * Publishes the staging file of a staged write atomically, and waits, until the file is
+         * durable.
+         *
+         * @param   write  The staged write to commit.
+         *
+         * @throws  IOException  if the file can't be published. The staging file is deleted in
+         *                       this case.
+         */
+        void commit(StagedWrite write) throws IOException;
+    }
+}
@@ -3,11 +3,23 @@ package com.idragon.adastra.context;
 import java.io.File;
 import java.io.IOException;
 
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+
 
 /**
  * Workspace interface. Its purpose is to store all application data in a central place on the file
  * system.
  *
+ * <p>Besides directories, the workspace provides channel based access to its files, including
+ * memory mapping and zero-copy transfers. These methods accept only paths within the workspace,
+ * typically resolved against {@link #getPath}.</p>
+ *
+ * <p>Files, which must not be seen partially written, are written through staging files, and
+ * published atomically on commit.</p>
+ *
  * @author  hp
  */
 public interface Workspace {
@@ -26,4 +38,83 @@ public interface Workspace {
      *                       created.
      */
     File getDirectory(String... pathSequence) throws IOException;
+
+    /**
+     * Find a directory within the workspace like {@link #getDirectory}, and return it as a path.
+     *
+     * @param   pathSequence  Path sequence.
+     *
+     * @return  the requested workspace directory. Returns the root directory, if the path sequence
+     *          is {@code null} or empty. Never returns a {@code null} value.
+     *
+     * @throws  IOException  when the result denotes a file, or a missing directory couldn't be
+     *                       created.
+     */
+    Path getPath(String... pathSequence) throws IOException;
+
+    /**
+     * Map a whole workspace file into memory. Read-write mappings create the file, if it doesn't
+     * exist. The mapping stays valid after the method returns, until the buffer is garbage
+     * collected.
+     *
+     * @param   file  The workspace file to map.
+     * @param   mode  The mapping mode.
+     *
+     * @return  the mapped buffer.
+     *
+     * @throws  IOException  if the file can't be mapped.
+     */
+    MappedByteBuffer map(Path file, FileChannel.MapMode mode) throws IOException;
+
+    /**
+     * Map a region of a workspace file into memory starting at its beginning. Read-write mappings
+     * create the file, if it doesn't exist, and grow it to the size of the region.
+     *
+     * @param   file  The workspace file to map.
+     * @param   mode  The mapping mode.
+     * @param   size  The size of the region to map.
+     *
+     * @return  the mapped buffer.
+     *
+     * @throws  IOException  if the file can't be mapped.
+     */
+    MappedByteBuffer map(Path file, FileChannel.MapMode mode, long size) throws IOException;
+
+    /**
+     * Open a channel to a workspace file.
+     *
+     * @param   file     The workspace file to open.
+     * @param   options  Options specifying how the file is opened, like in {@code
+     *                   FileChannel.open}. The file is opened for reading, if there's none.
+     *
+     * @return  the open channel, which must be closed by the caller.
+     *
+     * @throws  IOException  if the file can't be opened.
+     */
+    FileChannel openChannel(Path file, OpenOption... options) throws IOException;
+
+    /**
+     * Start an atomic write of a workspace file. The content is written to a staging file in the
+     * same directory, which replaces the file on commit.
+     *
+     * @param   file  The workspace file to write. Its directory must exist.
+     *
+     * @return  the staged write, which must be committed or closed by the caller.
+     *
+     * @throws  IOException  if the staging file can't be created.
+     */
+    StagedWrite stage(Path file) throws IOException;
+
+    /**
+     * Copy a workspace file to another without copying the content through the Java heap, where
+     * the platform supports it. The target file is created or truncated.
+     *
+     * @param   source  The workspace file to copy.
+     * @param   target  The workspace file to copy to.
+     *
+     * @return  the count of bytes copied.
+     *
+     * @throws  IOException  if the file can't be copied.
+     */
+    long transfer(Path source, Path target) throws IOException;
 }
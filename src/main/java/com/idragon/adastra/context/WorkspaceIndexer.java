@@ -0,0 +1,696 @@
+package com.idragon.adastra.context;
+
+import com.idragon.adastra.lang.ConcurrencyUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.util.Assert;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.channels.Channels;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * Indexer of the files of a workspace, which keeps their metadata in a persistent index, so files
+ * can be found by path prefix, size or modification time without touching the file system. Paths
+ * are relative to the workspace root, and separated by slashes.
+ *
+ * <p>Scans walk the directory tree in parallel, one fork-join task per directory. Scans are
+ * incremental: a directory, whose modification time didn't change since the previous scan, is not
+ * listed again, only its known files are checked for changes in place, and its subdirectories are
+ * scanned. A directory listed within the timestamp granularity of its modification time is listed
+ * again, since entries added in the same tick don't change the modification time. Symbolic links
+ * are not followed.</p>
+ *
+ * <p>The index is persisted into its own directory after each scan, so persisting it doesn't change
+ * the modification time of the workspace root, and it's loaded on initialization.</p>
+ *
+ * @author  hp
+ * @see     com.idragon.adastra.context.IndexedFile
+ */
+public class WorkspaceIndexer {
+
+    /** Name of the index directory in the workspace root, which is not indexed */
+    public static final String INDEX_DIRECTORY_NAME = ".workspace-index";
+
+    /** Default timestamp granularity of the file system in milliseconds */
+    public static final long DEFAULT_TIMESTAMP_GRANULARITY = 2000L;
+
+    /** Name of the index file in the index directory */
+    private static final String INDEX_FILE_NAME = "index";
+
+    /** Version of the index file format */
+    private static final int INDEX_VERSION = 2;
+
+    // SLF4J log
+    private final Logger log = LoggerFactory.getLogger(WorkspaceIndexer.class);
+
+    /** The workspace to index */
+    private Workspace workspace;
+
+    /** Absolute normalized root of the workspace, or {@code null}, if not initialized */
+    private Path root;
+
+    /** Fork-join pool of the scans, or {@code null} to use the shared pool */
+    private ForkJoinPool pool;
+
+    /** Timestamp granularity of the file system in milliseconds */
+    private long timestampGranularity = DEFAULT_TIMESTAMP_GRANULARITY;
+
+    /** The current index, or {@code null}, if the indexer is not initialized */
+    private volatile Index index;
+
+    /**
+     * Indexer of the files of a workspace.
+     */
+    public WorkspaceIndexer() {
+    }
+
+    /**
+     * @return  the path of a child within a directory path.
+     */
+    private static String childPath(String path, String name) {
+        return path.isEmpty() ? name : (path + "/" + name);
+    }
+
+    /**
+     * @return  the names read from the index file.
+     */
+    private static String[] readNames(DataInputStream in) throws IOException {
+
+        String[] result = new String[in.readInt()];
+
+        for (int i = 0; i < result.length; i++) {
+            result[i] = in.readUTF();
+        }
+
+        return result;
+    }
+
+    /**
+     * Writes names into the index file.
+     */
+    private static void writeNames(DataOutputStream out, String[] names) throws IOException {
+
+        out.writeInt(names.length);
+
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+
+    /**
+     * Checks, if the indexer is initialized.
+     *
+     * @throws  IllegalArgumentException  if the indexer is not initialized.
+     */
+    private void checkInitialized() {
+        Assert.isTrue(index != null, "indexer is not initialized");
+    }
+
+    /**
+     * Finds the files modified in a time range.
+     *
+     * @param   from  The start of the range in milliseconds, inclusive.
+     * @param   to    The end of the range in milliseconds, exclusive.
+     *
+     * @return  the files sorted by path.
+     */
+    public List<IndexedFile> findByLastModified(long from, long to) {
+
+        checkInitialized();
+
+        List<IndexedFile> result = new ArrayList<IndexedFile>();
+
+        for (IndexedFile file : index.files.values()) {
+
+            if ((from <= file.getLastModified()) && (file.getLastModified() < to)) {
+                result.add(file);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Finds the files, whose path starts with a prefix. Use a prefix ending with a slash to find
+     * the files of a directory tree.
+     *
+     * @param   prefix  The path prefix.
+     *
+     * @return  the files sorted by path.
+     */
+    public List<IndexedFile> findByPrefix(String prefix) {
+
+        checkInitialized();
+        Assert.notNull(prefix, "prefix is null");
+
+        return new ArrayList<IndexedFile>(index.files.subMap(prefix, true,
+                    prefix + Character.MAX_VALUE, false).values());
+    }
+
+    /**
+     * Finds the files in a size range.
+     *
+     * @param   minSize  The minimal size in bytes, inclusive.
+     * @param   maxSize  The maximal size in bytes, inclusive.
+     *
+     * @return  the files sorted by path.
+     */
+    public List<IndexedFile> findBySize(long minSize, long maxSize) {
+
+        checkInitialized();
+
+        List<IndexedFile> result = new ArrayList<IndexedFile>();
+
+        for (IndexedFile file : index.files.values()) {
+
+            if ((minSize <= file.getSize()) && (file.getSize() <= maxSize)) {
+                result.add(file);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @param   path  The path of a file relative to the workspace root, separated by slashes.
+     *
+     * @return  the indexed file, or {@code null}, if the file is not indexed.
+     */
+    public IndexedFile getFile(String path) {
+
+        checkInitialized();
+
+        return index.files.get(path);
+    }
+
+    /**
+     * @return  the count of the indexed files.
+     */
+    public int getFileCount() {
+
+        checkInitialized();
+
+        return index.files.size();
+    }
+
+    /**
+     * @return  the index file.
+     */
+    private Path getIndexFile() {
+        return root.resolve(INDEX_DIRECTORY_NAME).resolve(INDEX_FILE_NAME);
+    }
+
+    /**
+     * @return  the fork-join pool of the scans, or {@code null}, if the shared pool is used.
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @return  the timestamp granularity of the file system in milliseconds.
+     */
+    public long getTimestampGranularity() {
+        return timestampGranularity;
+    }
+
+    /**
+     * @return  the total size of the indexed files in bytes.
+     */
+    public long getTotalSize() {
+
+        checkInitialized();
+
+        return index.totalSize;
+    }
+
+    /**
+     * @return  the workspace to index.
+     */
+    public Workspace getWorkspace() {
+        return workspace;
+    }
+
+    /**
+     * Initialize indexer after performing dependency injection, and load the persisted index. A
+     * corrupt index is discarded, so the next scan lists every directory.
+     *
+     * @throws  IllegalArgumentException  if the indexer is already initialized, or no workspace is
+     *                                    set.
+     * @throws  IllegalStateException     if the root of the workspace can't be resolved, or the
+     *                                    index directory can't be created.
+     */
+    public void init() {
+
+        Assert.isTrue(index == null, "indexer already initialized");
+        Assert.notNull(workspace, "workspace is null");
+
+        try {
+            root = workspace.getPath().toAbsolutePath().normalize();
+        } catch (IOException e) {
+            throw new IllegalStateException("workspace root can't be resolved: " + workspace, e);
+        }
+
+        Path indexFile = getIndexFile();
+        Index loadedIndex = null;
+
+        try {
+            Files.createDirectories(indexFile.getParent());
+        } catch (IOException e) {
+            throw new IllegalStateException("index directory can't be created: " +
+                indexFile.getParent(), e);
+        }
+
+        if (Files.exists(indexFile)) {
+
+            try {
+                loadedIndex = read(indexFile);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Workspace index can't be read, it's discarded: " + indexFile, e);
+            }
+        }
+
+        index = (loadedIndex == null)
+            ? new Index(new TreeMap<String, IndexedFile>(),
+                new HashMap<String, DirectoryEntry>()) : loadedIndex;
+
+        log.debug("Workspace index loaded: files={}", index.files.size());
+    }
+
+    /**
+     * @return  the index read from the index file.
+     */
+    private Index read(Path indexFile) throws IOException {
+
+        try (InputStream stream = Files.newInputStream(indexFile)) {
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                        new GZIPInputStream(stream)));
+
+            if (in.readInt() != INDEX_VERSION) {
+                throw new IOException("unsupported index version: " + indexFile);
+            }
+
+            Map<String, DirectoryEntry> directories = new HashMap<String, DirectoryEntry>();
+
+            for (int i = in.readInt(); 0 < i; i--) {
+
+                String path = in.readUTF();
+                long lastModified = in.readLong();
+                long listed = in.readLong();
+
+                directories.put(path, new DirectoryEntry(lastModified, listed, readNames(in),
+                        readNames(in)));
+            }
+
+            TreeMap<String, IndexedFile> files = new TreeMap<String, IndexedFile>();
+
+            for (int i = in.readInt(); 0 < i; i--) {
+
+                String path = in.readUTF();
+                files.put(path, new IndexedFile(path, in.readLong(), in.readLong()));
+            }
+
+            return new Index(files, directories);
+        }
+    }
+
+    /**
+     * Scans the workspace incrementally, and persists the index.
+     *
+     * @return  the count of the directories listed.
+     *
+     * @throws  IOException  if the index can't be persisted.
+     */
+    public int scan() throws IOException {
+        return scan(false);
+    }
+
+    /**
+     * Scans the workspace, and persists the index.
+     *
+     * @param   full  {@code true} to list every directory, {@code false} to list the changed
+     *                directories only.
+     *
+     * @return  the count of the directories listed.
+     *
+     * @throws  IOException  if the index can't be persisted.
+     */
+    public synchronized int scan(boolean full) throws IOException {
+
+        checkInitialized();
+
+        long start = System.currentTimeMillis();
+        Scan scan = new Scan(index, full);
+
+        ForkJoinPool executor = (pool == null) ? ConcurrencyUtils.getSharedPool() : pool;
+        executor.invoke(new ScanTask(scan, "", root));
+
+        index = new Index(new TreeMap<String, IndexedFile>(scan.files), scan.directories);
+        write(index);
+
+        log.debug("Workspace scanned: files={}, listed={}, time={}ms",
+            new Object[] {
+                index.files.size(), scan.listedCount.get(), System.currentTimeMillis() - start
+            });
+
+        return scan.listedCount.get();
+    }
+
+    /**
+     * @param  pool  the fork-join pool of the scans to set, or {@code null} to use the shared pool.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @param  timestampGranularity  the timestamp granularity of the file system in milliseconds
+     *                               to set. The default is {@code 2000}, the granularity of FAT
+     *                               file systems.
+     */
+    public void setTimestampGranularity(long timestampGranularity) {
+        Assert.isTrue(0L <= timestampGranularity, "invalid granularity: " + timestampGranularity);
+
+        this.timestampGranularity = timestampGranularity;
+    }
+
+    /**
+     * @param  workspace  the workspace to index.
+     */
+    public void setWorkspace(Workspace workspace) {
+        this.workspace = workspace;
+    }
+
+    /**
+     * Writes the index into the index file atomically.
+     */
+    private void write(Index currentIndex) throws IOException {
+
+        try (StagedWrite write = workspace.stage(getIndexFile())) {
+
+            GZIPOutputStream compressed = new GZIPOutputStream(Channels.newOutputStream(
+                        write.getChannel()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(compressed));
+
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(currentIndex.directories.size());
+
+            for (Map.Entry<String, DirectoryEntry> entry : currentIndex.directories.entrySet()) {
+
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().lastModified);
+                out.writeLong(entry.getValue().listed);
+                writeNames(out, entry.getValue().files);
+                writeNames(out, entry.getValue().directories);
+            }
+
+            out.writeInt(currentIndex.files.size());
+
+            for (IndexedFile file : currentIndex.files.values()) {
+
+                out.writeUTF(file.getPath());
+                out.writeLong(file.getSize());
+                out.writeLong(file.getLastModified());
+            }
+
+            // Finishes the compressed stream without closing the channel
+            out.flush();
+            compressed.finish();
+            write.commit();
+        }
+    }
+
+    /**
+     * Indexed directory.
+     */
+    private static final class DirectoryEntry {
+
+        private final long lastModified;
+        private final long listed;
+        private final String[] files;
+        private final String[] directories;
+
+        /**
+         * Indexed directory.
+         *
+         * @param  lastModified  Last modification time in milliseconds.
+         * @param  listed        Time of the listing in milliseconds, taken before the last
+         *                       modification time is read.
+         * @param  files         Names of the files.
+         * @param  directories   Names of the subdirectories.
+         */
+        public DirectoryEntry(long lastModified, long listed, String[] files,
+            String[] directories) {
+
+            this.lastModified = lastModified;
+            this.listed = listed;
+            this.files = files;
+            this.directories = directories;
+        }
+    }
+
+    /**
+     * Index of the workspace, which is never modified after construction.
+     */
+    private static final class Index {
+
+        private final NavigableMap<String, IndexedFile> files;
+        private final Map<String, DirectoryEntry> directories;
+        private final long totalSize;
+
+        /**
+         * Index of the workspace.
+         *
+         * @param  files        Indexed files by path.
+         * @param  directories  Indexed directories by path.
+         */
+        public Index(NavigableMap<String, IndexedFile> files,
+            Map<String, DirectoryEntry> directories) {
+
+            this.files = files;
+            this.directories = directories;
+
+            long size = 0L;
+
+            for (IndexedFile file : files.values()) {
+                size += file.getSize();
+            }
+
+            this.totalSize = size;
+        }
+    }
+
+    /**
+     * State of a scan.
+     */
+    private static final class Scan {
+
+        private final Index previousIndex;
+        private final boolean full;
+        private final ConcurrentMap<String, IndexedFile> files =
+            new ConcurrentHashMap<String, IndexedFile>();
+        private final ConcurrentMap<String, DirectoryEntry> directories =
+            new ConcurrentHashMap<String, DirectoryEntry>();
+        private final AtomicInteger listedCount = new AtomicInteger();
+
+        /**
+         * State of a scan.
+         *
+         * @param  previousIndex  The index of the previous scan.
+         * @param  full           List every directory?
+         */
+        public Scan(Index previousIndex, boolean full) {
+
+            this.previousIndex = previousIndex;
+            this.full = full;
+        }
+    }
+
+    /**
+     * Scan of a directory, which forks the scans of its subdirectories.
+     */
+    private final class ScanTask extends RecursiveAction {
+
+        // Serial number
+        private static final long serialVersionUID = -1372467420393625347L;
+
+        private final Scan scan;
+        private final String path;
+        private final Path directory;
+
+        /**
+         * Scan of a directory.
+         *
+         * @param  scan       The state of the scan.
+         * @param  path       The path of the directory relative to the workspace root.
+         * @param  directory  The directory.
+         */
+        public ScanTask(Scan scan, String path, Path directory) {
+
+            this.scan = scan;
+            this.path = path;
+            this.directory = directory;
+        }
+
+        @Override protected void compute() {
+
+            DirectoryEntry entry;
+
+            try {
+
+                long listed = System.currentTimeMillis();
+                long lastModified = Files.getLastModifiedTime(directory).toMillis();
+                DirectoryEntry previousEntry = scan.full
+                    ? null : scan.previousIndex.directories.get(path);
+
+                // Entries added in the tick of the previous listing may be missing from it
+                if ((previousEntry != null) && (previousEntry.lastModified == lastModified) &&
+                        ((previousEntry.lastModified + timestampGranularity) <=
+                            previousEntry.listed)) {
+
+                    entry = previousEntry;
+                    refresh(entry);
+
+                } else {
+
+                    entry = list(lastModified, listed);
+                    scan.listedCount.incrementAndGet();
+                }
+
+            } catch (NoSuchFileException e) {
+
+                // Deleted while scanning
+                return;
+
+            } catch (IOException e) {
+
+                log.warn("Workspace directory can't be scanned: " + directory, e);
+
+                return;
+            }
+
+            scan.directories.put(path, entry);
+
+            List<ScanTask> tasks = new ArrayList<ScanTask>(entry.directories.length);
+
+            for (String name : entry.directories) {
+                tasks.add(new ScanTask(scan, childPath(path, name), directory.resolve(name)));
+            }
+
+            invokeAll(tasks);
+        }
+
+        /**
+         * Lists the directory, and indexes its files.
+         */
+        private DirectoryEntry list(long lastModified, long listed) throws IOException {
+
+            final List<String> files = new ArrayList<String>();
+            final List<String> directories = new ArrayList<String>();
+
+            // Entries at the maximal depth, directories included, are passed to visitFile
+            Files.walkFileTree(directory, EnumSet.noneOf(FileVisitOption.class), 1,
+                new SimpleFileVisitor<Path>() {
+
+                    @Override public FileVisitResult visitFile(Path file,
+                        BasicFileAttributes attributes) {
+
+                        String name = file.getFileName().toString();
+
+                        if (path.isEmpty() && name.equals(INDEX_DIRECTORY_NAME)) {
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        if (attributes.isDirectory()) {
+                            directories.add(name);
+                        } else {
+
+                            String filePath = childPath(path, name);
+
+                            files.add(name);
+                            scan.files.put(filePath, new IndexedFile(filePath, attributes.size(),
+                                    attributes.lastModifiedTime().toMillis()));
+                        }
+
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override public FileVisitResult visitFileFailed(Path file, IOException e) {
+
+                        // Files may be deleted while listing
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+
+            return new DirectoryEntry(lastModified, listed,
+                    files.toArray(new String[files.size()]),
+                    directories.toArray(new String[directories.size()]));
+        }
+
+        /**
+         * Indexes the known files of an unchanged directory without listing it. Changing a file in
+         * place doesn't change the modification time of its directory, so each file is checked.
+         */
+        private void refresh(DirectoryEntry entry) {
+
+            for (String name : entry.files) {
+
+                String filePath = childPath(path, name);
+                IndexedFile previousFile = scan.previousIndex.files.get(filePath);
+                BasicFileAttributes attributes;
+
+                try {
+                    attributes = Files.readAttributes(directory.resolve(name),
+                            BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+
+                    // Deleted while scanning
+                    continue;
+                }
+
+                long size = attributes.size();
+                long lastModified = attributes.lastModifiedTime().toMillis();
+
+                if ((previousFile != null) && (previousFile.getSize() == size) &&
+                        (previousFile.getLastModified() == lastModified)) {
+                    scan.files.put(filePath, previousFile);
+                } else {
+                    scan.files.put(filePath, new IndexedFile(filePath, size, lastModified));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,544 @@
+package com.idragon.adastra.domain;
+
+import org.springframework.util.Assert;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Identity map of identified entities, which keeps a single instance per concrete class and
+ * identifier, so loading the same entity again can reuse the instance already in memory.
+ *
+ * <p>Entities are kept in an open addressing table per concrete class, keyed by the primitive
+ * identifier, so lookups neither box the identifier nor allocate. Values are held strongly by
+ * default, or weakly, so entities not referenced elsewhere can be collected. Transient entities,
+ * without an identifier, can't be mapped.</p>
+ *
+ * <p>The map is thread safe, every table is locked separately. Bulk operations lock a table once
+ * per run of entities of the same class.</p>
+ *
+ * @author  hp
+ * @see     com.idragon.adastra.domain.IdentifiedEntity
+ */
+public class IdentityMap {
+
+    /** Initial capacity of the tables, which must be a power of two */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Tables by concrete class */
+    private final ConcurrentMap<Class<?>, Table> tables = new ConcurrentHashMap<Class<?>, Table>();
+
+    /** Hold the entities weakly? */
+    private final boolean weakValues;
+
+    /**
+     * Identity map of identified entities, which holds the entities strongly.
+     */
+    public IdentityMap() {
+        this(false);
+    }
+
+    /**
+     * Identity map of identified entities.
+     *
+     * @param  weakValues  Hold the entities weakly?
+     */
+    public IdentityMap(boolean weakValues) {
+        this.weakValues = weakValues;
+    }
+
+    /**
+     * @return  the identifier of an entity.
+     *
+     * @throws  IllegalArgumentException  if the entity is {@code null}, or transient.
+     */
+    private static long getId(IdentifiedEntity entity) {
+
+        Assert.notNull(entity, "entity is null");
+
+        Long id = entity.getId();
+
+        Assert.notNull(id, "entity is transient: " + entity);
+
+        return id;
+    }
+
+    /**
+     * Removes every entity.
+     */
+    public void clear() {
+        tables.clear();
+    }
+
+    /**
+     * @param   type  The concrete class of the entity.
+     * @param   id    The identifier of the entity.
+     *
+     * @return  the mapped entity, or {@code null}, if it's not mapped.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends IdentifiedEntity> T get(Class<T> type, long id) {
+
+        Table table = tables.get(type);
+
+        if (table == null) {
+            return null;
+        }
+
+        synchronized (table) {
+            return (T) table.get(id);
+        }
+    }
+
+    /**
+     * @param   type  The concrete class of the entities.
+     * @param   ids   The identifiers of the entities.
+     *
+     * @return  the mapped entities in the order of the identifiers, with {@code null} elements for
+     *          the entities not mapped.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends IdentifiedEntity> List<T> getAll(Class<T> type, long... ids) {
+
+        List<T> result = new ArrayList<T>(ids.length);
+        Table table = tables.get(type);
+
+        if (table == null) {
+
+            for (int i = 0; i < ids.length; i++) {
+                result.add(null);
+            }
+
+            return result;
+        }
+
+        synchronized (table) {
+
+            for (long id : ids) {
+                result.add((T) table.get(id));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @param   type  The concrete class.
+     *
+     * @return  the table of the class, which is created on demand.
+     */
+    private Table getTable(Class<?> type) {
+
+        Table table = tables.get(type);
+
+        if (table == null) {
+
+            Table newTable = new Table(weakValues);
+
+            table = tables.putIfAbsent(type, newTable);
+
+            if (table == null) {
+                table = newTable;
+            }
+        }
+
+        return table;
+    }
+
+    /**
+     * Returns the mapped instance of an entity, or maps the entity, if no instance is mapped yet.
+     * Call this method with every loaded entity to reuse the instances already in memory.
+     *
+     * @param   entity  The entity.
+     *
+     * @return  the mapped instance.
+     *
+     * @throws  IllegalArgumentException  if the entity is {@code null}, or transient.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends IdentifiedEntity> T intern(T entity) {
+
+        long id = getId(entity);
+        Table table = getTable(entity.getClass());
+
+        synchronized (table) {
+
+            IdentifiedEntity mapped = table.get(id);
+
+            if (mapped != null) {
+                return (T) mapped;
+            }
+
+            table.put(id, entity);
+        }
+
+        return entity;
+    }
+
+    /**
+     * @return  hold the entities weakly?
+     */
+    public boolean isWeakValues() {
+        return weakValues;
+    }
+
+    /**
+     * Maps an entity, replacing the instance already mapped.
+     *
+     * @param   entity  The entity.
+     *
+     * @return  the instance previously mapped, or {@code null}.
+     *
+     * @throws  IllegalArgumentException  if the entity is {@code null}, or transient.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends IdentifiedEntity> T put(T entity) {
+
+        long id = getId(entity);
+        Table table = getTable(entity.getClass());
+
+        synchronized (table) {
+            return (T) table.put(id, entity);
+        }
+    }
+
+    /**
+     * Maps entities, replacing the instances already mapped.
+     *
+     * @param   entities  The entities.
+     *
+     * @throws  IllegalArgumentException  if an entity is {@code null}, or transient.
+     */
+    public void putAll(Collection<? extends IdentifiedEntity> entities) {
+
+        Assert.notNull(entities, "entities is null");
+
+        List<IdentifiedEntity> run = new ArrayList<IdentifiedEntity>();
+        Class<?> runType = null;
+
+        for (IdentifiedEntity entity : entities) {
+
+            getId(entity);
+
+            if ((runType != null) && (entity.getClass() != runType)) {
+
+                putRun(runType, run);
+                run.clear();
+            }
+
+            runType = entity.getClass();
+            run.add(entity);
+        }
+
+        if (runType != null) {
+            putRun(runType, run);
+        }
+    }
+
+    /**
+     * Maps a run of entities of the same class, locking the table once.
+     */
+    private void putRun(Class<?> type, List<IdentifiedEntity> run) {
+
+        Table table = getTable(type);
+
+        synchronized (table) {
+
+            for (IdentifiedEntity entity : run) {
+                table.put(entity.getId(), entity);
+            }
+        }
+    }
+
+    /**
+     * Removes an entity.
+     *
+     * @param   type  The concrete class of the entity.
+     * @param   id    The identifier of the entity.
+     *
+     * @return  the instance removed, or {@code null}, if it was not mapped.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends IdentifiedEntity> T remove(Class<T> type, long id) {
+
+        Table table = tables.get(type);
+
+        if (table == null) {
+            return null;
+        }
+
+        synchronized (table) {
+            return (T) table.remove(id);
+        }
+    }
+
+    /**
+     * @return  the count of the mapped entities. Weakly held entities are counted until their
+     *          collection is noticed.
+     */
+    public int size() {
+
+        int result = 0;
+
+        for (Table table : tables.values()) {
+
+            synchronized (table) {
+                result += table.size();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Weak reference of an entity, which remembers the identifier to remove the entry after
+     * collection.
+     */
+    private static final class EntityReference extends WeakReference<IdentifiedEntity> {
+
+        private final long id;
+
+        /**
+         * Weak reference of an entity.
+         *
+         * @param  id      The identifier of the entity.
+         * @param  entity  The entity.
+         * @param  queue   The queue of the collected references.
+         */
+        public EntityReference(long id, IdentifiedEntity entity,
+            ReferenceQueue<IdentifiedEntity> queue) {
+
+            super(entity, queue);
+            this.id = id;
+        }
+    }
+
+    /**
+     * Open addressing table of the entities of a class with linear probing. Empty slots are
+     * marked by {@code null} values, so any identifier can be a key. Removal shifts the following
+     * entries back, so no deletion markers are needed. Not thread safe.
+     */
+    private static final class Table {
+
+        private final ReferenceQueue<IdentifiedEntity> queue;
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private Object[] values = new Object[INITIAL_CAPACITY];
+        private int size;
+
+        /**
+         * Open addressing table of the entities of a class.
+         *
+         * @param  weakValues  Hold the entities weakly?
+         */
+        public Table(boolean weakValues) {
+            this.queue = weakValues ? new ReferenceQueue<IdentifiedEntity>() : null;
+        }
+
+        /**
+         * Deletes an entry, and shifts the entries of the same probe sequence back.
+         */
+        private void delete(int slot) {
+
+            int mask = keys.length - 1;
+            int gap = slot;
+            int i = slot;
+
+            while (true) {
+
+                i = (i + 1) & mask;
+
+                if (values[i] == null) {
+                    break;
+                }
+
+                int home = index(keys[i], mask);
+
+                // The entry can fill the gap, if the gap is on its probe sequence
+                if (((i - home) & mask) >= ((i - gap) & mask)) {
+
+                    keys[gap] = keys[i];
+                    values[gap] = values[i];
+                    gap = i;
+                }
+            }
+
+            values[gap] = null;
+            size--;
+        }
+
+        /**
+         * Removes the entries of the collected entities.
+         */
+        private void expunge() {
+
+            if (queue == null) {
+                return;
+            }
+
+            EntityReference reference;
+
+            while ((reference = (EntityReference) queue.poll()) != null) {
+
+                int slot = find(reference.id);
+
+                if ((slot >= 0) && (values[slot] == reference)) {
+                    delete(slot);
+                }
+            }
+        }
+
+        /**
+         * @return  the slot of the identifier, or {@code -1}, if it's not in the table.
+         */
+        private int find(long id) {
+
+            int mask = keys.length - 1;
+
+            for (int i = index(id, mask); values[i] != null; i = (i + 1) & mask) {
+
+                if (keys[i] == id) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        /**
+         * @return  the entity of the identifier, or {@code null}.
+         */
+        public IdentifiedEntity get(long id) {
+
+            expunge();
+
+            int slot = find(id);
+
+            return (slot < 0) ? null : unwrap(values[slot]);
+        }
+
+        /**
+         * @return  the home slot of the identifier.
+         */
+        private int index(long id, int mask) {
+
+            long hash = id * 0x9E3779B97F4A7C15L;
+
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+
+        /**
+         * Maps an entity.
+         *
+         * @return  the entity previously mapped, or {@code null}.
+         */
+        public IdentifiedEntity put(long id, IdentifiedEntity entity) {
+
+            expunge();
+
+            Object value = (queue == null) ? entity : new EntityReference(id, entity, queue);
+            int slot = find(id);
+
+            if (slot >= 0) {
+
+                IdentifiedEntity previous = unwrap(values[slot]);
+
+                values[slot] = value;
+
+                return previous;
+            }
+
+            // Keeps the load factor at most 3/4
+            if ((size + 1) * 4 > keys.length * 3) {
+                resize();
+            }
+
+            int mask = keys.length - 1;
+            int i = index(id, mask);
+
+            while (values[i] != null) {
+                i = (i + 1) & mask;
+            }
+
+            keys[i] = id;
+            values[i] = value;
+            size++;
+
+            return null;
+        }
+
+        /**
+         * Removes an entity.
+         *
+         * @return  the entity removed, or {@code null}.
+         */
+        public IdentifiedEntity remove(long id) {
+
+            expunge();
+
+            int slot = find(id);
+
+            if (slot < 0) {
+                return null;
+            }
+
+            IdentifiedEntity previous = unwrap(values[slot]);
+
+            delete(slot);
+
+            return previous;
+        }
+
+        /**
+         * Doubles the capacity of the table.
+         */
+        private void resize() {
+
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            int mask = (oldKeys.length * 2) - 1;
+
+            keys = new long[oldKeys.length * 2];
+            values = new Object[oldValues.length * 2];
+
+            for (int j = 0; j < oldKeys.length; j++) {
+
+                if (oldValues[j] != null) {
+
+                    int i = index(oldKeys[j], mask);
+
+                    while (values[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+
+        /**
+         * @return  the count of the entries.
+         */
+        public int size() {
+
+            expunge();
+
+            return size;
+        }
+
+        /**
+         * @return  the entity of a value.
+         */
+        private IdentifiedEntity unwrap(Object value) {
+            return (value instanceof EntityReference) ? ((EntityReference) value).get()
+                                                      : (IdentifiedEntity) value;
+        }
+    }
+}
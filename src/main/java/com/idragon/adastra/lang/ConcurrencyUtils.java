@@ -0,0 +1,31 @@
+package com.idragon.adastra.lang;
+
+import java.util.concurrent.ForkJoinPool;
+
+
+/**
+ * Miscellaneous concurrency utility methods.
+ *
+ * @author  iDragon
+ */
+public abstract class ConcurrencyUtils {
+
+    /** Shared fork-join pool, or {@code null}, if it's not created yet */
+    private static ForkJoinPool sharedPool;
+
+    /**
+     * Returns the fork-join pool shared by the parallel tasks of the library, like scaling,
+     * batch loading or indexing, so they don't compete with separate pools for the processors.
+     * The workers of the pool are daemon threads.
+     *
+     * @return  the shared fork-join pool, which is created on demand.
+     */
+    public static synchronized ForkJoinPool getSharedPool() {
+
+        if (sharedPool == null) {
+            sharedPool = new ForkJoinPool();
+        }
+
+        return sharedPool;
+    }
+}
@@ -0,0 +1,164 @@
+package com.idragon.adastra.lang;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Thread-safe latency histogram with exponential buckets. Bucket {@code i} counts the latencies
+ * between {@code 2^i} (inclusive) and {@code 2^(i+1)} (exclusive) microseconds, bucket {@code 0}
+ * counts every latency below two microseconds. Recording a latency doesn't allocate.
+ *
+ * @author  iDragon
+ */
+public class LatencyHistogram {
+
+    /** Bucket count */
+    public static final int BUCKET_COUNT = 32;
+
+    /** Latency counts of the buckets */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /** Latency count */
+    private final AtomicLong count = new AtomicLong();
+
+    /** Total latency in nanoseconds */
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    /** Maximal latency in nanoseconds */
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Latency histogram.
+     */
+    public LatencyHistogram() {
+    }
+
+    /**
+     * @return  the bucket index of a latency.
+     */
+    private static int indexOf(long nanos) {
+
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+
+        if (micros <= 1L) {
+            return 0;
+        }
+
+        return Math.min(BUCKET_COUNT - 1, 63 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * @return  the copy of the latency counts of the buckets.
+     */
+    public long[] getBuckets() {
+
+        long[] result = new long[BUCKET_COUNT];
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            result[i] = buckets.get(i);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return  the count of the recorded latencies.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return  the maximal recorded latency in nanoseconds.
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @return  the mean of the recorded latencies in nanoseconds, or {@code 0}, if nothing was
+     *          recorded.
+     */
+    public long getMeanNanos() {
+
+        long currentCount = count.get();
+
+        return (currentCount == 0L) ? 0L : (totalNanos.get() / currentCount);
+    }
+
+    /**
+     * Estimates a percentile of the recorded latencies.
+     *
+     * @param   percentile  Percentile between {@code 0} and {@code 100}.
+     *
+     * @return  the upper bound of the bucket containing the percentile in microseconds, or {@code
+     *          0}, if nothing was recorded.
+     */
+    public long getPercentileMicros(double percentile) {
+
+        long[] counts = getBuckets();
+        long total = 0L;
+
+        for (long bucket : counts) {
+            total += bucket;
+        }
+
+        long threshold = (long) Math.ceil(total * (percentile / 100d));
+        long cumulated = 0L;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+
+            cumulated += counts[i];
+
+            if ((0L < cumulated) && (threshold <= cumulated)) {
+                return 1L << (i + 1);
+            }
+        }
+
+        return 0L;
+    }
+
+    /**
+     * @return  the total of the recorded latencies in nanoseconds.
+     */
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    /**
+     * Record a latency.
+     *
+     * @param  nanos  The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+
+        buckets.incrementAndGet(indexOf(nanos));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+
+        long max;
+
+        while ((max = maxNanos.get()) < nanos) {
+
+            if (maxNanos.compareAndSet(max, nanos)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Reset the histogram. Latencies recorded concurrently may be partially kept.
+     */
+    public void reset() {
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0L);
+        }
+
+        count.set(0L);
+        totalNanos.set(0L);
+        maxNanos.set(0L);
+    }
+}
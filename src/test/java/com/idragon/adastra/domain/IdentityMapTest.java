@@ -0,0 +1,172 @@
+package com.idragon.adastra.domain;
+
+import org.testng.Assert;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Identity map test.
+ *
+ * @author  hp
+ */
+@Test public class IdentityMapTest {
+
+    /**
+     * Identity map bulk operations test.
+     */
+    public void testBulk() {
+
+        IdentityMap map = new IdentityMap();
+        Item item1 = new Item(1L);
+        Item item2 = new Item(2L);
+        Named named = new Named(1L);
+        Other other = new Other(1L);
+
+        map.putAll(Arrays.<IdentifiedEntity>asList(item1, item2, named, other));
+
+        List<Item> items = map.getAll(Item.class, 2L, 3L, 1L);
+
+        Assert.assertEquals(items.size(), 3);
+        Assert.assertSame(items.get(0), item2);
+        Assert.assertNull(items.get(1));
+        Assert.assertSame(items.get(2), item1);
+        Assert.assertSame(map.get(Other.class, 1L), other);
+        Assert.assertSame(map.get(Named.class, 1L), named);
+        Assert.assertEquals(map.size(), 4);
+    }
+
+    /**
+     * Identity map growth and removal test, which moves entries of long probe sequences.
+     */
+    public void testGrowth() {
+
+        IdentityMap map = new IdentityMap();
+
+        for (long id = -500L; id < 500L; id++) {
+            map.put(new Item(id * 1024L));
+        }
+
+        Assert.assertEquals(map.size(), 1000);
+
+        for (long id = -500L; id < 500L; id += 2L) {
+            Assert.assertNotNull(map.remove(Item.class, id * 1024L));
+        }
+
+        Assert.assertEquals(map.size(), 500);
+
+        for (long id = -500L; id < 500L; id++) {
+            Assert.assertEquals(map.get(Item.class, id * 1024L) != null, (id % 2L) != 0L);
+        }
+
+        map.clear();
+        Assert.assertEquals(map.size(), 0);
+    }
+
+    /**
+     * Identity map intern() test.
+     */
+    public void testIntern() {
+
+        IdentityMap map = new IdentityMap();
+        Item item = new Item(Long.MIN_VALUE);
+
+        Assert.assertSame(map.intern(item), item);
+        Assert.assertSame(map.intern(new Item(Long.MIN_VALUE)), item);
+        Assert.assertSame(map.put(new Item(Long.MIN_VALUE)), item);
+        Assert.assertNotSame(map.get(Item.class, Long.MIN_VALUE), item);
+        Assert.assertNull(map.get(Other.class, Long.MIN_VALUE));
+    }
+
+    /**
+     * Identity map transient entity test.
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testTransient() {
+        new IdentityMap().put(new Item(null));
+    }
+
+    /**
+     * Identity map weak values test.
+     *
+     * @throws  InterruptedException  if the test is interrupted.
+     */
+    public void testWeakValues() throws InterruptedException {
+
+        IdentityMap map = new IdentityMap(true);
+        Item item = new Item(1L);
+
+        map.put(item);
+        map.put(new Item(2L));
+
+        for (int i = 0; (i < 50) && (map.size() > 1); i++) {
+
+            System.gc();
+            Thread.sleep(10L);
+        }
+
+        Assert.assertEquals(map.size(), 1);
+        Assert.assertSame(map.get(Item.class, 1L), item);
+        Assert.assertNull(map.get(Item.class, 2L));
+    }
+
+    /**
+     * Test entity.
+     */
+    private static class Item implements IdentifiedEntity {
+
+        private final Long id;
+
+        /**
+         * Test entity.
+         *
+         * @param  id  Identifier.
+         */
+        public Item(Long id) {
+            this.id = id;
+        }
+
+        @Override public Long getId() {
+            return id;
+        }
+    }
+
+    /**
+     * Test entity of a subclass, which is mapped separately.
+     */
+    private static final class Named extends Item {
+
+        /**
+         * Test entity of a subclass.
+         *
+         * @param  id  Identifier.
+         */
+        public Named(Long id) {
+            super(id);
+        }
+    }
+
+    /**
+     * Other test entity.
+     */
+    private static final class Other implements IdentifiedEntity {
+
+        private final Long id;
+
+        /**
+         * Other test entity.
+         *
+         * @param  id  Identifier.
+         */
+        public Other(Long id) {
+            this.id = id;
+        }
+
+        @Override public Long getId() {
+            return id;
+        }
+    }
+}
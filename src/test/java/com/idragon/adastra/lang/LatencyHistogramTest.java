@@ -0,0 +1,63 @@
+package com.idragon.adastra.lang;
+
+import org.testng.Assert;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Latency histogram test.
+ *
+ * @author hp
+ */
+@Test public class LatencyHistogramTest {
+
+    /**
+     * Latency histogram percentile test.
+     */
+    public void testPercentile() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        Assert.assertEquals(histogram.getPercentileMicros(50d), 0L);
+
+        for (int i = 0; i < 99; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(10L));
+        }
+
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(5L));
+
+        // 10 us falls into the bucket [8, 16), 5 ms into [4096, 8192)
+        Assert.assertEquals(histogram.getPercentileMicros(50d), 16L);
+        Assert.assertEquals(histogram.getPercentileMicros(99d), 16L);
+        Assert.assertEquals(histogram.getPercentileMicros(100d), 8192L);
+    }
+
+    /**
+     * Latency histogram record test.
+     */
+    public void testRecord() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(500L);
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(3L));
+        histogram.record(TimeUnit.SECONDS.toNanos(1L));
+
+        long[] buckets = histogram.getBuckets();
+
+        Assert.assertEquals(buckets[0], 1L);
+        Assert.assertEquals(buckets[1], 1L);
+        Assert.assertEquals(buckets[19], 1L);
+        Assert.assertEquals(histogram.getCount(), 3L);
+        Assert.assertEquals(histogram.getMaxNanos(), TimeUnit.SECONDS.toNanos(1L));
+
+        histogram.reset();
+
+        Assert.assertEquals(histogram.getCount(), 0L);
+        Assert.assertEquals(histogram.getMeanNanos(), 0L);
+        Assert.assertEquals(histogram.getMaxNanos(), 0L);
+    }
+}
@@ -0,0 +1,184 @@
+package com.idragon.adastra.springframework.context;
+
+import com.idragon.adastra.context.AsyncWorkspace;
+import com.idragon.adastra.context.SimpleWorkspace;
+
+import org.apache.commons.io.FileUtils;
+
+import org.testng.Assert;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Asynchronous workspace unit test.
+ *
+ * @author  hp
+ */
+@Test public class AsyncWorkspaceTest {
+
+    private SimpleWorkspace workspace;
+    private AsyncWorkspace asyncWorkspace;
+
+    /**
+     * Asynchronous workspace unit test.
+     */
+    public AsyncWorkspaceTest() {
+    }
+
+    @BeforeMethod protected void setUp() throws IOException {
+
+        workspace = new SimpleWorkspace();
+        workspace.setRoot(new File(System.getProperty("java.io.tmpdir"), "async-workspace-test"));
+        workspace.init();
+
+        asyncWorkspace = new AsyncWorkspace();
+        asyncWorkspace.setWorkspace(workspace);
+        asyncWorkspace.setMaxConcurrentOperations(2);
+        asyncWorkspace.init();
+    }
+
+    @AfterMethod protected void tearDown() throws IOException {
+
+        asyncWorkspace.destroy();
+        workspace.destroy();
+        FileUtils.forceDelete(workspace.getRoot());
+        asyncWorkspace = null;
+        workspace = null;
+    }
+
+    /**
+     * Test of bounding the concurrent operations.
+     *
+     * @throws  Exception  if a file can't be written.
+     */
+    @Test public void testBound() throws Exception {
+
+        Path directory = workspace.getPath("aaa");
+        List<Future<Long>> futures = new ArrayList<Future<Long>>();
+
+        for (int i = 0; i < 20; i++) {
+            futures.add(asyncWorkspace.write(directory.resolve("file" + i), new byte[i]));
+        }
+
+        Assert.assertTrue(asyncWorkspace.getInFlightCount() <= 2);
+
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals(futures.get(i).get(), Long.valueOf(i));
+        }
+
+        Assert.assertEquals(asyncWorkspace.getWriteLatency().getCount(), 20L);
+        Assert.assertEquals(asyncWorkspace.getPendingCount(), 0);
+        Assert.assertEquals(workspace.getDirectory("aaa").list().length, 20);
+    }
+
+    /**
+     * Test of cancelling operations, which are not started yet.
+     *
+     * @throws  Exception  if an operation fails.
+     */
+    @Test public void testCancel() throws Exception {
+
+        final CountDownLatch blocked = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AsyncWorkspace blockedWorkspace = new AsyncWorkspace();
+
+        blockedWorkspace.setWorkspace(workspace);
+        blockedWorkspace.setExecutor(executor);
+        blockedWorkspace.setMaxConcurrentOperations(1);
+        blockedWorkspace.init();
+
+        try {
+
+            executor.execute(new Runnable() {
+
+                    @Override public void run() {
+
+                        try {
+                            blocked.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+
+            Path directory = workspace.getPath("aaa");
+            Future<Long> submitted = blockedWorkspace.write(directory.resolve("submitted"),
+                    new byte[1]);
+            Future<Long> queued = blockedWorkspace.write(directory.resolve("queued"), new byte[1]);
+
+            Assert.assertEquals(blockedWorkspace.getPendingCount(), 1);
+            Assert.assertTrue(queued.cancel(false));
+            Assert.assertTrue(submitted.cancel(false));
+            Assert.assertTrue(queued.isCancelled());
+            Assert.assertEquals(blockedWorkspace.getPendingCount(), 0);
+
+            blocked.countDown();
+
+            Assert.assertEquals(blockedWorkspace.write(directory.resolve("written"), new byte[1])
+                .get(), Long.valueOf(1L));
+            Assert.assertFalse(Files.exists(directory.resolve("submitted")));
+            Assert.assertFalse(Files.exists(directory.resolve("queued")));
+            Assert.assertEquals(blockedWorkspace.getInFlightCount(), 0);
+
+        } finally {
+
+            blocked.countDown();
+            blockedWorkspace.destroy();
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test of reading a missing file.
+     *
+     * @throws  Exception  if the read doesn't fail.
+     */
+    @Test(expectedExceptions = ExecutionException.class)
+    public void testMissing() throws Exception {
+        asyncWorkspace.read(workspace.getPath().resolve("missing.bin")).get();
+    }
+
+    /**
+     * Test of the operations.
+     *
+     * @throws  Exception  if an operation fails.
+     */
+    @Test public void testOperations() throws Exception {
+
+        Path source = workspace.getPath("aaa").resolve("source.bin");
+        Path target = workspace.getPath("bbb").resolve("target.bin");
+        byte[] content = new byte[100000];
+
+        Arrays.fill(content, (byte) 7);
+
+        Assert.assertEquals(asyncWorkspace.write(source, content).get(), Long.valueOf(100000L));
+        Assert.assertTrue(Arrays.equals(asyncWorkspace.read(source).get(), content));
+        Assert.assertEquals(asyncWorkspace.copy(source, target).get(), Long.valueOf(100000L));
+        Assert.assertTrue(Arrays.equals(Files.readAllBytes(target), content));
+        Assert.assertTrue(asyncWorkspace.delete(workspace.getPath("aaa")).get());
+        Assert.assertFalse(asyncWorkspace.delete(source).get());
+        Assert.assertFalse(Files.exists(source));
+
+        Assert.assertEquals(asyncWorkspace.getReadLatency().getCount(), 1L);
+        Assert.assertEquals(asyncWorkspace.getCopyLatency().getCount(), 1L);
+        Assert.assertEquals(asyncWorkspace.getDeleteLatency().getCount(), 2L);
+    }
+}
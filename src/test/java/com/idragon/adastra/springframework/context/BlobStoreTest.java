@@ -0,0 +1,219 @@
+package com.idragon.adastra.springframework.context;
+
+import com.idragon.adastra.context.BlobHandle;
+import com.idragon.adastra.context.BlobStore;
+import com.idragon.adastra.context.SimpleWorkspace;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import org.testng.Assert;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * Blob store unit test.
+ *
+ * @author  hp
+ */
+@Test public class BlobStoreTest {
+
+    private SimpleWorkspace workspace;
+    private BlobStore store;
+
+    /**
+     * Blob store unit test.
+     */
+    public BlobStoreTest() {
+    }
+
+    @BeforeMethod protected void setUp() throws IOException {
+
+        workspace = new SimpleWorkspace();
+        workspace.setRoot(new File(System.getProperty("java.io.tmpdir"), "blob-store-test"));
+        workspace.init();
+
+        store = new BlobStore();
+        store.setWorkspace(workspace);
+        store.init();
+    }
+
+    @AfterMethod protected void tearDown() throws IOException {
+
+        store.destroy();
+        workspace.destroy();
+        FileUtils.forceDelete(workspace.getRoot());
+        store = null;
+        workspace = null;
+    }
+
+    /**
+     * Test of collecting blobs, while the same content is written and released concurrently.
+     *
+     * @throws  Exception  if a blob can't be stored or collected.
+     */
+    @Test public void testConcurrentGc() throws Exception {
+
+        final byte[] content = new byte[] { 7, 8, 9 };
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> writers = new ArrayList<Thread>();
+
+        for (int i = 0; i < 4; i++) {
+
+            final boolean stream = (i % 2) == 0;
+
+            writers.add(new Thread(new Runnable() {
+
+                        @Override public void run() {
+
+                            try {
+
+                                for (int j = 0; j < 100; j++) {
+
+                                    BlobHandle handle = stream
+                                        ? store.put(new ByteArrayInputStream(content))
+                                        : store.put(content);
+
+                                    // The referenced blob is never collected
+                                    Assert.assertTrue(Arrays.equals(store.read(handle), content));
+                                    store.release(handle);
+                                }
+
+                            } catch (Throwable e) {
+                                failure.compareAndSet(null, e);
+                            }
+                        }
+                    }));
+        }
+
+        Thread collector = new Thread(new Runnable() {
+
+                    @Override public void run() {
+
+                        try {
+
+                            while (writing.get()) {
+                                store.gc();
+                            }
+
+                        } catch (Throwable e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                });
+
+        collector.start();
+
+        for (Thread writer : writers) {
+            writer.start();
+        }
+
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        writing.set(false);
+        collector.join();
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        store.gc();
+
+        Assert.assertEquals(store.getBlobCount(), 0);
+    }
+
+    /**
+     * Test of deduplicating writes.
+     *
+     * @throws  IOException  if a blob can't be stored.
+     */
+    @Test public void testDeduplication() throws IOException {
+
+        byte[] content = "content".getBytes("UTF-8");
+        BlobHandle handle = store.put(content);
+
+        Assert.assertEquals(handle.getSize(), 7L);
+        Assert.assertEquals(store.put(content.clone()), handle);
+        Assert.assertEquals(store.put(new ByteArrayInputStream(content)), handle);
+        Assert.assertEquals(store.getReferenceCount(handle), 3);
+        Assert.assertEquals(store.getDeduplicationCount(), 2L);
+        Assert.assertEquals(store.getBlobCount(), 1);
+        Assert.assertTrue(Arrays.equals(store.read(handle), content));
+
+        try (InputStream in = store.open(store.getHandle(handle.getId()))) {
+            Assert.assertTrue(Arrays.equals(IOUtils.toByteArray(in), content));
+        }
+
+        // Only the blob itself is stored, beside the directories
+        Assert.assertEquals(FileUtils.listFiles(workspace.getDirectory("blobs"), null, true).size(),
+            1);
+    }
+
+    /**
+     * Test of deleting unreferenced blobs.
+     *
+     * @throws  IOException  if a blob can't be stored.
+     */
+    @Test public void testGc() throws IOException {
+
+        BlobHandle kept = store.put(new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+        BlobHandle released = store.put(new byte[] { 4, 5, 6 });
+
+        store.retain(released);
+        store.release(released);
+        store.release(released);
+
+        Assert.assertEquals(store.gc(), 1);
+        Assert.assertNull(store.getHandle(released.getId()));
+        Assert.assertEquals(store.getHandle(kept.getId()).getSize(), 3L);
+    }
+
+    /**
+     * Test of persisting the reference counts.
+     *
+     * @throws  IOException  if a blob can't be stored.
+     */
+    @Test public void testIndex() throws IOException {
+
+        BlobHandle handle = store.put(new byte[] { 1, 2, 3 });
+        store.retain(handle);
+        store.destroy();
+
+        store = new BlobStore();
+        store.setWorkspace(workspace);
+        store.init();
+
+        Assert.assertEquals(store.getReferenceCount(handle), 2);
+    }
+
+    /**
+     * Test of releasing an unreferenced blob.
+     *
+     * @throws  IOException  if the blob can't be stored.
+     */
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testRelease() throws IOException {
+
+        BlobHandle handle = store.put(new byte[] { 1, 2, 3 });
+
+        store.release(handle);
+        store.release(handle);
+    }
+}
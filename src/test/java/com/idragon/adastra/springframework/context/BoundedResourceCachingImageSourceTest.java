@@ -0,0 +1,107 @@
+package com.idragon.adastra.springframework.context;
+
+import org.testng.Assert;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.idragon.adastra.context.BoundedResourceCachingImageSource;
+
+import java.awt.Dimension;
+import java.awt.Image;
+
+
+/**
+ * Unit test of the resource based image source with a memory bounded cache.
+ *
+ * @author  hp
+ */
+@Test public class BoundedResourceCachingImageSourceTest {
+
+    /** Weight of a 32x32 image */
+    private static final long WEIGHT_32 = 32L * 32L * 4L;
+
+    private BoundedResourceCachingImageSource imageSource;
+
+    /**
+     * Unit test of the resource based image source with a memory bounded cache.
+     */
+    public BoundedResourceCachingImageSourceTest() {
+    }
+
+    @BeforeMethod protected void setUp() {
+
+        imageSource = new BoundedResourceCachingImageSource();
+        imageSource.setLocation("classpath:");
+    }
+
+    @AfterMethod protected void tearDown() {
+
+        imageSource = null;
+    }
+
+    /**
+     * Test of evicting the least recently used resized image.
+     */
+    @Test public void testEviction() {
+
+        imageSource.setResizedCapacity(2L * WEIGHT_32);
+
+        Image a = imageSource.getImage("test-images/a.png", new Dimension(32, 32));
+        Assert.assertNotNull(imageSource.getImage("test-images/b.png", new Dimension(32, 32)));
+
+        // Touch a, so b becomes the least recently used image
+        Assert.assertSame(imageSource.getImage("test-images/a.png", new Dimension(32, 32)), a);
+        Assert.assertNotNull(imageSource.getImage("test-images/c.png", new Dimension(32, 32)));
+
+        Assert.assertEquals(imageSource.size(), 2);
+        Assert.assertEquals(imageSource.getEvictionCount(), 1L);
+        Assert.assertEquals(imageSource.getWeight(), 2L * WEIGHT_32);
+        Assert.assertSame(imageSource.getImage("test-images/a.png", new Dimension(32, 32)), a);
+    }
+
+    /**
+     * Test of separate default size and resized capacities.
+     */
+    @Test public void testSeparateCapacities() {
+
+        imageSource.setResizedCapacity(WEIGHT_32);
+
+        Assert.assertNotNull(imageSource.getImage("test-images/a.png"));
+        Assert.assertNotNull(imageSource.getImage("test-images/a.png", new Dimension(32, 32)));
+        Assert.assertNotNull(imageSource.getImage("test-images/b.png", new Dimension(32, 32)));
+
+        Assert.assertEquals(imageSource.size(), 2);
+        Assert.assertEquals(imageSource.getEvictionCount(), 1L);
+        Assert.assertEquals(imageSource.getResizedWeight(), WEIGHT_32);
+        Assert.assertTrue(0L < imageSource.getDefaultWeight());
+
+        imageSource.setDefaultCapacity(0L);
+
+        Assert.assertEquals(imageSource.size(), 1);
+        Assert.assertEquals(imageSource.getDefaultWeight(), 0L);
+    }
+
+    /**
+     * Test of removing and clearing.
+     */
+    @Test public void testRemove() {
+
+        Assert.assertNotNull(imageSource.getImage("test-images/a.png"));
+        Assert.assertNotNull(imageSource.getImage("test-images/a.png", new Dimension(16, 32)));
+        Assert.assertNotNull(imageSource.getImage("test-images/b.png", new Dimension(32, 32)));
+        Assert.assertNull(imageSource.getImage("test-images/z.png"));
+
+        imageSource.remove("test-images/a.png");
+
+        Assert.assertEquals(imageSource.size(), 2);
+        Assert.assertEquals(imageSource.getWeight(), WEIGHT_32 + 1L);
+
+        imageSource.clear();
+
+        Assert.assertEquals(imageSource.size(), 0);
+        Assert.assertEquals(imageSource.getWeight(), 0L);
+        Assert.assertEquals(imageSource.getEvictionCount(), 0L);
+    }
+}
@@ -0,0 +1,103 @@
+package com.idragon.adastra.springframework.context;
+
+import com.idragon.adastra.context.CachingWorkspace;
+
+import org.apache.commons.io.FileUtils;
+
+import org.testng.Assert;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+
+/**
+ * Caching workspace unit test.
+ *
+ * @author  hp
+ */
+@Test public class CachingWorkspaceTest {
+
+    private CachingWorkspace workspace;
+
+    /**
+     * Caching workspace unit test.
+     */
+    public CachingWorkspaceTest() {
+    }
+
+    @BeforeMethod protected void setUp() {
+
+        workspace = new CachingWorkspace();
+        workspace.setRoot(new File(System.getProperty("java.io.tmpdir"), "caching-workspace-test"));
+        workspace.init();
+    }
+
+    @AfterMethod protected void tearDown() throws IOException {
+
+        FileUtils.forceDelete(workspace.getRoot());
+        workspace = null;
+    }
+
+    /**
+     * Test of resolving a directory, which denotes a file.
+     *
+     * @throws  IOException  if the file can't be created.
+     */
+    @Test(expectedExceptions = IOException.class)
+    public void testFile() throws IOException {
+
+        FileUtils.touch(new File(workspace.getRoot(), "file"));
+        workspace.getDirectory("file");
+    }
+
+    /**
+     * Test of invalidating resolved directories.
+     *
+     * @throws  IOException  if a directory can't be created.
+     */
+    @Test public void testInvalidate() throws IOException {
+
+        File directory = workspace.getDirectory("aaa", "bbb");
+        workspace.getDirectory("aaa", "ccc");
+        workspace.getDirectory("ddd");
+
+        FileUtils.forceDelete(new File(workspace.getRoot(), "aaa"));
+
+        // Resolved directories are not validated again
+        Assert.assertSame(workspace.getDirectory("aaa", "bbb"), directory);
+        Assert.assertFalse(directory.exists());
+
+        workspace.invalidate("aaa");
+
+        Assert.assertEquals(workspace.size(), 1);
+        Assert.assertTrue(workspace.getDirectory("aaa", "bbb").isDirectory());
+
+        workspace.invalidate();
+
+        Assert.assertEquals(workspace.size(), 0);
+    }
+
+    /**
+     * Test of resolving directories.
+     *
+     * @throws  IOException  if a directory can't be created.
+     */
+    @Test public void testWorkspace() throws IOException {
+
+        String[] pathSequence = { "aaa", "bbb", "ccc" };
+        File directory = workspace.getDirectory(pathSequence);
+
+        Assert.assertTrue(directory.isDirectory(), "directory does not exist");
+
+        pathSequence[2] = "ddd";
+
+        Assert.assertSame(workspace.getDirectory("aaa", "bbb", "ccc"), directory);
+        Assert.assertEquals(workspace.getDirectory(pathSequence).getName(), "ddd");
+        Assert.assertEquals(workspace.getDirectory(), workspace.getRoot());
+        Assert.assertEquals(workspace.size(), 3);
+    }
+}
@@ -0,0 +1,238 @@
+package com.idragon.adastra.springframework.context;
+
+import org.testng.Assert;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.idragon.adastra.context.ConcurrentResourceCachingImageSource;
+import com.idragon.adastra.context.ImageRequest;
+
+import java.awt.Dimension;
+import java.awt.Image;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Unit test of the resource based image source with a thread-safe cache.
+ *
+ * @author  hp
+ */
+@Test public class ConcurrentResourceCachingImageSourceTest {
+
+    private static final int THREAD_COUNT = 8;
+
+    /** Image code, whose load fails */
+    private static final String BROKEN_CODE = "test-images/broken.png";
+
+    private ConcurrentResourceCachingImageSource imageSource;
+
+    private AtomicInteger loadCount;
+
+    private CountDownLatch loadLatch;
+
+    /**
+     * Unit test of the resource based image source with a thread-safe cache.
+     */
+    public ConcurrentResourceCachingImageSourceTest() {
+    }
+
+    @BeforeMethod protected void setUp() {
+
+        loadCount = new AtomicInteger();
+        loadLatch = new CountDownLatch(0);
+
+        imageSource = new ConcurrentResourceCachingImageSource() {
+
+                @Override protected Image getImageInternal(String imageCode,
+                    Dimension dimension) {
+
+                    loadCount.incrementAndGet();
+
+                    if (BROKEN_CODE.equals(imageCode)) {
+                        throw new IllegalArgumentException("broken image: " + imageCode);
+                    }
+
+                    try {
+                        loadLatch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    return super.getImageInternal(imageCode, dimension);
+                }
+            };
+
+        imageSource.setLocation("classpath:");
+    }
+
+    @AfterMethod protected void tearDown() {
+
+        imageSource = null;
+    }
+
+    /**
+     * Test of loading a batch of images.
+     */
+    @Test public void testBatch() {
+
+        List<ImageRequest> requests = Arrays.asList(new ImageRequest("test-images/a.png"),
+                new ImageRequest("test-images/a.png", 32, 32),
+                new ImageRequest("test-images/a.png", new Dimension(32, 32)),
+                new ImageRequest("test-images/a.png", 24, 24),
+                new ImageRequest("test-images/b.png", 64, 64),
+                new ImageRequest("test-images/c.png"), new ImageRequest("test-images/z.png", 8, 8));
+
+        Map<ImageRequest, Image> images = imageSource.getImages(requests);
+
+        Assert.assertEquals(images.size(), 6);
+        Assert.assertEquals(images.get(requests.get(0)).getWidth(null), 16);
+        Assert.assertEquals(images.get(requests.get(2)).getWidth(null), 32);
+        Assert.assertEquals(images.get(requests.get(3)).getWidth(null), 24);
+        Assert.assertEquals(images.get(requests.get(4)).getWidth(null), 64);
+        Assert.assertNotNull(images.get(requests.get(5)));
+        Assert.assertTrue(images.containsKey(requests.get(6)));
+        Assert.assertNull(images.get(requests.get(6)));
+
+        // Each original is decoded once, the resized images are scaled from them
+        Assert.assertEquals(loadCount.get(), 4);
+
+        images = imageSource.getImages(requests);
+
+        Assert.assertEquals(images.size(), 6);
+        Assert.assertEquals(loadCount.get(), 4);
+        Assert.assertEquals(imageSource.getStatistics().getHitCount(), 6L);
+        Assert.assertSame(imageSource.getImage("test-images/a.png", 24, 24),
+            images.get(requests.get(3)));
+    }
+
+    /**
+     * Test of loading a batch of images with a failing request.
+     */
+    @Test public void testBatchFailure() {
+
+        List<ImageRequest> requests = Arrays.asList(new ImageRequest("test-images/a.png"),
+                new ImageRequest(BROKEN_CODE), new ImageRequest("test-images/b.png", 32, 32));
+
+        Map<ImageRequest, Image> images = imageSource.getImages(requests);
+
+        Assert.assertEquals(images.size(), 3);
+        Assert.assertEquals(images.get(requests.get(0)).getWidth(null), 16);
+        Assert.assertTrue(images.containsKey(requests.get(1)));
+        Assert.assertNull(images.get(requests.get(1)));
+        Assert.assertEquals(images.get(requests.get(2)).getWidth(null), 32);
+
+        // The failed load is retried
+        images = imageSource.getImages(requests);
+
+        Assert.assertNull(images.get(requests.get(1)));
+        Assert.assertEquals(loadCount.get(), 4);
+    }
+
+    /**
+     * Test with various image requests.
+     */
+    @Test public void testComplex() {
+
+        Assert.assertNotNull(imageSource.getImage("test-images/a.png"));
+        Assert.assertNotNull(imageSource.getImage("test-images/a.png", new Dimension(16, 16)));
+        Assert.assertNotNull(imageSource.getImage("test-images/b.png"));
+        Assert.assertNotNull(imageSource.getImage("test-images/b.png", new Dimension(64, 64)));
+        Assert.assertNotNull(imageSource.getImage("test-images/b.png", new Dimension(32, 32)));
+        Assert.assertNotNull(imageSource.getImage("test-images/b.png", new Dimension(64, 64)));
+        Assert.assertNotNull(imageSource.getImage("test-images/c.png"));
+        Assert.assertNotNull(imageSource.getImage("test-images/c.png"));
+
+        Assert.assertEquals(imageSource.size(), 6);
+        Assert.assertEquals(loadCount.get(), 6);
+
+        imageSource.remove("test-images/b.png");
+        Assert.assertEquals(imageSource.size(), 3);
+
+        imageSource.clear();
+        Assert.assertEquals(imageSource.size(), 0);
+    }
+
+    /**
+     * Test of concurrent requests for the same image: only a single load may happen.
+     */
+    @Test public void testConcurrent() throws Exception {
+
+        loadLatch = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+
+        try {
+
+            List<Future<Image>> results = new ArrayList<Future<Image>>();
+
+            for (int i = 0; i < THREAD_COUNT; i++) {
+
+                results.add(executor.submit(new Callable<Image>() {
+
+                            @Override public Image call() {
+                                return imageSource.getImage("test-images/a.png",
+                                        new Dimension(32, 32));
+                            }
+                        }));
+            }
+
+            // The load is in flight, the cache must remain usable
+            Assert.assertEquals(imageSource.size(), 0);
+
+            loadLatch.countDown();
+
+            Image image = results.get(0).get(10, TimeUnit.SECONDS);
+            Assert.assertNotNull(image);
+
+            for (Future<Image> result : results) {
+                Assert.assertSame(result.get(10, TimeUnit.SECONDS), image);
+            }
+
+        } finally {
+
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(loadCount.get(), 1);
+        Assert.assertEquals(imageSource.size(), 1);
+    }
+
+    /**
+     * Testing invalid path.
+     */
+    @Test public void testMissing() {
+
+        Assert.assertNull(imageSource.getImage("test-images/z.png"));
+        Assert.assertNull(imageSource.getImage("test-images/z.png"));
+
+        Assert.assertEquals(imageSource.size(), 1);
+        Assert.assertEquals(loadCount.get(), 1);
+    }
+
+    /**
+     * Test of modifying the dimension after the request.
+     */
+    @Test public void testMutatedDimension() {
+
+        Dimension dimension = new Dimension(16, 16);
+
+        Image image = imageSource.getImage("test-images/a.png", dimension);
+        dimension.setSize(32, 32);
+
+        Assert.assertSame(imageSource.getImage("test-images/a.png", new Dimension(16, 16)), image);
+        Assert.assertEquals(loadCount.get(), 1);
+    }
+}
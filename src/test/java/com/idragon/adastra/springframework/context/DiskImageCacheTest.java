@@ -0,0 +1,134 @@
+package com.idragon.adastra.springframework.context;
+
+import com.idragon.adastra.context.DiskImageCache;
+import com.idragon.adastra.context.ResourceCachingImageSource;
+import com.idragon.adastra.context.SimpleWorkspace;
+
+import org.apache.commons.io.FileUtils;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import org.testng.Assert;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.awt.Dimension;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Unit test of the persistent cache of resized images.
+ *
+ * @author  hp
+ */
+@Test public class DiskImageCacheTest {
+
+    private SimpleWorkspace workspace;
+
+    private DiskImageCache diskImageCache;
+
+    /**
+     * Unit test of the persistent cache of resized images.
+     */
+    public DiskImageCacheTest() {
+    }
+
+    @BeforeMethod protected void setUp() throws IOException {
+
+        workspace = new SimpleWorkspace();
+        workspace.setRoot(new File(System.getProperty("java.io.tmpdir"), "disk-image-cache-test"));
+        workspace.init();
+
+        diskImageCache = new DiskImageCache();
+        diskImageCache.setWorkspace(workspace);
+        diskImageCache.init();
+    }
+
+    @AfterMethod protected void tearDown() throws IOException {
+
+        FileUtils.forceDelete(workspace.getRoot());
+        workspace = null;
+        diskImageCache = null;
+    }
+
+    /**
+     * Test of reading the images written by an other image source.
+     */
+    @Test public void testImageSource() {
+
+        final AtomicInteger decodeCount = new AtomicInteger();
+
+        for (int i = 0; i < 2; i++) {
+
+            ResourceCachingImageSource imageSource = new ResourceCachingImageSource() {
+
+                @Override protected BufferedImage decode(Resource resource) {
+
+                    decodeCount.incrementAndGet();
+
+                    return super.decode(resource);
+                }
+            };
+
+            imageSource.setLocation("classpath:");
+            imageSource.setDiskImageCache(diskImageCache);
+
+            Image image = imageSource.getImage("test-images/a.png", new Dimension(32, 24));
+            Assert.assertEquals(image.getWidth(null), 32);
+            Assert.assertEquals(image.getHeight(null), 24);
+        }
+
+        Assert.assertEquals(decodeCount.get(), 1);
+    }
+
+    /**
+     * Test of writing and reading an image.
+     */
+    @Test public void testPutGet() {
+
+        Resource source = new ClassPathResource("test-images/a.png");
+        BufferedImage image = new BufferedImage(3, 2, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(1, 1, 0x80ff0000);
+
+        Assert.assertNull(diskImageCache.get("a", new Dimension(3, 2), source));
+
+        diskImageCache.put("a", new Dimension(3, 2), source, image);
+
+        BufferedImage cachedImage = diskImageCache.get("a", new Dimension(3, 2), source);
+        Assert.assertNotNull(cachedImage);
+        Assert.assertEquals(cachedImage.getRGB(1, 1), 0x80ff0000);
+        Assert.assertNull(diskImageCache.get("b", new Dimension(3, 2), source));
+        Assert.assertNull(diskImageCache.get("a", new Dimension(2, 3), source));
+
+        diskImageCache.remove("a");
+        Assert.assertNull(diskImageCache.get("a", new Dimension(3, 2), source));
+    }
+
+    /**
+     * Test of invalidating the entries of a changed source.
+     */
+    @Test public void testStale() throws IOException {
+
+        File file = new File(workspace.getDirectory("source"), "a.png");
+        FileUtils.copyURLToFile(new ClassPathResource("test-images/a.png").getURL(), file);
+
+        Resource source = new FileSystemResource(file);
+        BufferedImage image = new BufferedImage(3, 2, BufferedImage.TYPE_INT_RGB);
+
+        diskImageCache.put("a", new Dimension(3, 2), source, image);
+        Assert.assertNotNull(diskImageCache.get("a", new Dimension(3, 2), source));
+
+        Assert.assertTrue(file.setLastModified(file.lastModified() - 10000L));
+        Assert.assertNull(diskImageCache.get("a", new Dimension(3, 2), source));
+    }
+}
@@ -0,0 +1,116 @@
+package com.idragon.adastra.springframework.context;
+
+import org.testng.Assert;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.idragon.adastra.component.AbstractFormPanel;
+import com.idragon.adastra.context.ConcurrentResourceCachingImageSource;
+import com.idragon.adastra.context.ExecutorImageSource;
+import com.idragon.adastra.context.ImageCallback;
+
+import java.awt.Dimension;
+import java.awt.Image;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * Unit test of the asynchronous image source.
+ *
+ * @author  hp
+ */
+@Test public class ExecutorImageSourceTest {
+
+    private ConcurrentResourceCachingImageSource cachingImageSource;
+
+    private ExecutorImageSource imageSource;
+
+    /**
+     * Unit test of the asynchronous image source.
+     */
+    public ExecutorImageSourceTest() {
+    }
+
+    @BeforeMethod protected void setUp() {
+
+        cachingImageSource = new ConcurrentResourceCachingImageSource();
+        cachingImageSource.setLocation("classpath:");
+
+        imageSource = new ExecutorImageSource();
+        imageSource.setImageSource(cachingImageSource);
+    }
+
+    @AfterMethod protected void tearDown() {
+
+        imageSource.destroy();
+        imageSource = null;
+        cachingImageSource = null;
+    }
+
+    /**
+     * Test of an asynchronous request with a callback.
+     */
+    @Test public void testCallback() throws Exception {
+
+        imageSource.init();
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Image> loaded = new AtomicReference<Image>();
+
+        Image image = imageSource.getImageAsync("test-images/a.png", new Dimension(32, 32),
+                new ImageCallback() {
+
+                    @Override public void imageFailed(String imageCode, Dimension dimension,
+                        Throwable cause) {
+
+                        latch.countDown();
+                    }
+
+                    @Override public void imageLoaded(String imageCode, Dimension dimension,
+                        Image image) {
+
+                        loaded.set(image);
+                        latch.countDown();
+                    }
+                }).get(10, TimeUnit.SECONDS);
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertNotNull(image);
+        Assert.assertSame(loaded.get(), image);
+        Assert.assertSame(imageSource.getImage("test-images/a.png", 32, 32), image);
+    }
+
+    /**
+     * Test of preloading images on initialization.
+     */
+    @Test public void testInitPreload() throws Exception {
+
+        imageSource.setThreadCount(1);
+        imageSource.setPreloadImageCodes(AbstractFormPanel.IMAGE_CODES);
+        imageSource.init();
+
+        // A single thread serves the requests in order, so this one waits for the preloading
+        imageSource.getImageAsync(AbstractFormPanel.ERROR_IMAGE_CODE, null).get(10,
+            TimeUnit.SECONDS);
+
+        Assert.assertEquals(cachingImageSource.size(), AbstractFormPanel.IMAGE_CODES.size());
+    }
+
+    /**
+     * Test of preloading multiple dimensions.
+     */
+    @Test public void testPreload() throws Exception {
+
+        imageSource.init();
+        imageSource.preload(Arrays.asList("test-images/a.png", "test-images/b.png"),
+            new Dimension(16, 16), new Dimension(32, 32)).get(10, TimeUnit.SECONDS);
+
+        Assert.assertEquals(cachingImageSource.size(), 4);
+    }
+}
@@ -0,0 +1,193 @@
+package com.idragon.adastra.springframework.context;
+
+import com.idragon.adastra.context.SimpleWorkspace;
+import com.idragon.adastra.context.StagedWrite;
+
+import org.apache.commons.io.FileUtils;
+
+import org.testng.Assert;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * Group committer unit test.
+ *
+ * @author  hp
+ */
+@Test public class GroupCommitterTest {
+
+    private SimpleWorkspace workspace;
+
+    /**
+     * Group committer unit test.
+     */
+    public GroupCommitterTest() {
+    }
+
+    @BeforeMethod protected void setUp() {
+
+        workspace = new SimpleWorkspace();
+        workspace.setRoot(new File(System.getProperty("java.io.tmpdir"), "group-committer-test"));
+        workspace.getGroupCommitter().setMaxCommitDelay(20L);
+        workspace.init();
+    }
+
+    @AfterMethod protected void tearDown() throws IOException {
+
+        workspace.destroy();
+        FileUtils.forceDelete(workspace.getRoot());
+        workspace = null;
+    }
+
+    /**
+     * Test of aborting a write.
+     *
+     * @throws  IOException  if the file can't be written.
+     */
+    @Test public void testAbort() throws IOException {
+
+        Path file = workspace.getPath("aaa").resolve("file.txt");
+
+        try (StagedWrite write = workspace.stage(file)) {
+            write.getChannel().write(ByteBuffer.wrap("aborted".getBytes("UTF-8")));
+        }
+
+        Assert.assertFalse(Files.exists(file));
+        Assert.assertEquals(workspace.getDirectory("aaa").list().length, 0);
+    }
+
+    /**
+     * Test of grouping concurrent commits.
+     *
+     * @throws  Exception  if a file can't be written.
+     */
+    @Test public void testCommit() throws Exception {
+
+        final Path directory = workspace.getPath("aaa");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+
+        try {
+
+            for (int i = 0; i < 32; i++) {
+
+                final String name = "file" + i + ".txt";
+
+                futures.add(executor.submit(new Callable<Object>() {
+
+                            @Override public Object call() throws IOException {
+
+                                write(directory.resolve(name), name);
+
+                                return null;
+                            }
+                        }));
+            }
+
+            for (Future<Object> future : futures) {
+                future.get();
+            }
+
+        } finally {
+            executor.shutdown();
+        }
+
+        for (int i = 0; i < 32; i++) {
+
+            String name = "file" + i + ".txt";
+
+            Assert.assertEquals(new String(Files.readAllBytes(directory.resolve(name)), "UTF-8"),
+                name);
+        }
+
+        Assert.assertEquals(workspace.getDirectory("aaa").list().length, 32);
+        Assert.assertEquals(workspace.getGroupCommitter().getCommitCount(), 32L);
+        Assert.assertTrue(workspace.getGroupCommitter().getBatchCount() < 32L);
+        Assert.assertEquals(workspace.getGroupCommitter().getCommitLatency().getCount(), 32L);
+    }
+
+    /**
+     * Test of rejecting commits after destruction.
+     *
+     * @throws  IOException  if the file can't be written.
+     */
+    @Test public void testDestroyed() throws IOException {
+
+        write(workspace.getPath("aaa").resolve("file.txt"), "committed");
+        workspace.getGroupCommitter().destroy();
+
+        Path file = workspace.getPath("aaa").resolve("rejected.txt");
+
+        try (StagedWrite write = workspace.stage(file)) {
+
+            write.commit();
+            Assert.fail("Commit should be rejected");
+
+        } catch (IOException e) {
+            // Expected
+        }
+
+        Assert.assertFalse(Files.exists(file));
+        Assert.assertEquals(workspace.getDirectory("aaa").list().length, 1);
+    }
+
+    /**
+     * Test of replacing a file.
+     *
+     * @throws  IOException  if the file can't be written.
+     */
+    @Test public void testReplace() throws IOException {
+
+        Path file = workspace.getPath("aaa").resolve("file.txt");
+
+        write(file, "old content");
+        write(file, "new");
+
+        Assert.assertEquals(new String(Files.readAllBytes(file), "UTF-8"), "new");
+        Assert.assertEquals(workspace.getDirectory("aaa").list().length, 1);
+    }
+
+    /**
+     * Test of committing a write twice.
+     *
+     * @throws  IOException  if the file can't be written.
+     */
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testTwice() throws IOException {
+
+        try (StagedWrite write = workspace.stage(workspace.getPath().resolve("file.txt"))) {
+
+            write.commit();
+            write.commit();
+        }
+    }
+
+    /**
+     * Writes a file through a staging file.
+     */
+    private void write(Path file, String content) throws IOException {
+
+        try (StagedWrite write = workspace.stage(file)) {
+
+            write.getChannel().write(ByteBuffer.wrap(content.getBytes("UTF-8")));
+            write.commit();
+        }
+    }
+}
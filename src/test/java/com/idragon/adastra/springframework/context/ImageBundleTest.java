@@ -0,0 +1,136 @@
+package com.idragon.adastra.springframework.context;
+
+import com.idragon.adastra.context.ImageBundle;
+import com.idragon.adastra.context.ImageBundlePacker;
+import com.idragon.adastra.context.ResourceCachingImageSource;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+
+import org.testng.Assert;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.awt.Dimension;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import javax.imageio.ImageIO;
+
+
+/**
+ * Unit test of the packed image bundles.
+ *
+ * @author  hp
+ */
+@Test public class ImageBundleTest {
+
+    private File bundleFile;
+
+    /**
+     * Unit test of the packed image bundles.
+     */
+    public ImageBundleTest() {
+    }
+
+    @BeforeMethod protected void setUp() throws IOException {
+
+        bundleFile = File.createTempFile("image-bundle-test", ".bundle");
+    }
+
+    @AfterMethod protected void tearDown() {
+
+        bundleFile.delete();
+        bundleFile = null;
+    }
+
+    /**
+     * Packs the test images into the bundle file.
+     */
+    private void pack(boolean deflated) throws IOException {
+
+        ImageBundlePacker packer = new ImageBundlePacker();
+        packer.setPrefix("test-images/");
+        packer.setDeflated(deflated);
+        packer.pack(new ClassPathResource("test-images").getFile(), bundleFile);
+    }
+
+    /**
+     * Asserts, that the bundled images have the pixels of the original images.
+     */
+    private void assertBundle(ImageBundle bundle) throws IOException {
+
+        Assert.assertEquals(bundle.getImageCodes(),
+            new HashSet<String>(Arrays.asList("test-images/a.png", "test-images/b.png",
+                    "test-images/c.png")));
+
+        for (String imageCode : bundle.getImageCodes()) {
+
+            BufferedImage original = ImageIO.read(new ClassPathResource(imageCode).getURL());
+            BufferedImage image = bundle.getImage(imageCode);
+
+            Assert.assertEquals(image.getWidth(), original.getWidth());
+            Assert.assertEquals(image.getHeight(), original.getHeight());
+
+            for (int y = 0; y < image.getHeight(); y++) {
+
+                for (int x = 0; x < image.getWidth(); x++) {
+                    Assert.assertEquals(image.getRGB(x, y), original.getRGB(x, y));
+                }
+            }
+        }
+
+        // The images are copies
+        String imageCode = "test-images/a.png";
+        int rgb = bundle.getImage(imageCode).getRGB(0, 0);
+
+        bundle.getImage(imageCode).setRGB(0, 0, ~rgb);
+
+        Assert.assertEquals(bundle.getImage(imageCode).getRGB(0, 0), rgb);
+
+        Assert.assertNull(bundle.getImage("test-images/z.png"));
+    }
+
+    /**
+     * Test of a deflated bundle.
+     */
+    @Test public void testDeflated() throws IOException {
+
+        pack(true);
+        assertBundle(ImageBundle.load(new FileSystemResource(bundleFile)));
+    }
+
+    /**
+     * Test of serving bundled images through an image source.
+     */
+    @Test public void testImageSource() throws IOException {
+
+        pack(false);
+
+        ResourceCachingImageSource imageSource = new ResourceCachingImageSource();
+        imageSource.setBundleLocation("file:" + bundleFile.getAbsolutePath());
+
+        Assert.assertNotNull(imageSource.getImage("test-images/a.png"));
+        Assert.assertNull(imageSource.getImage("test-images/z.png"));
+
+        Image image = imageSource.getImage("test-images/b.png", new Dimension(32, 32));
+        Assert.assertEquals(image.getWidth(null), 32);
+    }
+
+    /**
+     * Test of a raw bundle.
+     */
+    @Test public void testRaw() throws IOException {
+
+        pack(false);
+        assertBundle(ImageBundle.load(new FileSystemResource(bundleFile)));
+    }
+}
@@ -0,0 +1,161 @@
+package com.idragon.adastra.springframework.context;
+
+import org.testng.Assert;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.idragon.adastra.context.BoundedResourceCachingImageSource;
+import com.idragon.adastra.context.ConcurrentResourceCachingImageSource;
+import com.idragon.adastra.context.ImageCacheStatistics;
+import com.idragon.adastra.context.ResourceCachingImageSource;
+
+import java.awt.Dimension;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+
+/**
+ * Unit test of the image cache statistics.
+ *
+ * @author  hp
+ */
+@Test public class ImageCacheStatisticsTest {
+
+    private ResourceCachingImageSource imageSource;
+
+    /**
+     * Unit test of the image cache statistics.
+     */
+    public ImageCacheStatisticsTest() {
+    }
+
+    @BeforeMethod protected void setUp() {
+
+        imageSource = new ResourceCachingImageSource();
+        imageSource.setLocation("classpath:");
+    }
+
+    @AfterMethod protected void tearDown() {
+
+        imageSource = null;
+    }
+
+    /**
+     * Test of the hit, miss and load counters.
+     */
+    @Test public void testCounters() {
+
+        imageSource.getImage("test-images/a.png");
+        imageSource.getImage("test-images/a.png");
+        imageSource.getImage("test-images/z.png");
+        imageSource.getImage("test-images/z.png");
+        imageSource.getImage("test-images/a.png", new Dimension(32, 32));
+        imageSource.getImage("test-images/a.png", new Dimension(32, 32));
+        imageSource.getImage("test-images/a.png", new Dimension(24, 24));
+
+        ImageCacheStatistics statistics = imageSource.getStatistics();
+
+        Assert.assertEquals(statistics.getDefaultHitCount(), 1L);
+        Assert.assertEquals(statistics.getDefaultMissingHitCount(), 1L);
+        Assert.assertEquals(statistics.getDefaultMissCount(), 2L);
+        Assert.assertEquals(statistics.getResizedHitCount(), 1L);
+        Assert.assertEquals(statistics.getResizedMissCount(), 2L);
+        Assert.assertEquals(statistics.getLookupCount(), 7L);
+        Assert.assertEquals(statistics.getHitRatio(), 3d / 7d, 0.0001d);
+        Assert.assertEquals(statistics.getLoadCount(), 4L);
+        Assert.assertEquals(statistics.getScaleCount(), 2L);
+        Assert.assertEquals(statistics.getSize(), 4);
+
+        imageSource.resetStatistics();
+
+        statistics = imageSource.getStatistics();
+
+        Assert.assertEquals(statistics.getLookupCount(), 0L);
+        Assert.assertEquals(statistics.getLoadCount(), 0L);
+        Assert.assertEquals(statistics.getSize(), 4);
+    }
+
+    /**
+     * Test of the eviction counters.
+     */
+    @Test public void testEvictions() {
+
+        BoundedResourceCachingImageSource boundedImageSource =
+            new BoundedResourceCachingImageSource();
+        boundedImageSource.setLocation("classpath:");
+        boundedImageSource.setResizedCapacity(32L * 32L * 4L);
+
+        boundedImageSource.getImage("test-images/a.png", new Dimension(32, 32));
+        boundedImageSource.getImage("test-images/b.png", new Dimension(32, 32));
+
+        ImageCacheStatistics statistics = boundedImageSource.getStatistics();
+
+        Assert.assertEquals(statistics.getDefaultEvictionCount(), 0L);
+        Assert.assertEquals(statistics.getResizedEvictionCount(), 1L);
+        Assert.assertEquals(boundedImageSource.getEvictionCount(), 1L);
+    }
+
+    /**
+     * Test of the load failure counters.
+     */
+    @Test public void testLoadFailures() {
+
+        imageSource.setLocation("classpath:test-images/");
+
+        try {
+            imageSource.getImage("../logback-test.xml", new Dimension(16, 16));
+            Assert.fail("unsupported image format expected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        ImageCacheStatistics statistics = imageSource.getStatistics();
+
+        Assert.assertEquals(statistics.getResizedMissCount(), 1L);
+        Assert.assertEquals(statistics.getResizedLoadFailureCount(), 1L);
+        Assert.assertEquals(statistics.getDefaultLoadFailureCount(), 0L);
+    }
+
+    /**
+     * Test of the statistics exposed through JMX.
+     *
+     * @throws  Exception  if the MBean can't be registered.
+     */
+    @Test public void testMXBean() throws Exception {
+
+        ConcurrentResourceCachingImageSource concurrentImageSource =
+            new ConcurrentResourceCachingImageSource();
+        concurrentImageSource.setLocation("classpath:");
+        concurrentImageSource.getImage("test-images/a.png");
+        concurrentImageSource.getImage("test-images/a.png");
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.idragon.adastra:type=ImageCache,name=test");
+
+        server.registerMBean(concurrentImageSource, name);
+
+        try {
+
+            CompositeData statistics = (CompositeData) server.getAttribute(name, "Statistics");
+
+            Assert.assertEquals(statistics.get("defaultHitCount"), 1L);
+            Assert.assertEquals(statistics.get("defaultMissCount"), 1L);
+
+            server.invoke(name, "resetStatistics", null, null);
+
+            statistics = (CompositeData) server.getAttribute(name, "Statistics");
+
+            Assert.assertEquals(statistics.get("lookupCount"), 0L);
+
+        } finally {
+
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.idragon.adastra.springframework.context;
+
+import com.idragon.adastra.context.ConcurrentResourceCachingImageSource;
+import com.idragon.adastra.context.ImageFileWatcher;
+import com.idragon.adastra.context.ResourceCachingImageSource;
+
+import org.apache.commons.io.FileUtils;
+
+import org.springframework.core.io.ClassPathResource;
+
+import org.testng.Assert;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.awt.Dimension;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Unit test of the watcher of image locations.
+ *
+ * @author  hp
+ */
+@Test public class ImageFileWatcherTest {
+
+    /** Maximal time to wait for the watcher in milliseconds */
+    private static final long TIMEOUT = 10000L;
+
+    private File directory;
+
+    private ConcurrentResourceCachingImageSource imageSource;
+
+    private ImageFileWatcher watcher;
+
+    /**
+     * Unit test of the watcher of image locations.
+     */
+    public ImageFileWatcherTest() {
+    }
+
+    @BeforeMethod protected void setUp() throws IOException {
+
+        directory = new File(System.getProperty("java.io.tmpdir"), "image-file-watcher-test");
+        FileUtils.forceMkdir(new File(directory, "icons"));
+        copy("test-images/a.png", "icons/a.png");
+        copy("test-images/b.png", "b.png");
+
+        imageSource = new ConcurrentResourceCachingImageSource();
+        imageSource.setLocation(directory.toURI().toString());
+
+        watcher = new ImageFileWatcher();
+        watcher.setImageSource(imageSource);
+        watcher.init();
+    }
+
+    @AfterMethod protected void tearDown() throws IOException {
+
+        watcher.destroy();
+        FileUtils.forceDelete(directory);
+
+        watcher = null;
+        imageSource = null;
+    }
+
+    /**
+     * Copies a test image into the watched directory.
+     */
+    private void copy(String source, String target) throws IOException {
+        FileUtils.copyURLToFile(new ClassPathResource(source).getURL(), new File(directory, target));
+    }
+
+    /**
+     * Test of removing a changed image, including its resized images.
+     *
+     * @throws  Exception  if the test fails.
+     */
+    @Test public void testChanged() throws Exception {
+
+        Assert.assertEquals(imageSource.getImage("icons/a.png").getWidth(null), 16);
+        Assert.assertNotNull(imageSource.getImage("icons/a.png", new Dimension(32, 32)));
+        Assert.assertNotNull(imageSource.getImage("b.png"));
+        Assert.assertEquals(imageSource.size(), 3);
+
+        copy("test-images/c.png", "icons/a.png");
+
+        waitForSize(1);
+
+        Assert.assertNotNull(imageSource.getImage("b.png"));
+        Assert.assertEquals(imageSource.size(), 1);
+    }
+
+    /**
+     * Test of removing a missing image, when it's created in a new directory.
+     *
+     * @throws  Exception  if the test fails.
+     */
+    @Test public void testCreated() throws Exception {
+
+        Assert.assertNull(imageSource.getImage("new/a.png"));
+        Assert.assertEquals(imageSource.size(), 1);
+
+        copy("test-images/a.png", "new/a.png");
+
+        waitForSize(0);
+
+        Assert.assertNotNull(imageSource.getImage("new/a.png"));
+    }
+
+    /**
+     * Test of watching on, when removing a changed image fails.
+     *
+     * @throws  Exception  if the test fails.
+     */
+    @Test public void testFailure() throws Exception {
+
+        final AtomicInteger failures = new AtomicInteger();
+
+        watcher.destroy();
+
+        imageSource = new ConcurrentResourceCachingImageSource() {
+
+                @Override public void remove(String imageCode) {
+
+                    if (failures.getAndIncrement() == 0) {
+                        throw new IllegalStateException("test failure");
+                    }
+
+                    super.remove(imageCode);
+                }
+            };
+        imageSource.setLocation(directory.toURI().toString());
+
+        watcher = new ImageFileWatcher();
+        watcher.setImageSource(imageSource);
+        watcher.init();
+
+        Assert.assertNotNull(imageSource.getImage("icons/a.png"));
+        Assert.assertNotNull(imageSource.getImage("b.png"));
+
+        copy("test-images/c.png", "icons/a.png");
+
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+
+        while ((failures.get() == 0) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(20L);
+        }
+
+        Assert.assertTrue(failures.get() > 0);
+
+        // Later events are still processed
+        copy("test-images/c.png", "b.png");
+
+        deadline = System.currentTimeMillis() + TIMEOUT;
+
+        while ((imageSource.size() == 2) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(20L);
+        }
+
+        Assert.assertTrue(imageSource.size() < 2);
+    }
+
+    /**
+     * Test of requiring an executor for image sources, which are not thread-safe.
+     *
+     * @throws  Exception  if the test fails.
+     */
+    @Test public void testNotThreadSafe() throws Exception {
+
+        ResourceCachingImageSource unsafeImageSource = new ResourceCachingImageSource();
+        ImageFileWatcher unsafeWatcher = new ImageFileWatcher();
+
+        unsafeImageSource.setLocation(directory.toURI().toString());
+        unsafeWatcher.setImageSource(unsafeImageSource);
+
+        try {
+
+            unsafeWatcher.init();
+            Assert.fail("image source is not thread-safe");
+
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        unsafeWatcher.setExecutor(new Executor() {
+
+                @Override public void execute(Runnable command) {
+                    command.run();
+                }
+            });
+
+        unsafeWatcher.init();
+        unsafeWatcher.destroy();
+    }
+
+    /**
+     * Test of removing the base image, when a pre-rendered variant is changed.
+     *
+     * @throws  Exception  if the test fails.
+     */
+    @Test public void testVariant() throws Exception {
+
+        Assert.assertNotNull(imageSource.getImage("b.png", new Dimension(24, 24)));
+        Assert.assertEquals(imageSource.size(), 1);
+
+        copy("test-images/a.png", "b@2x.png");
+
+        waitForSize(0);
+    }
+
+    /**
+     * Waits until the cache shrinks to the expected size.
+     */
+    private void waitForSize(int size) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+
+        while ((size < imageSource.size()) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(20L);
+        }
+
+        Assert.assertEquals(imageSource.size(), size);
+    }
+}
@@ -0,0 +1,97 @@
+package com.idragon.adastra.springframework.context;
+
+import org.testng.Assert;
+
+import org.testng.annotations.Test;
+
+import com.idragon.adastra.context.AreaAveragingImageScaler;
+import com.idragon.adastra.context.ImageScaler;
+import com.idragon.adastra.context.ScalingQuality;
+
+import java.awt.image.BufferedImage;
+
+import java.util.Arrays;
+
+
+/**
+ * Unit test of the image scalers.
+ *
+ * @author  hp
+ */
+@Test public class ImageScalerTest {
+
+    /**
+     * Image scaler unit test.
+     */
+    public ImageScalerTest() {
+    }
+
+    /**
+     * @return  an image with horizontal stripes of two colors.
+     */
+    private static BufferedImage createImage(int width, int height) {
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+        for (int y = 0; y < height; y++) {
+
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, ((y % 2) == 0) ? 0xffff0000 : 0xff0000ff);
+            }
+        }
+
+        return image;
+    }
+
+    /**
+     * Test of area averaging the pixels.
+     */
+    @Test public void testAreaAveraging() {
+
+        BufferedImage image = new AreaAveragingImageScaler().scale(createImage(64, 64), 16, 16);
+
+        Assert.assertEquals(image.getRGB(0, 0), 0xff800080);
+        Assert.assertEquals(image.getRGB(15, 15), 0xff800080);
+    }
+
+    /**
+     * Test of the parallel resampling, which must produce the same result as the sequential one.
+     */
+    @Test public void testParallel() {
+
+        BufferedImage source = createImage(300, 200);
+
+        AreaAveragingImageScaler scaler = new AreaAveragingImageScaler();
+        scaler.setParallelThreshold(Integer.MAX_VALUE);
+
+        BufferedImage sequential = scaler.scale(source, 70, 45);
+
+        scaler.setParallelThreshold(0);
+
+        BufferedImage parallel = scaler.scale(source, 70, 45);
+
+        Assert.assertTrue(Arrays.equals(parallel.getRGB(0, 0, 70, 45, null, 0, 70),
+                sequential.getRGB(0, 0, 70, 45, null, 0, 70)));
+    }
+
+    /**
+     * Test of the presets scaling to the required size.
+     */
+    @Test public void testPresets() {
+
+        BufferedImage source = createImage(100, 100);
+
+        for (ScalingQuality quality : ScalingQuality.values()) {
+
+            ImageScaler scaler = quality.createScaler();
+
+            BufferedImage smaller = scaler.scale(source, 30, 80);
+            Assert.assertEquals(smaller.getWidth(), 30);
+            Assert.assertEquals(smaller.getHeight(), 80);
+
+            BufferedImage larger = scaler.scale(source, 130, 101);
+            Assert.assertEquals(larger.getWidth(), 130);
+            Assert.assertEquals(larger.getHeight(), 101);
+        }
+    }
+}
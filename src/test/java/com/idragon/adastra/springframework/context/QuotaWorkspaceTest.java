@@ -0,0 +1,230 @@
+package com.idragon.adastra.springframework.context;
+
+import com.idragon.adastra.context.QuotaWorkspace;
+import com.idragon.adastra.context.StagedWrite;
+
+import org.apache.commons.io.FileUtils;
+
+import org.testng.Assert;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Quota workspace unit test.
+ *
+ * @author  hp
+ */
+@Test public class QuotaWorkspaceTest {
+
+    private QuotaWorkspace workspace;
+
+    /**
+     * Quota workspace unit test.
+     */
+    public QuotaWorkspaceTest() {
+    }
+
+    @BeforeMethod protected void setUp() throws IOException {
+
+        File root = new File(System.getProperty("java.io.tmpdir"), "quota-workspace-test");
+        FileUtils.writeByteArrayToFile(new File(root, "aaa/existing.bin"), new byte[10]);
+
+        workspace = new QuotaWorkspace();
+        workspace.setRoot(root);
+        workspace.setQuota(100L);
+
+        // Evictions run synchronously
+        workspace.setExecutor(new Executor() {
+
+                @Override public void execute(Runnable command) {
+                    command.run();
+                }
+            });
+
+        workspace.init();
+    }
+
+    @AfterMethod protected void tearDown() throws IOException {
+
+        workspace.destroy();
+        FileUtils.forceDelete(workspace.getRoot());
+        workspace = null;
+    }
+
+    /**
+     * Test of accounting the usage.
+     *
+     * @throws  IOException  if a file can't be written.
+     */
+    @Test public void testAccounting() throws IOException {
+
+        Assert.assertEquals(workspace.getUsage(), 10L);
+        Assert.assertEquals(workspace.getUsage("aaa"), 10L);
+
+        write(workspace.getPath("bbb", "ccc").resolve("file.bin"), 30);
+
+        Path file = workspace.getPath("bbb").resolve("file.bin");
+
+        try (FileChannel channel = workspace.openChannel(file, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE)) {
+
+            channel.write(ByteBuffer.allocate(20));
+
+            Assert.assertEquals(workspace.getUsage("bbb"), 50L);
+
+            channel.truncate(5L);
+        }
+
+        workspace.transfer(file, workspace.getPath().resolve("copy.bin"));
+
+        Assert.assertEquals(workspace.getUsage("bbb"), 35L);
+        Assert.assertEquals(workspace.getUsage(), 50L);
+        Assert.assertEquals(workspace.getUsages().size(), 2);
+    }
+
+    /**
+     * Test of blocking the eviction, while every subdirectory has open channels.
+     *
+     * @throws  IOException  if a file can't be written.
+     */
+    @Test public void testBlockedEviction() throws IOException {
+
+        final AtomicInteger evictions = new AtomicInteger();
+
+        workspace.setExecutor(new Executor() {
+
+                @Override public void execute(Runnable command) {
+
+                    evictions.incrementAndGet();
+                    command.run();
+                }
+            });
+
+        Path file = workspace.getPath("aaa").resolve("file.bin");
+
+        try (FileChannel channel = workspace.openChannel(file, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE)) {
+
+            channel.write(ByteBuffer.allocate(100));
+            channel.write(ByteBuffer.allocate(10));
+
+            Assert.assertEquals(evictions.get(), 1);
+            Assert.assertEquals(workspace.getEvictionCount(), 0L);
+        }
+
+        Assert.assertEquals(evictions.get(), 2);
+        Assert.assertEquals(workspace.getEvictionCount(), 1L);
+        Assert.assertEquals(workspace.getUsage(), 0L);
+        Assert.assertFalse(new File(workspace.getRoot(), "aaa").exists());
+    }
+
+    /**
+     * Test of evicting the least recently used subdirectories.
+     *
+     * @throws  IOException  if a file can't be written.
+     */
+    @Test public void testEviction() throws IOException {
+
+        write(workspace.getPath("bbb").resolve("file.bin"), 40);
+        write(workspace.getPath("ccc").resolve("file.bin"), 40);
+        workspace.getDirectory("aaa");
+
+        Assert.assertEquals(workspace.getEvictionCount(), 0L);
+
+        write(workspace.getPath("ddd").resolve("file.bin"), 40);
+
+        Assert.assertEquals(workspace.getEvictionCount(), 1L);
+        Assert.assertFalse(new File(workspace.getRoot(), "bbb").exists());
+        Assert.assertEquals(workspace.getUsage("bbb"), 0L);
+        Assert.assertEquals(workspace.getUsage(), 90L);
+
+        // Evicted directories are created again
+        Assert.assertTrue(workspace.getDirectory("bbb").isDirectory());
+    }
+
+    /**
+     * Test of measuring files written outside the channels.
+     *
+     * @throws  IOException  if a file can't be written.
+     */
+    @Test public void testRescan() throws IOException {
+
+        FileUtils.writeByteArrayToFile(new File(workspace.getDirectory("bbb"), "file.bin"),
+            new byte[20]);
+        FileUtils.forceDelete(workspace.getDirectory("aaa"));
+
+        Assert.assertEquals(workspace.getUsage(), 10L);
+
+        workspace.rescan();
+
+        Assert.assertEquals(workspace.getUsage(), 20L);
+        Assert.assertEquals(workspace.getUsage("aaa"), 0L);
+        Assert.assertEquals(workspace.getUsage("bbb"), 20L);
+    }
+
+    /**
+     * Test of accounting staged writes.
+     *
+     * @throws  IOException  if a file can't be written.
+     */
+    @Test public void testStaging() throws IOException {
+
+        Path file = workspace.getPath("bbb").resolve("file.bin");
+
+        write(file, 30);
+
+        try (StagedWrite write = workspace.stage(file)) {
+
+            write.getChannel().write(ByteBuffer.allocate(10));
+            write.commit();
+        }
+
+        try (StagedWrite write = workspace.stage(file)) {
+            write.getChannel().write(ByteBuffer.allocate(20));
+        }
+
+        Assert.assertEquals(workspace.getUsage("bbb"), 10L);
+        Assert.assertEquals(workspace.getUsage(), 20L);
+
+        // A non-empty directory can't be replaced by the staging file
+        write(workspace.getPath("bbb", "directory").resolve("file.bin"), 5);
+
+        try (StagedWrite write = workspace.stage(workspace.getPath("bbb").resolve("directory"))) {
+
+            write.getChannel().write(ByteBuffer.allocate(20));
+            write.commit();
+            Assert.fail("Commit should fail");
+
+        } catch (IOException e) {
+            // Expected
+        }
+
+        Assert.assertEquals(workspace.getUsage("bbb"), 15L);
+        Assert.assertEquals(workspace.getUsage(), 25L);
+    }
+
+    /**
+     * Writes a file through the workspace.
+     */
+    private void write(Path file, int size) throws IOException {
+
+        try (FileChannel channel = workspace.openChannel(file, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(size));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.idragon.adastra.springframework.context;
+
+import org.testng.Assert;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.idragon.adastra.context.ReferenceResourceCachingImageSource;
+import com.idragon.adastra.context.ReferenceResourceCachingImageSource.ReferenceType;
+
+import java.awt.Dimension;
+import java.awt.Image;
+
+
+/**
+ * Unit test of the resource based image source with a garbage collector cooperative cache.
+ *
+ * @author  hp
+ */
+@Test public class ReferenceResourceCachingImageSourceTest {
+
+    private static final int MAX_GC_ATTEMPTS = 50;
+
+    private ReferenceResourceCachingImageSource imageSource;
+
+    /**
+     * Unit test of the resource based image source with a garbage collector cooperative cache.
+     */
+    public ReferenceResourceCachingImageSourceTest() {
+    }
+
+    @BeforeMethod protected void setUp() {
+
+        imageSource = new ReferenceResourceCachingImageSource();
+        imageSource.setLocation("classpath:");
+    }
+
+    @AfterMethod protected void tearDown() {
+
+        imageSource = null;
+    }
+
+    /**
+     * Test of cached images, while they are strongly reachable.
+     */
+    @Test public void testCached() {
+
+        Image a = imageSource.getImage("test-images/a.png");
+        Image b = imageSource.getImage("test-images/b.png", new Dimension(32, 32));
+
+        Assert.assertSame(imageSource.getImage("test-images/a.png"), a);
+        Assert.assertSame(imageSource.getImage("test-images/b.png", new Dimension(32, 32)), b);
+        Assert.assertNull(imageSource.getImage("test-images/z.png", new Dimension(32, 32)));
+        Assert.assertNull(imageSource.getImage("test-images/z.png"));
+
+        Assert.assertEquals(imageSource.size(), 3);
+
+        imageSource.remove("test-images/b.png");
+        Assert.assertEquals(imageSource.size(), 2);
+
+        imageSource.clear();
+        Assert.assertEquals(imageSource.size(), 0);
+        Assert.assertEquals(imageSource.getWeight(), 0L);
+    }
+
+    /**
+     * Test of expunging weakly referenced resized images.
+     */
+    @Test public void testWeak() throws InterruptedException {
+
+        imageSource.setReferenceType(ReferenceType.WEAK);
+
+        Assert.assertNotNull(imageSource.getImage("test-images/a.png"));
+        Assert.assertNotNull(imageSource.getImage("test-images/a.png", new Dimension(32, 32)));
+        Assert.assertEquals(imageSource.size(), 2);
+
+        for (int i = 0; (i < MAX_GC_ATTEMPTS) && (imageSource.getEvictionCount() == 0L); i++) {
+
+            System.gc();
+            Thread.sleep(10L);
+        }
+
+        // The default size image is held strongly
+        Assert.assertEquals(imageSource.getEvictionCount(), 1L);
+        Assert.assertEquals(imageSource.size(), 1);
+        Assert.assertEquals(imageSource.getWeight(), 16L * 16L * 4L);
+    }
+}
@@ -9,6 +9,10 @@ import org.testng.annotations.Test;
 import com.idragon.adastra.context.ResourceCachingImageSource;
 
 import java.awt.Dimension;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -73,6 +77,103 @@ import java.awt.Dimension;
         Assert.assertEquals(imageSource.size(), 6);
     }
 
+    /**
+     * Test of eagerly decoded images.
+     */
+    @Test public void testDecoded() {
+
+        Image image = imageSource.getImage("test-images/a.png");
+        Assert.assertTrue(image instanceof BufferedImage);
+        Assert.assertEquals(image.getWidth(null), 16);
+
+        image = imageSource.getImage("test-images/a.png", new Dimension(32, 24));
+        Assert.assertTrue(image instanceof BufferedImage);
+        Assert.assertEquals(image.getWidth(null), 32);
+        Assert.assertEquals(image.getHeight(null), 24);
+    }
+
+    /**
+     * Test of deriving resized images from larger cached images.
+     */
+    @Test public void testDerived() {
+
+        final AtomicInteger loadCount = new AtomicInteger();
+
+        imageSource = new ResourceCachingImageSource() {
+
+                @Override protected Image getImageInternal(String imageCode, Dimension dimension) {
+
+                    loadCount.incrementAndGet();
+
+                    return super.getImageInternal(imageCode, dimension);
+                }
+            };
+        imageSource.setLocation("classpath:");
+        imageSource.setDerivation(true);
+
+        // The natural size of the image is 32x32
+        Assert.assertNotNull(imageSource.getImage("test-variants/w.png", 24, 24));
+        Assert.assertEquals(imageSource.getImage("test-variants/w.png", 12, 12).getWidth(null), 12);
+        Assert.assertEquals(imageSource.getImage("test-variants/w.png", 16, 16).getWidth(null), 16);
+
+        // Derived images are never derived from, so this is derived from the 24x24 image too
+        Assert.assertEquals(imageSource.getImage("test-variants/w.png", 10, 10).getWidth(null), 10);
+        Assert.assertEquals(loadCount.get(), 1);
+
+        // Different aspect ratio
+        Assert.assertNotNull(imageSource.getImage("test-variants/w.png", 16, 8));
+        Assert.assertEquals(loadCount.get(), 2);
+
+        // Upscaled images are never derived from
+        Assert.assertNotNull(imageSource.getImage("test-images/a.png", 64, 64));
+        Assert.assertNotNull(imageSource.getImage("test-images/a.png", 32, 32));
+        Assert.assertEquals(loadCount.get(), 4);
+
+        // The cached images are not large enough
+        imageSource.setMinDerivationFactor(2d);
+        Assert.assertNotNull(imageSource.getImage("test-variants/w.png", 14, 14));
+        Assert.assertEquals(loadCount.get(), 5);
+        Assert.assertNotNull(imageSource.getImage("test-variants/w.png", 11, 11));
+        Assert.assertEquals(loadCount.get(), 5);
+
+        Assert.assertEquals(imageSource.getStatistics().getResizedMissCount(), 9L);
+
+        // Removed images are not derived from
+        imageSource.remove("test-variants/w.png");
+        imageSource.setMinDerivationFactor(1d);
+        Assert.assertNotNull(imageSource.getImage("test-variants/w.png", 12, 12));
+        Assert.assertEquals(loadCount.get(), 6);
+    }
+
+    /**
+     * Test of preferring exact size variants to deriving resized images.
+     */
+    @Test public void testDerivedVariant() {
+
+        final AtomicInteger loadCount = new AtomicInteger();
+
+        imageSource = new ResourceCachingImageSource() {
+
+                @Override protected Image getImageInternal(String imageCode, Dimension dimension) {
+
+                    loadCount.incrementAndGet();
+
+                    return super.getImageInternal(imageCode, dimension);
+                }
+            };
+        imageSource.setLocation("classpath:test-variants/");
+        imageSource.setDerivation(true);
+        imageSource.setVariantLookup(true);
+
+        Assert.assertNotNull(imageSource.getImage("w.png", 32, 32));
+        Assert.assertNotNull(imageSource.getImage("w.png", 16, 16));
+        Assert.assertEquals(loadCount.get(), 1);
+
+        // The exact size variant exists
+        Assert.assertNotNull(imageSource.getImage("w.png", 24, 24));
+        Assert.assertEquals(loadCount.get(), 2);
+    }
+
     /**
      * Test with a default size image.
      */
@@ -95,6 +196,44 @@ import java.awt.Dimension;
         Assert.assertEquals(imageSource.size(), 3);
     }
 
+    /**
+     * Test of reusing a dimension instance after the image is cached.
+     */
+    @Test public void testDimensionReuse() {
+
+        Dimension dimension = new Dimension(32, 32);
+        Image image = imageSource.getImage("test-images/a.png", dimension);
+
+        dimension.setSize(48, 48);
+
+        Assert.assertSame(imageSource.getImage("test-images/a.png", 32, 32), image);
+        Assert.assertNotSame(imageSource.getImage("test-images/a.png", dimension), image);
+        Assert.assertEquals(imageSource.size(), 2);
+    }
+
+    /**
+     * Test of growing the cache, and removing images afterwards.
+     */
+    @Test public void testGrowth() {
+
+        for (int i = 1; i <= 100; i++) {
+            Assert.assertNotNull(imageSource.getImage("test-images/a.png", i, i));
+            Assert.assertNotNull(imageSource.getImage("test-images/b.png", i, i));
+        }
+
+        Assert.assertEquals(imageSource.size(), 200);
+
+        for (int i = 1; i <= 100; i++) {
+            Assert.assertEquals(imageSource.getImage("test-images/a.png", i, i).getWidth(null), i);
+        }
+
+        imageSource.remove("test-images/a.png");
+
+        Assert.assertEquals(imageSource.size(), 100);
+        Assert.assertEquals(imageSource.getImage("test-images/b.png", 50, 50).getWidth(null), 50);
+        Assert.assertEquals(imageSource.getStatistics().getResizedHitCount(), 101L);
+    }
+
     /**
      * Testing invalid path.
      */
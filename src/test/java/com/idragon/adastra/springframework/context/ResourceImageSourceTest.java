@@ -0,0 +1,141 @@
+package com.idragon.adastra.springframework.context;
+
+import org.testng.Assert;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.idragon.adastra.context.ResourceImageSource;
+
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+
+import java.awt.image.BufferedImage;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Unit test of the resource based image source.
+ *
+ * @author  hp
+ */
+@Test public class ResourceImageSourceTest {
+
+    private ResourceImageSource imageSource;
+
+    private AtomicInteger lookupCount;
+
+    /**
+     * Unit test of the resource based image source.
+     */
+    public ResourceImageSourceTest() {
+    }
+
+    @BeforeMethod protected void setUp() {
+
+        lookupCount = new AtomicInteger();
+
+        imageSource = new ResourceImageSource();
+        imageSource.setResourceLoader(new DefaultResourceLoader() {
+
+                @Override public Resource getResource(String location) {
+
+                    lookupCount.incrementAndGet();
+
+                    return super.getResource(location);
+                }
+            });
+    }
+
+    @AfterMethod protected void tearDown() {
+
+        imageSource = null;
+    }
+
+    /**
+     * @return  the color of the center pixel of an image.
+     */
+    private int getColor(String imageCode, int width, int height) {
+
+        BufferedImage image = (BufferedImage) imageSource.getImage(imageCode, width, height);
+
+        Assert.assertEquals(image.getWidth(), width);
+        Assert.assertEquals(image.getHeight(), height);
+
+        return image.getRGB(width / 2, height / 2);
+    }
+
+    /**
+     * Test of looking up images in the index.
+     */
+    @Test public void testIndexed() {
+
+        imageSource.setLocations(new String[] {
+                "classpath:adastra-images/", "classpath:test-images/"
+            });
+        imageSource.setIndexed(true);
+        imageSource.setIndexPattern("**/*.png");
+
+        Assert.assertNotNull(imageSource.getImage("a.png"));
+
+        int count = lookupCount.get();
+
+        Assert.assertNotNull(imageSource.getImage("b.png"));
+        Assert.assertNotNull(imageSource.getImage("validation-error.png"));
+        Assert.assertNull(imageSource.getImage("z.png"));
+        Assert.assertNull(imageSource.getImage("z.png"));
+
+        // Found and missing images are resolved without probing the resources
+        Assert.assertEquals(lookupCount.get(), count);
+
+        // Class path locations are indexed in every class path root
+        Assert.assertNotNull(imageSource.getImage("test-only.png"));
+        Assert.assertEquals(lookupCount.get(), count);
+
+        Assert.assertTrue(imageSource.rebuildIndex().containsKey("c.png"));
+        Assert.assertFalse(imageSource.rebuildIndex().containsKey("logback-test.xml"));
+    }
+
+    /**
+     * Test of looking up images without the index.
+     */
+    @Test public void testNotIndexed() {
+
+        imageSource.setLocation("classpath:test-images/");
+
+        Assert.assertNotNull(imageSource.getImage("a.png"));
+        Assert.assertNull(imageSource.getImage("z.png"));
+        Assert.assertEquals(lookupCount.get(), 2);
+    }
+
+    /**
+     * Test of creating resized images from pre-rendered variants.
+     */
+    @Test public void testVariants() {
+
+        imageSource.setLocation("classpath:test-variants/");
+
+        // Without variant lookup, the base image (red) is resized
+        Assert.assertEquals(getColor("v.png", 24, 24), 0xffff0000);
+
+        imageSource.setVariantLookup(true);
+
+        // The exact size variant (blue) wins
+        Assert.assertEquals(getColor("v.png", 24, 24), 0xff0000ff);
+
+        // The smallest covering variant of the probed ones is the @2x variant (green)
+        Assert.assertEquals(getColor("v.png", 20, 20), 0xff00ff00);
+
+        // None of the variants covers the size, so the largest one is used
+        Assert.assertEquals(getColor("v.png", 64, 64), 0xff00ff00);
+        Assert.assertEquals(getColor("v.png", 8, 8), 0xffff0000);
+
+        // Indexed sources consider every sized variant
+        imageSource.setIndexed(true);
+
+        Assert.assertEquals(getColor("v.png", 20, 20), 0xff0000ff);
+        Assert.assertNull(imageSource.getImage("z.png", 20, 20));
+    }
+}
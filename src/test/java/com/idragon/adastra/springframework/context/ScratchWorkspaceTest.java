@@ -0,0 +1,119 @@
+package com.idragon.adastra.springframework.context;
+
+import com.idragon.adastra.context.ScratchWorkspace;
+
+import org.apache.commons.io.FileUtils;
+
+import org.testng.Assert;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.concurrent.Executor;
+
+
+/**
+ * Scratch workspace unit test.
+ *
+ * @author  hp
+ */
+@Test public class ScratchWorkspaceTest {
+
+    private ScratchWorkspace workspace;
+    private File spillDirectory;
+
+    /**
+     * Scratch workspace unit test.
+     */
+    public ScratchWorkspaceTest() {
+    }
+
+    @BeforeMethod protected void setUp() {
+
+        spillDirectory = new File(System.getProperty("java.io.tmpdir"), "scratch-workspace-test");
+
+        workspace = new ScratchWorkspace();
+        workspace.setSpillDirectory(spillDirectory);
+        workspace.setQuota(50L);
+
+        // Spills run synchronously
+        workspace.setExecutor(new Executor() {
+
+                @Override public void execute(Runnable command) {
+                    command.run();
+                }
+            });
+
+        workspace.init();
+    }
+
+    @AfterMethod protected void tearDown() throws IOException {
+
+        workspace.destroy();
+        FileUtils.deleteDirectory(spillDirectory);
+        workspace = null;
+    }
+
+    /**
+     * Test of deleting the workspace.
+     *
+     * @throws  IOException  if a directory can't be created.
+     */
+    @Test public void testDestroy() throws IOException {
+
+        File root = workspace.getRoot();
+
+        Assert.assertTrue(workspace.getDirectory("aaa", "bbb").isDirectory());
+
+        workspace.destroy();
+
+        Assert.assertFalse(root.exists());
+    }
+
+    /**
+     * Test of spilling directories to the disk.
+     *
+     * @throws  IOException  if a file can't be written.
+     */
+    @Test public void testSpill() throws IOException {
+
+        write(workspace.getPath("aaa").resolve("file.bin"), 40);
+        write(workspace.getPath("bbb").resolve("file.bin"), 40);
+
+        Assert.assertTrue(workspace.isSpilled("aaa"));
+        Assert.assertFalse(workspace.isSpilled("bbb"));
+        Assert.assertEquals(workspace.getUsage(), 40L);
+
+        Path link = workspace.getPath("aaa");
+
+        Assert.assertTrue(Files.isSymbolicLink(link));
+        Assert.assertEquals(Files.size(link.resolve("file.bin")), 40L);
+        Assert.assertEquals(spillDirectory.list().length, 1);
+
+        // Spilled directories are not accounted
+        write(link.resolve("other.bin"), 40);
+
+        Assert.assertEquals(workspace.getUsage(), 40L);
+    }
+
+    /**
+     * Writes a file through the workspace.
+     */
+    private void write(Path file, int size) throws IOException {
+
+        try (FileChannel channel = workspace.openChannel(file, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(size));
+        }
+    }
+}
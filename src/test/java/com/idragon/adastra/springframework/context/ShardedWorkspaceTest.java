@@ -0,0 +1,113 @@
+package com.idragon.adastra.springframework.context;
+
+import com.idragon.adastra.context.ShardedWorkspace;
+
+import org.apache.commons.io.FileUtils;
+
+import org.testng.Assert;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Sharded workspace unit test.
+ *
+ * @author  hp
+ */
+@Test public class ShardedWorkspaceTest {
+
+    private ShardedWorkspace workspace;
+
+    /**
+     * Sharded workspace unit test.
+     */
+    public ShardedWorkspaceTest() {
+    }
+
+    @BeforeMethod protected void setUp() {
+
+        workspace = new ShardedWorkspace();
+        workspace.setRoot(new File(System.getProperty("java.io.tmpdir"), "sharded-workspace-test"));
+        workspace.init();
+    }
+
+    @AfterMethod protected void tearDown() throws IOException {
+
+        workspace.destroy();
+        FileUtils.forceDelete(workspace.getRoot());
+        workspace = null;
+    }
+
+    /**
+     * Test of an invalid key.
+     *
+     * @throws  IOException  if the entry can't be resolved.
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidKey() throws IOException {
+        workspace.getKeyPath("..", "cache");
+    }
+
+    /**
+     * Test of storing entries by key.
+     *
+     * @throws  IOException  if an entry can't be created.
+     */
+    @Test public void testKeys() throws IOException {
+
+        Set<Path> shards = new HashSet<Path>();
+
+        for (int i = 0; i < 100; i++) {
+
+            Path path = workspace.getKeyPath("key" + i, "cache");
+            Files.createFile(path);
+            shards.add(path.getParent());
+
+            Assert.assertEquals(workspace.getRoot().toPath().relativize(path).getNameCount(), 4);
+            Assert.assertEquals(path.getParent().getFileName().toString().length(), 2);
+        }
+
+        Assert.assertTrue(50 < shards.size(), "keys are not spread: " + shards.size());
+        Assert.assertTrue(workspace.containsKey("key42", "cache"));
+        Assert.assertFalse(workspace.containsKey("key100", "cache"));
+        Assert.assertEquals(workspace.getKeyPath("key42", "cache"),
+            workspace.getKeyPath("key42", "cache"));
+
+        List<String> keys = workspace.getKeys("cache");
+
+        Assert.assertEquals(keys.size(), 100);
+        Assert.assertTrue(keys.contains("key99"));
+    }
+
+    /**
+     * Test of migrating a flat directory.
+     *
+     * @throws  IOException  if an entry can't be migrated.
+     */
+    @Test public void testMigrate() throws IOException {
+
+        File directory = workspace.getDirectory("cache");
+
+        for (int i = 0; i < 20; i++) {
+            FileUtils.writeStringToFile(new File(directory, "key" + i), "value" + i);
+        }
+
+        Assert.assertEquals(workspace.migrate("cache"), 20);
+        Assert.assertEquals(workspace.migrate("cache"), 0);
+        Assert.assertEquals(workspace.getKeys("cache").size(), 20);
+        Assert.assertEquals(FileUtils.readFileToString(workspace.getKeyPath("key7", "cache")
+                .toFile()), "value7");
+    }
+}
@@ -13,6 +13,15 @@ import org.testng.annotations.Test;
 import java.io.File;
 import java.io.IOException;
 
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Arrays;
+
 
 /**
  * Simple workspace unit test.
@@ -42,6 +51,48 @@ import java.io.IOException;
         workspace = null;
     }
 
+    /**
+     * Test of channel based file access.
+     *
+     * @throws  IOException  if a file can't be accessed.
+     */
+    @Test public void testChannels() throws IOException {
+
+        Path directory = workspace.getPath("aaa");
+        Path source = directory.resolve("source.bin");
+        Path target = workspace.getPath("bbb").resolve("target.bin");
+        byte[] content = { 1, 2, 3, 4, 5 };
+
+        try (FileChannel channel = workspace.openChannel(source, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(content));
+        }
+
+        MappedByteBuffer buffer = workspace.map(source, FileChannel.MapMode.READ_ONLY);
+        byte[] mapped = new byte[buffer.remaining()];
+        buffer.get(mapped);
+
+        Assert.assertTrue(Arrays.equals(mapped, content));
+
+        buffer = workspace.map(source, FileChannel.MapMode.READ_WRITE, 8L);
+        buffer.put(5, (byte) 6);
+        buffer.force();
+
+        Assert.assertEquals(workspace.transfer(source, target), 8L);
+        Assert.assertTrue(Arrays.equals(Files.readAllBytes(target),
+                new byte[] { 1, 2, 3, 4, 5, 6, 0, 0 }));
+    }
+
+    /**
+     * Test of accessing a file outside the workspace.
+     *
+     * @throws  IOException  if the file can't be opened.
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testOutside() throws IOException {
+        workspace.openChannel(workspace.getPath().resolve("../outside.bin"));
+    }
+
     @Test public void testWorkspace() throws IOException {
 
         File directory = workspace.getDirectory("aaa", "bbb", "ccc");
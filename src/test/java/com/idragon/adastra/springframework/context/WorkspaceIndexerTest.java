@@ -0,0 +1,195 @@
+package com.idragon.adastra.springframework.context;
+
+import com.idragon.adastra.context.IndexedFile;
+import com.idragon.adastra.context.SimpleWorkspace;
+import com.idragon.adastra.context.WorkspaceIndexer;
+
+import org.apache.commons.io.FileUtils;
+
+import org.testng.Assert;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.List;
+
+
+/**
+ * Workspace indexer unit test.
+ *
+ * @author  hp
+ */
+@Test public class WorkspaceIndexerTest {
+
+    /** Modification time of the directories */
+    private static final long PAST = System.currentTimeMillis() - 60000L;
+
+    private SimpleWorkspace workspace;
+    private WorkspaceIndexer indexer;
+
+    /**
+     * Workspace indexer unit test.
+     */
+    public WorkspaceIndexerTest() {
+    }
+
+    @BeforeMethod protected void setUp() throws IOException {
+
+        workspace = new SimpleWorkspace();
+        workspace.setRoot(new File(System.getProperty("java.io.tmpdir"),
+                "workspace-indexer-test"));
+        workspace.init();
+
+        File root = workspace.getRoot();
+
+        write(new File(root, "a.txt"), 1, 1000000L);
+        write(new File(root, "images/b.png"), 10, 2000000L);
+        write(new File(root, "images/thumbs/c.png"), 100, 3000000L);
+        write(new File(root, "images2/d.png"), 1000, 4000000L);
+
+        indexer = new WorkspaceIndexer();
+        indexer.setWorkspace(workspace);
+        indexer.init();
+
+        // The directories are older than the timestamp granularity
+        for (String path : new String[] { "", "images", "images/thumbs", "images2" }) {
+            Assert.assertTrue(new File(root, path).setLastModified(PAST));
+        }
+    }
+
+    @AfterMethod protected void tearDown() throws IOException {
+
+        workspace.destroy();
+        FileUtils.forceDelete(workspace.getRoot());
+        indexer = null;
+        workspace = null;
+    }
+
+    /**
+     * Test of rescanning changed directories only.
+     *
+     * @throws  IOException  if the workspace can't be scanned.
+     */
+    @Test public void testIncrementalScan() throws IOException {
+
+        Assert.assertEquals(indexer.scan(), 4);
+        Assert.assertEquals(indexer.scan(), 0);
+
+        File thumbs = new File(workspace.getRoot(), "images/thumbs");
+
+        write(new File(thumbs, "e.png"), 5, 5000000L);
+        Assert.assertTrue(thumbs.setLastModified(thumbs.lastModified() + 10000L));
+
+        Assert.assertEquals(indexer.scan(), 1);
+        Assert.assertEquals(indexer.getFileCount(), 5);
+        Assert.assertEquals(indexer.getFile("images/thumbs/e.png").getSize(), 5L);
+
+        FileUtils.forceDelete(new File(workspace.getRoot(), "images2"));
+        Assert.assertEquals(indexer.scan(true), 3);
+        Assert.assertEquals(indexer.getFileCount(), 4);
+        Assert.assertNull(indexer.getFile("images2/d.png"));
+    }
+
+    /**
+     * Test of finding files changed in place without listing their directories.
+     *
+     * @throws  IOException  if the workspace can't be scanned.
+     */
+    @Test public void testModifiedInPlace() throws IOException {
+
+        indexer.scan();
+        write(new File(workspace.getRoot(), "images/b.png"), 20, 2500000L);
+
+        Assert.assertEquals(indexer.scan(), 0);
+        Assert.assertEquals(indexer.getFile("images/b.png").getSize(), 20L);
+        Assert.assertEquals(indexer.getFile("images/b.png").getLastModified(), 2500000L);
+        Assert.assertEquals(indexer.findBySize(20L, 20L).size(), 1);
+        Assert.assertEquals(indexer.getTotalSize(), 1121L);
+    }
+
+    /**
+     * Test of loading a persisted index.
+     *
+     * @throws  IOException  if the workspace can't be scanned.
+     */
+    @Test public void testPersistence() throws IOException {
+
+        indexer.scan();
+
+        WorkspaceIndexer loaded = new WorkspaceIndexer();
+
+        loaded.setWorkspace(workspace);
+        loaded.init();
+
+        Assert.assertEquals(loaded.getFileCount(), 4);
+        Assert.assertEquals(loaded.getTotalSize(), 1111L);
+        Assert.assertEquals(loaded.getFile("images/b.png"), indexer.getFile("images/b.png"));
+        Assert.assertEquals(loaded.scan(), 0);
+    }
+
+    /**
+     * Test of querying the index.
+     *
+     * @throws  IOException  if the workspace can't be scanned.
+     */
+    @Test public void testQueries() throws IOException {
+
+        Assert.assertEquals(indexer.getFileCount(), 0);
+        indexer.scan();
+
+        Assert.assertEquals(indexer.getFileCount(), 4);
+        Assert.assertEquals(indexer.getTotalSize(), 1111L);
+        Assert.assertNull(indexer.getFile(WorkspaceIndexer.INDEX_DIRECTORY_NAME + "/index"));
+
+        List<IndexedFile> files = indexer.findByPrefix("images/");
+
+        Assert.assertEquals(files.size(), 2);
+        Assert.assertEquals(files.get(0).getPath(), "images/b.png");
+        Assert.assertEquals(files.get(1).getPath(), "images/thumbs/c.png");
+        Assert.assertEquals(indexer.findByPrefix("images").size(), 3);
+
+        files = indexer.findBySize(10L, 100L);
+
+        Assert.assertEquals(files.size(), 2);
+        Assert.assertEquals(files.get(0).getPath(), "images/b.png");
+
+        files = indexer.findByLastModified(3000000L, 4000000L);
+
+        Assert.assertEquals(files.size(), 1);
+        Assert.assertEquals(files.get(0).getPath(), "images/thumbs/c.png");
+    }
+
+    /**
+     * Test of listing directories again, which were listed in the tick of their modification.
+     *
+     * @throws  IOException  if the workspace can't be scanned.
+     */
+    @Test public void testSameTick() throws IOException {
+
+        File images = new File(workspace.getRoot(), "images");
+        long now = System.currentTimeMillis();
+
+        Assert.assertTrue(images.setLastModified(now));
+        Assert.assertEquals(indexer.scan(), 4);
+
+        // A file added in the same tick doesn't change the modification time
+        write(new File(images, "e.png"), 5, 5000000L);
+        Assert.assertTrue(images.setLastModified(now));
+
+        Assert.assertEquals(indexer.scan(), 1);
+        Assert.assertEquals(indexer.getFile("images/e.png").getSize(), 5L);
+    }
+
+    /**
+     * Writes a file with a given size and modification time.
+     */
+    private void write(File file, int size, long lastModified) throws IOException {
+
+        FileUtils.writeByteArrayToFile(file, new byte[size]);
+        Assert.assertTrue(file.setLastModified(lastModified));
+    }
+}